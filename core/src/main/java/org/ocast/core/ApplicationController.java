@@ -43,7 +43,6 @@ import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
-import okhttp3.logging.HttpLoggingInterceptor;
 
 import static org.ocast.core.CallbackThreadHandler.callback;
 
@@ -66,6 +65,8 @@ public class ApplicationController extends DataStream {
     private static final String STATE_CONNECTED = "connected";
 
     private final OkHttpClient httpClient;
+    // follows the 201 Created response of a start with a GET of the service
+    private final OkHttpClient startClient;
     private DialService<AdditionalData> dialService;
     private final Driver driver;
     private CountDownLatch connectedLatch;
@@ -76,11 +77,8 @@ public class ApplicationController extends DataStream {
         this.dialService = dialService;
         this.driver = driver;
         browser = new Browser(driver);
-        HttpLoggingInterceptor loggingInterceptor = new HttpLoggingInterceptor();
-        loggingInterceptor.setLevel(HttpLoggingInterceptor.Level.BODY);
-        OkHttpClient.Builder builder = new OkHttpClient.Builder().connectTimeout(5, TimeUnit.SECONDS);
-        builder.addInterceptor(loggingInterceptor);
-        httpClient = builder.build();
+        httpClient = OCastRuntime.getDefault().getHttpClient();
+        startClient = httpClient.newBuilder().addInterceptor(new StartInterceptor()).build();
     }
 
     /**
@@ -106,9 +104,7 @@ public class ApplicationController extends DataStream {
             Runnable onConnectSuccess = () -> {
                 connectedLatch = new CountDownLatch(1);
                 Request request = new Request.Builder().url(dialService.getBaseURL()).post(RequestBody.create(null, "")).build();
-                StartInterceptor startInterceptor = new StartInterceptor();
-                OkHttpClient client = httpClient.newBuilder().addInterceptor(startInterceptor).build();
-                Call call = client.newCall(request);
+                Call call = startClient.newCall(request);
                 call.enqueue(new DialCallbackRunnable(callback(onSuccess), callback(onFailure), this::isStartSuccess));
             };
 
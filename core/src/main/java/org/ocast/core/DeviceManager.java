@@ -30,9 +30,11 @@ import org.ocast.core.setting.NetworkSecureSettingController;
 
 import java.io.Reader;
 import java.net.URI;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -41,7 +43,6 @@ import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
-import okhttp3.logging.HttpLoggingInterceptor;
 
 import static org.ocast.core.CallbackThreadHandler.callback;
 
@@ -72,12 +73,7 @@ public class DeviceManager implements Driver.DriverListener {
         driver = createDriver(device);
         baseDialURL = device.getDialURI();
         this.listener = listener;
-        HttpLoggingInterceptor loggingInterceptor = new HttpLoggingInterceptor();
-        loggingInterceptor.setLevel(HttpLoggingInterceptor.Level.BODY);
-        httpClient = new OkHttpClient.Builder()
-                .connectTimeout(5, TimeUnit.SECONDS)
-                .addInterceptor(loggingInterceptor)
-                .build();
+        httpClient = OCastRuntime.getDefault().getHttpClient();
     }
 
     /**
@@ -90,12 +86,7 @@ public class DeviceManager implements Driver.DriverListener {
         driver = createDriver(device, sslConfig);
         baseDialURL = device.getDialURI();
         this.listener = listener;
-        HttpLoggingInterceptor loggingInterceptor = new HttpLoggingInterceptor();
-        loggingInterceptor.setLevel(HttpLoggingInterceptor.Level.BODY);
-        httpClient = new OkHttpClient.Builder()
-                .connectTimeout(5, TimeUnit.SECONDS)
-                .addInterceptor(loggingInterceptor)
-                .build();
+        httpClient = OCastRuntime.getDefault().getHttpClient();
     }
 
     public DeviceSettingController getDeviceSettingController(DeviceSettingController.DeviceSettingControllerListener listener) {
@@ -124,6 +115,14 @@ public class DeviceManager implements Driver.DriverListener {
         mRegisteredDrivers.put(id, factory);
     }
 
+    /**
+     * Get the manufacturers a driver is registered for, the other devices cannot be connected to
+     * @return the manufacturer names
+     */
+    public static Set<String> getRegisteredManufacturers() {
+        return Collections.unmodifiableSet(new HashSet<>(mRegisteredDrivers.keySet()));
+    }
+
 
     /**
      *  Used to get a reference to the public Settings controller class
@@ -0,0 +1,343 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.core;
+
+import org.ocast.core.function.Consumer;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import okhttp3.Cache;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+
+import static org.ocast.core.CallbackThreadHandler.callback;
+
+/**
+ * Caches the images shown by the applications, such as the device icons and the media logos, so
+ * that they are not fetched again on every display.
+ * The images are kept in memory and, if a directory is configured, on disk. Both are bounded in
+ * size and drop the least recently used images first.
+ * An image stays fresh for the max-age sent by the server, and at least for the minimum freshness
+ * of the cache. Once stale, it is revalidated with a conditional request. The images the server
+ * marks as no-store are never kept in memory, and the images larger than {@link #MAX_IMAGE_SIZE}
+ * are rejected.
+ * Concurrent requests of the same image share a single fetch.
+ */
+public class ImageCache {
+    private static final String TAG = LogTag.IMAGE;
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    // the size of the largest image that is fetched (bytes)
+    static final int MAX_IMAGE_SIZE = 1024 * 1024;
+
+    private final OkHttpClient httpClient;
+    private final Cache diskCache;
+    private final int maxMemorySize;
+    private final long minFreshness;
+    private final Map<URI, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<URI, List<Waiter>> pending = new HashMap<>();
+    private int memorySize;
+    private long hitCount;
+    private long fetchCount;
+    private long revalidationCount;
+
+    private static class Entry {
+        final byte[] data;
+        final String etag;
+        final String lastModified;
+        long expiry;
+
+        Entry(byte[] data, String etag, String lastModified, long expiry) {
+            this.data = data;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.expiry = expiry;
+        }
+    }
+
+    private static class Waiter {
+        final Consumer<byte[]> onSuccess;
+        final Consumer<Throwable> onFailure;
+
+        Waiter(Consumer<byte[]> onSuccess, Consumer<Throwable> onFailure) {
+            this.onSuccess = onSuccess;
+            this.onFailure = onFailure;
+        }
+    }
+
+    /**
+     * @param httpClient the client the images are fetched with
+     * @param directory the directory of the disk cache, or null to keep the images in memory only
+     * @param maxDiskSize the maximum size of the disk cache (bytes)
+     * @param maxMemorySize the maximum size of the images kept in memory (bytes)
+     * @param minFreshness how long an image is used without being revalidated, unless the server
+     *                     allows more (seconds)
+     */
+    ImageCache(OkHttpClient httpClient, File directory, long maxDiskSize, int maxMemorySize, int minFreshness) {
+        this.maxMemorySize = maxMemorySize;
+        this.minFreshness = TimeUnit.SECONDS.toMillis(minFreshness);
+        if (directory != null) {
+            diskCache = new Cache(directory, maxDiskSize);
+            String defaultCacheControl = "max-age=" + minFreshness;
+            this.httpClient = httpClient.newBuilder()
+                    .cache(diskCache)
+                    .addNetworkInterceptor(chain -> {
+                        Response response = chain.proceed(chain.request());
+                        if (response.header("Cache-Control") != null || response.header("Expires") != null) {
+                            return response;
+                        }
+                        // most devices send no caching headers for their icons
+                        return response.newBuilder().header("Cache-Control", defaultCacheControl).build();
+                    })
+                    .build();
+        } else {
+            diskCache = null;
+            this.httpClient = httpClient;
+        }
+    }
+
+    /**
+     * Get an image, from the cache if it is fresh, from the network otherwise
+     * @param uri the URL of the image
+     * @param onSuccess to be called with the content of the image
+     * @param onFailure to be called if the image could not be fetched
+     */
+    public void getImage(URI uri, Consumer<byte[]> onSuccess, Consumer<Throwable> onFailure) {
+        Waiter waiter = new Waiter(callback(onSuccess), callback(onFailure));
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(uri);
+            if (entry != null && System.currentTimeMillis() < entry.expiry) {
+                hitCount++;
+            } else {
+                List<Waiter> waiting = pending.get(uri);
+                if (waiting != null) {
+                    waiting.add(waiter);
+                    return;
+                }
+                waiting = new ArrayList<>();
+                waiting.add(waiter);
+                pending.put(uri, waiting);
+                entry = null;
+                fetchCount++;
+            }
+        }
+        if (entry != null) {
+            waiter.onSuccess.accept(entry.data);
+            return;
+        }
+        fetch(uri);
+    }
+
+    /**
+     * Get an image kept in memory, even if it is stale, e.g. to be displayed while it is being fetched
+     * @param uri the URL of the image
+     * @return the content of the image, or null if it is not in memory
+     */
+    public synchronized byte[] getCachedImage(URI uri) {
+        Entry entry = entries.get(uri);
+        return entry == null ? null : entry.data;
+    }
+
+    /**
+     * Drop every cached image, from memory and from disk
+     */
+    public void evictAll() {
+        synchronized (this) {
+            entries.clear();
+            memorySize = 0;
+        }
+        if (diskCache != null) {
+            try {
+                diskCache.evictAll();
+            } catch (IOException e) {
+                Logger.getLogger(TAG).log(Level.WARNING, "could not clear the image cache", e);
+            }
+        }
+    }
+
+    /**
+     * @return the number of requests served from memory
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of images fetched or revalidated, from the network or from disk
+     */
+    public synchronized long getFetchCount() {
+        return fetchCount;
+    }
+
+    /**
+     * @return the number of images found unchanged by a conditional request
+     */
+    public synchronized long getRevalidationCount() {
+        return revalidationCount;
+    }
+
+    /**
+     * @return the size of the images kept in memory (bytes)
+     */
+    public synchronized int getMemorySize() {
+        return memorySize;
+    }
+
+    /**
+     * Release the disk cache
+     */
+    void close() {
+        if (diskCache != null) {
+            try {
+                diskCache.close();
+            } catch (IOException e) {
+                Logger.getLogger(TAG).log(Level.WARNING, "could not close the image cache", e);
+            }
+        }
+    }
+
+    private void fetch(URI uri) {
+        Entry stale;
+        synchronized (this) {
+            stale = entries.get(uri);
+        }
+        Request.Builder builder;
+        try {
+            builder = new Request.Builder().url(uri.toURL());
+        } catch (IOException | IllegalArgumentException e) {
+            complete(uri, null, e);
+            return;
+        }
+        if (stale != null) {
+            if (stale.etag != null) {
+                builder.header("If-None-Match", stale.etag);
+            }
+            if (stale.lastModified != null) {
+                builder.header("If-Modified-Since", stale.lastModified);
+            }
+        }
+        httpClient.newCall(builder.build()).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                Logger.getLogger(TAG).log(Level.FINE, "could not fetch " + uri, e);
+                complete(uri, null, e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (ResponseBody body = response.body()) {
+                    long now = System.currentTimeMillis();
+                    long expiry = now + Math.max(TimeUnit.SECONDS.toMillis(response.cacheControl().maxAgeSeconds()), minFreshness);
+                    boolean noStore = response.cacheControl().noStore();
+                    if (response.code() == 304 && stale != null) {
+                        byte[] data;
+                        synchronized (ImageCache.this) {
+                            if (!noStore) {
+                                stale.expiry = expiry;
+                            }
+                            revalidationCount++;
+                            data = stale.data;
+                        }
+                        if (noStore) {
+                            store(uri, null);
+                        }
+                        complete(uri, data, null);
+                    } else if (response.isSuccessful() && body != null) {
+                        Entry entry = new Entry(readImage(uri, body), response.header(HEADER_ETAG), response.header(HEADER_LAST_MODIFIED), expiry);
+                        store(uri, noStore ? null : entry);
+                        complete(uri, entry.data, null);
+                    } else {
+                        complete(uri, null, new IOException("could not fetch " + uri + ": " + response.code()));
+                    }
+                } catch (IOException e) {
+                    complete(uri, null, e);
+                }
+            }
+        });
+    }
+
+    private static byte[] readImage(URI uri, ResponseBody body) throws IOException {
+        if (body.contentLength() > MAX_IMAGE_SIZE) {
+            throw new IOException("image too large " + uri + ": " + body.contentLength());
+        }
+        // the content length may be unknown, the body is read up to the limit only
+        BufferedSource source = body.source();
+        if (source.request(MAX_IMAGE_SIZE + 1L)) {
+            throw new IOException("image too large " + uri);
+        }
+        return source.readByteArray();
+    }
+
+    /**
+     * Keep an image in memory
+     * @param uri the URL of the image
+     * @param entry the image, or null to only drop the previous one
+     */
+    private synchronized void store(URI uri, Entry entry) {
+        Entry previous = entries.remove(uri);
+        if (previous != null) {
+            memorySize -= previous.data.length;
+        }
+        if (entry == null || entry.data.length > maxMemorySize / 4) {
+            // a single image must not flush the others
+            return;
+        }
+        entries.put(uri, entry);
+        memorySize += entry.data.length;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (memorySize > maxMemorySize && iterator.hasNext()) {
+            memorySize -= iterator.next().data.length;
+            iterator.remove();
+        }
+    }
+
+    private void complete(URI uri, byte[] data, Throwable error) {
+        List<Waiter> waiting;
+        synchronized (this) {
+            waiting = pending.remove(uri);
+        }
+        if (waiting == null) {
+            return;
+        }
+        for (Waiter waiter : waiting) {
+            if (data != null) {
+                waiter.onSuccess.accept(data);
+            } else {
+                waiter.onFailure.accept(error);
+            }
+        }
+    }
+}
@@ -44,6 +44,10 @@ public class LogTag {
      * tags media management logs
      */
     public static final String MEDIA = tag(PREFIX,CORE_M,"media");
+    /**
+     * tags image cache logs
+     */
+    public static final String IMAGE = tag(PREFIX,CORE_M,"image");
 
 
     /**
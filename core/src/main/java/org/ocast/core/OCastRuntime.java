@@ -0,0 +1,225 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.core;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.logging.HttpLoggingInterceptor;
+
+/**
+ * Holds the HTTP transport shared by the whole SDK: a single dispatcher and connection pool,
+ * from which the DIAL requests, the device description requests and the WebSocket links derive
+ * their own views, and the {@link ImageCache} shared by the device icons and the media logos.
+ * Unless configured otherwise with {@link #setDefault(OCastRuntime)}, a default runtime is
+ * created on first use.
+ */
+public class OCastRuntime {
+    public static final int DEFAULT_CONNECT_TIMEOUT = 5;
+    public static final int DEFAULT_PING_INTERVAL = 7;
+    public static final long DEFAULT_IMAGE_DISK_CACHE_SIZE = 10 * 1024 * 1024;
+    public static final int DEFAULT_IMAGE_MEMORY_CACHE_SIZE = 2 * 1024 * 1024;
+    public static final int DEFAULT_IMAGE_FRESHNESS = 3600;
+
+    private static OCastRuntime defaultRuntime;
+
+    private final OkHttpClient httpClient;
+    private final OkHttpClient webSocketClient;
+    private final ImageCache imageCache;
+
+    /**
+     * Builder for OCastRuntime
+     */
+    public static class Builder {
+        private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+        private int readTimeout = 10;
+        private int pingInterval = DEFAULT_PING_INTERVAL;
+        private int maxIdleConnections = 5;
+        private int maxRequestsPerHost = 5;
+        private HttpLoggingInterceptor.Level logLevel = HttpLoggingInterceptor.Level.NONE;
+        private File imageCacheDirectory;
+        private long imageDiskCacheSize = DEFAULT_IMAGE_DISK_CACHE_SIZE;
+        private int imageMemoryCacheSize = DEFAULT_IMAGE_MEMORY_CACHE_SIZE;
+        private int imageFreshness = DEFAULT_IMAGE_FRESHNESS;
+
+        /**
+         * @param timeout connection timeout (seconds)
+         */
+        public Builder setConnectTimeout(int timeout) {
+            connectTimeout = timeout;
+            return this;
+        }
+
+        /**
+         * @param timeout read timeout of HTTP requests (seconds)
+         */
+        public Builder setReadTimeout(int timeout) {
+            readTimeout = timeout;
+            return this;
+        }
+
+        /**
+         * @param interval interval of the WebSocket pings (seconds)
+         */
+        public Builder setPingInterval(int interval) {
+            pingInterval = interval;
+            return this;
+        }
+
+        /**
+         * @param count the number of idle connections kept in the pool
+         */
+        public Builder setMaxIdleConnections(int count) {
+            maxIdleConnections = count;
+            return this;
+        }
+
+        /**
+         * @param count the number of concurrent requests to a single device
+         */
+        public Builder setMaxRequestsPerHost(int count) {
+            maxRequestsPerHost = count;
+            return this;
+        }
+
+        /**
+         * @param level the level of the HTTP traces, no logging interceptor is installed with NONE
+         */
+        public Builder setLogLevel(HttpLoggingInterceptor.Level level) {
+            logLevel = level;
+            return this;
+        }
+
+        /**
+         * @param directory the directory of the image disk cache, the images are kept in memory
+         *                  only if null
+         * @param maxSize the maximum size of the image disk cache (bytes)
+         */
+        public Builder setImageCacheDirectory(File directory, long maxSize) {
+            imageCacheDirectory = directory;
+            imageDiskCacheSize = maxSize;
+            return this;
+        }
+
+        /**
+         * @param maxSize the maximum size of the images kept in memory (bytes)
+         */
+        public Builder setImageMemoryCacheSize(int maxSize) {
+            imageMemoryCacheSize = maxSize;
+            return this;
+        }
+
+        /**
+         * @param freshness how long a cached image is used without being revalidated, unless its
+         *                  server allows more (seconds)
+         */
+        public Builder setImageFreshness(int freshness) {
+            imageFreshness = freshness;
+            return this;
+        }
+
+        public OCastRuntime build() {
+            return new OCastRuntime(this);
+        }
+    }
+
+    private OCastRuntime(Builder builder) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(builder.maxRequestsPerHost);
+        OkHttpClient.Builder clientBuilder = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(builder.maxIdleConnections, 5, TimeUnit.MINUTES))
+                .connectTimeout(builder.connectTimeout, TimeUnit.SECONDS)
+                .readTimeout(builder.readTimeout, TimeUnit.SECONDS);
+        if (builder.logLevel != HttpLoggingInterceptor.Level.NONE) {
+            HttpLoggingInterceptor loggingInterceptor = new HttpLoggingInterceptor();
+            loggingInterceptor.setLevel(builder.logLevel);
+            clientBuilder.addInterceptor(loggingInterceptor);
+        }
+        httpClient = clientBuilder.build();
+        webSocketClient = httpClient.newBuilder()
+                .pingInterval(builder.pingInterval, TimeUnit.SECONDS)
+                .build();
+        imageCache = new ImageCache(httpClient, builder.imageCacheDirectory, builder.imageDiskCacheSize,
+                builder.imageMemoryCacheSize, builder.imageFreshness);
+    }
+
+    /**
+     * Get the runtime used by the SDK, creating it with the default configuration if needed
+     * @return the default runtime
+     */
+    public static synchronized OCastRuntime getDefault() {
+        if (defaultRuntime == null) {
+            defaultRuntime = new Builder().build();
+        }
+        return defaultRuntime;
+    }
+
+    /**
+     * Replace the runtime used by the SDK. Must be called before any device is managed, objects
+     * created beforehand keep the previous runtime.
+     * @param runtime the runtime to be used
+     */
+    public static synchronized void setDefault(OCastRuntime runtime) {
+        defaultRuntime = runtime;
+    }
+
+    /**
+     * @return the client of the HTTP requests (DIAL, device description)
+     */
+    public OkHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * @return the cache of the device icons and media logos
+     */
+    public ImageCache getImageCache() {
+        return imageCache;
+    }
+
+    /**
+     * Get a client for WebSocket links, sharing the dispatcher and connection pool of the runtime
+     * @param sslConfig the SSL configuration of the link, or null
+     * @return a client sending pings at the configured interval
+     */
+    public OkHttpClient getWebSocketClient(SSLConfig sslConfig) {
+        if (sslConfig == null) {
+            return webSocketClient;
+        }
+        return webSocketClient.newBuilder()
+                .sslSocketFactory(sslConfig.getSocketFactory(), sslConfig.getTrustManager())
+                .hostnameVerifier(sslConfig.getHostnameVerifier())
+                .build();
+    }
+
+    /**
+     * Release the idle connections and threads of the runtime.
+     * Calls in progress are cancelled, the runtime cannot be used afterwards.
+     */
+    public void shutdown() {
+        httpClient.dispatcher().cancelAll();
+        httpClient.dispatcher().executorService().shutdown();
+        httpClient.connectionPool().evictAll();
+        imageCache.close();
+    }
+}
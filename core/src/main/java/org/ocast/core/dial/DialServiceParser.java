@@ -21,7 +21,6 @@ package org.ocast.core.dial;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
-import org.xmlpull.v1.XmlPullParserFactory;
 
 import java.io.IOException;
 import java.io.Reader;
@@ -55,16 +54,19 @@ public class DialServiceParser {
     }
 
     public DialService parse(Reader xml) throws DialException {
+        XmlPullParser parser = null;
         try {
-            XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
-            factory.setNamespaceAware(true);
-            XmlPullParser parser = factory.newPullParser();
+            parser = XmlParserPool.acquire();
             parser.setInput(xml);
             parser.nextTag();
 
             return readService(parser);
         } catch(XmlPullParserException | IOException e) {
             throw new DialException(e);
+        } finally {
+            if (parser != null) {
+                XmlParserPool.release(parser);
+            }
         }
     }
 
@@ -132,7 +134,7 @@ public class DialServiceParser {
         parser.require(XmlPullParser.START_TAG, null, TAG_ADDITIONAL_DATA);
         AbsAdditionalDataParser addparser = additionnalDataParser.get(parser.getNamespace("ocast"));
         if(addparser != null) {
-            data = new OcastAdditionalDataParser().parseAdditionalData(parser);
+            data = addparser.parseAdditionalData(parser);
         } else {
             DialParserUtils.skip(parser);
         }
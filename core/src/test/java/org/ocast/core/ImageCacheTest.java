@@ -0,0 +1,159 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ImageCacheTest {
+    private static final byte[] IMAGE = {(byte) 0x89, 'P', 'N', 'G'};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private OkHttpClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        CallbackThreadHandler.init(new SimpleWrapper());
+        server = new MockWebServer();
+        server.start();
+        client = new OkHttpClient();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void freshImageFromMemory() throws Exception {
+        server.enqueue(new MockResponse().setBody(new okio.Buffer().write(IMAGE)));
+        ImageCache cache = new ImageCache(client, null, 0, 1024, 60);
+        URI uri = server.url("/icon.png").uri();
+        assertArrayEquals(IMAGE, get(cache, uri));
+        assertArrayEquals(IMAGE, get(cache, uri));
+        assertEquals(1, server.getRequestCount());
+        assertEquals(1, cache.getHitCount());
+        assertArrayEquals(IMAGE, cache.getCachedImage(uri));
+    }
+
+    @Test
+    public void revalidateStaleImage() throws Exception {
+        server.enqueue(new MockResponse().setHeader("ETag", "\"v1\"").setBody(new okio.Buffer().write(IMAGE)));
+        server.enqueue(new MockResponse().setResponseCode(304));
+        ImageCache cache = new ImageCache(client, null, 0, 1024, 0);
+        URI uri = server.url("/icon.png").uri();
+        get(cache, uri);
+        assertArrayEquals(IMAGE, get(cache, uri));
+        server.takeRequest();
+        RecordedRequest revalidation = server.takeRequest();
+        assertEquals("\"v1\"", revalidation.getHeader("If-None-Match"));
+        assertEquals(1, cache.getRevalidationCount());
+    }
+
+    @Test
+    public void imageFromDisk() throws Exception {
+        server.enqueue(new MockResponse().setBody(new okio.Buffer().write(IMAGE)));
+        URI uri = server.url("/logo.png").uri();
+        get(new ImageCache(client, folder.getRoot(), 1024 * 1024, 1024, 60), uri);
+        // an other cache on the same directory, e.g. after a restart
+        ImageCache cache = new ImageCache(client, folder.getRoot(), 1024 * 1024, 1024, 60);
+        assertNull(cache.getCachedImage(uri));
+        assertArrayEquals(IMAGE, get(cache, uri));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void boundedMemory() throws Exception {
+        ImageCache cache = new ImageCache(client, null, 0, 400, 60);
+        URI first = server.url("/0.png").uri();
+        for (int i = 0; i < 5; i++) {
+            server.enqueue(new MockResponse().setBody(new okio.Buffer().write(new byte[100])));
+            get(cache, server.url("/" + i + ".png").uri());
+        }
+        assertTrue(cache.getMemorySize() <= 400);
+        assertNull(cache.getCachedImage(first));
+    }
+
+    @Test
+    public void shareConcurrentFetches() throws Exception {
+        server.enqueue(new MockResponse().setBodyDelay(300, TimeUnit.MILLISECONDS).setBody(new okio.Buffer().write(IMAGE)));
+        ImageCache cache = new ImageCache(client, null, 0, 1024, 60);
+        URI uri = server.url("/icon.png").uri();
+        CountDownLatch done = new CountDownLatch(2);
+        cache.getImage(uri, data -> done.countDown(), error -> {});
+        cache.getImage(uri, data -> done.countDown(), error -> {});
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void noStoreImage() throws Exception {
+        server.enqueue(new MockResponse().setHeader("Cache-Control", "no-store").setBody(new okio.Buffer().write(IMAGE)));
+        server.enqueue(new MockResponse().setHeader("Cache-Control", "no-store").setBody(new okio.Buffer().write(IMAGE)));
+        ImageCache cache = new ImageCache(client, null, 0, 1024, 60);
+        URI uri = server.url("/icon.png").uri();
+        assertArrayEquals(IMAGE, get(cache, uri));
+        assertArrayEquals(IMAGE, get(cache, uri));
+        assertEquals(2, server.getRequestCount());
+        assertEquals(0, cache.getHitCount());
+        assertNull(cache.getCachedImage(uri));
+    }
+
+    @Test
+    public void rejectLargeImage() throws Exception {
+        // chunked, so that the content length is unknown
+        server.enqueue(new MockResponse().setChunkedBody(new okio.Buffer().write(new byte[ImageCache.MAX_IMAGE_SIZE + 1]), 64 * 1024));
+        ImageCache cache = new ImageCache(client, null, 0, 1024, 60);
+        URI uri = server.url("/icon.png").uri();
+        assertNull(get(cache, uri));
+        assertNull(cache.getCachedImage(uri));
+    }
+
+    private static byte[] get(ImageCache cache, URI uri) throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<byte[]> result = new AtomicReference<>();
+        cache.getImage(uri, data -> {
+            result.set(data);
+            done.countDown();
+        }, error -> done.countDown());
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        return result.get();
+    }
+}
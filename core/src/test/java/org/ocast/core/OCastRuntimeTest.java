@@ -0,0 +1,55 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.core;
+
+import org.junit.Test;
+
+import okhttp3.OkHttpClient;
+import okhttp3.logging.HttpLoggingInterceptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class OCastRuntimeTest {
+
+    @Test
+    public void viewsShareTransport() throws Exception {
+        OCastRuntime runtime = new OCastRuntime.Builder().setPingInterval(3).build();
+        OkHttpClient http = runtime.getHttpClient();
+        OkHttpClient webSocket = runtime.getWebSocketClient(null);
+        assertSame(http.dispatcher(), webSocket.dispatcher());
+        assertSame(http.connectionPool(), webSocket.connectionPool());
+        assertEquals(3000, webSocket.pingIntervalMillis());
+        assertTrue(http.interceptors().isEmpty());
+    }
+
+    @Test
+    public void loggingOnRequest() throws Exception {
+        OCastRuntime runtime = new OCastRuntime.Builder().setLogLevel(HttpLoggingInterceptor.Level.BODY).build();
+        assertEquals(1, runtime.getHttpClient().interceptors().size());
+        assertTrue(runtime.getHttpClient().interceptors().get(0) instanceof HttpLoggingInterceptor);
+    }
+
+    @Test
+    public void defaultRuntime() throws Exception {
+        OCastRuntime runtime = OCastRuntime.getDefault();
+        assertSame(runtime, OCastRuntime.getDefault());
+    }
+}
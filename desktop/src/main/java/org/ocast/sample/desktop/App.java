@@ -23,6 +23,7 @@ import org.ocast.core.ApplicationController;
 import org.ocast.core.CallbackThreadHandler;
 import org.ocast.core.Device;
 import org.ocast.core.DeviceManager;
+import org.ocast.core.OCastRuntime;
 import org.ocast.core.SimpleWrapper;
 import org.ocast.core.function.Consumer;
 import org.ocast.core.media.MediaController;
@@ -33,17 +34,22 @@ import org.ocast.core.media.PrepareCommand;
 import org.ocast.core.media.TransferMode;
 import org.ocast.discovery.DiscoveredDevice;
 import org.ocast.discovery.Discovery;
+import org.ocast.discovery.DiscoveryFilter;
 import org.ocast.discovery.SSDPDiscovery;
 import org.ocast.referencedriver.ReferenceDriver;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.CountDownLatch;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import okhttp3.logging.HttpLoggingInterceptor;
+
 public class App implements MediaController.MediaControllerListener {
 
     private static final int PLAY_DURATION = 10 * 1000;
@@ -68,13 +74,19 @@ public class App implements MediaController.MediaControllerListener {
 
     public static void main(String[] args) {
         DeviceManager.registerDriver("Orange SA", new ReferenceDriver.ReferenceFactory());
+        OCastRuntime.setDefault(new OCastRuntime.Builder().setLogLevel(HttpLoggingInterceptor.Level.BODY).build());
         App main = new App();
         main.run();
     }
 
     private App() {
         CallbackThreadHandler.init(new SimpleWrapper());
-        discovery = new SSDPDiscovery(ReferenceDriver.SEARCH_TARGET, callback);
+        SSDPDiscovery ssdpDiscovery = new SSDPDiscovery(new HashSet<>(Collections.singletonList(ReferenceDriver.SEARCH_TARGET)), callback,
+                OCastRuntime.getDefault().getHttpClient());
+        ssdpDiscovery.setLivenessProbeTimeout(2000);
+        // only the devices a driver is registered for can be connected to
+        ssdpDiscovery.setFilter(new DiscoveryFilter.Builder().allowManufacturers(DeviceManager.getRegisteredManufacturers()).build());
+        discovery = ssdpDiscovery;
     }
 
     private void run() {
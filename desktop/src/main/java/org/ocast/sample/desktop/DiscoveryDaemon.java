@@ -0,0 +1,79 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.sample.desktop;
+
+import org.ocast.core.OCastRuntime;
+import org.ocast.discovery.DiscoveredDevice;
+import org.ocast.discovery.Discovery;
+import org.ocast.discovery.LocalDiscoveryServer;
+import org.ocast.discovery.SSDPDiscovery;
+import org.ocast.referencedriver.ReferenceDriver;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs a single discovery for all the processes of the host, which use a
+ * {@link org.ocast.discovery.LocalDiscovery LocalDiscovery} to get its devices.
+ * Usage: DiscoveryDaemon [port]
+ */
+public class DiscoveryDaemon {
+    private static final Logger logger = Logger.getLogger("daemon");
+
+    public static void main(String[] args) {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : LocalDiscoveryServer.DEFAULT_PORT;
+        Set<String> searchTargets = new HashSet<>(Collections.singletonList(ReferenceDriver.SEARCH_TARGET));
+        SSDPDiscovery discovery = new SSDPDiscovery(searchTargets, new Discovery.DiscoveryListener() {
+            @Override
+            public void onDeviceAdded(DiscoveredDevice dd) {
+                logger.log(Level.INFO, String.format("found %s", dd.getFriendlyName()));
+            }
+
+            @Override
+            public void onDeviceRemoved(DiscoveredDevice dd) {
+                logger.log(Level.INFO, String.format("lost %s", dd.getFriendlyName()));
+            }
+        }, OCastRuntime.getDefault().getHttpClient());
+        discovery.setLivenessProbeTimeout(2000);
+        LocalDiscoveryServer server = new LocalDiscoveryServer(discovery, searchTargets, port);
+        try {
+            server.start();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "could not serve the discovery on port " + port, e);
+            System.exit(1);
+        }
+        discovery.start();
+        CountDownLatch stop = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            discovery.shutdown();
+            stop.countDown();
+        }));
+        try {
+            stop.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
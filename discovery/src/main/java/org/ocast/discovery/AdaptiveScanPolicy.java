@@ -0,0 +1,101 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+/**
+ * Defines an adaptive schedule for the discovery process, as an alternative to a fixed
+ * {@link DiscoveryReliability}.
+ *
+ * Scans are sent in a burst with a short MX when the discovery starts, then their period doubles
+ * each time a scan finds the same devices as the previous one, up to a maximum. A change in the
+ * devices brings the period back to its minimum. The MX is widened when devices respond in large
+ * numbers, to spread their responses.
+ */
+public class AdaptiveScanPolicy {
+    private final int mMinInterval;
+    private final int mMaxInterval;
+    private final int mMinMaxWaitTime;
+    private final int mMaxMaxWaitTime;
+    private final int mCrowdedResponseRate;
+
+    /**
+     * scan every 5 seconds at first and every 2 minutes at most, with a MX from 1 to 5 seconds,
+     * widened above 20 responses per second of MX.
+     */
+    public static final AdaptiveScanPolicy DEFAULT = new AdaptiveScanPolicy(5, 120, 1, 5, 20);
+
+    /**
+     * Constructs an object and initializes it with the provided values
+     * @param minInterval the period of scans while devices change (seconds)
+     * @param maxInterval the period of scans once devices are stable (seconds)
+     * @param minMaxWaitTime the MX of the first scans (seconds)
+     * @param maxMaxWaitTime the widest MX (seconds)
+     * @param crowdedResponseRate the number of responses per second of MX above which the MX is widened
+     */
+    public AdaptiveScanPolicy(int minInterval, int maxInterval, int minMaxWaitTime, int maxMaxWaitTime, int crowdedResponseRate) {
+        if (minInterval <= 0 || maxInterval < minInterval || minMaxWaitTime <= 0 || maxMaxWaitTime < minMaxWaitTime || crowdedResponseRate <= 0) {
+            throw new IllegalArgumentException("invalid scan policy");
+        }
+        mMinInterval = minInterval;
+        mMaxInterval = maxInterval;
+        mMinMaxWaitTime = minMaxWaitTime;
+        mMaxMaxWaitTime = maxMaxWaitTime;
+        mCrowdedResponseRate = crowdedResponseRate;
+    }
+
+    /**
+     * @return the period of scans while devices change (seconds)
+     */
+    public int getMinInterval() {
+        return mMinInterval;
+    }
+
+    /**
+     * @return the period of scans once devices are stable (seconds)
+     */
+    public int getMaxInterval() {
+        return mMaxInterval;
+    }
+
+    /**
+     * @return the MX of the first scans (seconds)
+     */
+    public int getMinMaxWaitTime() {
+        return mMinMaxWaitTime;
+    }
+
+    /**
+     * @return the widest MX (seconds)
+     */
+    public int getMaxMaxWaitTime() {
+        return mMaxMaxWaitTime;
+    }
+
+    /**
+     * @return the number of responses per second of MX above which the MX is widened
+     */
+    public int getCrowdedResponseRate() {
+        return mCrowdedResponseRate;
+    }
+
+    @Override
+    public String toString() {
+        return "adaptive [interval:" + mMinInterval + "-" + mMaxInterval + " mx:" + mMinMaxWaitTime + "-" + mMaxMaxWaitTime + "]";
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Computes the period and the MX of the next scan according to an {@link AdaptiveScanPolicy}.
+ * An AdaptiveScanScheduler is not thread-safe.
+ */
+class AdaptiveScanScheduler {
+    private final AdaptiveScanPolicy policy;
+    private int interval;
+    private int maxWaitTime;
+    // the locations known after the previous scan
+    private Set<URI> previousLocations = Collections.emptySet();
+
+    AdaptiveScanScheduler(AdaptiveScanPolicy policy) {
+        this.policy = policy;
+        reset();
+    }
+
+    /**
+     * @return the bounds of the schedule
+     */
+    AdaptiveScanPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Go back to the initial burst of scans, e.g. when the network changed
+     */
+    void reset() {
+        interval = policy.getMinInterval();
+        maxWaitTime = policy.getMinMaxWaitTime();
+        previousLocations = Collections.emptySet();
+    }
+
+    /**
+     * Adapt the next scan to the outcome of the latest one.
+     * The network is stable while no location is added or removed: a device missing the response
+     * of a single scan is still known, and does not bring the scans back to the shortest period.
+     * @param locations the locations known once the scan completed, the expired ones excluded
+     * @param responses the number of responses received, duplicates included
+     */
+    void onScanCompleted(Set<URI> locations, int responses) {
+        boolean changed = !locations.equals(previousLocations);
+        previousLocations = new HashSet<>(locations);
+        interval = changed ? policy.getMinInterval() : Math.min(interval * 2, policy.getMaxInterval());
+        int rate = responses / maxWaitTime;
+        if (rate > policy.getCrowdedResponseRate()) {
+            maxWaitTime = Math.min(maxWaitTime + 1, policy.getMaxMaxWaitTime());
+        } else if (rate < policy.getCrowdedResponseRate() / 4) {
+            maxWaitTime = Math.max(maxWaitTime - 1, policy.getMinMaxWaitTime());
+        }
+    }
+
+    /**
+     * @return the duration of the next scan (seconds), long enough for the devices to respond
+     */
+    int getInterval() {
+        return Math.max(interval, maxWaitTime + 1);
+    }
+
+    /**
+     * @return the MX of the next scan (seconds)
+     */
+    int getMaxWaitTime() {
+        return maxWaitTime;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The host addresses of an IPv4 range in CIDR notation, such as 192.168.4.0/22.
+ * The network and broadcast addresses are skipped, except for /31 and /32 ranges.
+ */
+class CidrRange implements Iterable<InetAddress> {
+    // the largest range accepted, /16, to avoid sweeping millions of hosts by mistake
+    static final int MIN_PREFIX = 16;
+
+    private final long first;
+    private final long last;
+
+    /**
+     * @param cidr the range, eg: 192.168.4.0/22
+     * @throws IllegalArgumentException if the range is not a valid IPv4 range, or is too large
+     */
+    CidrRange(String cidr) {
+        int slash = cidr.indexOf('/');
+        String address = slash < 0 ? cidr : cidr.substring(0, slash);
+        int prefix;
+        try {
+            prefix = slash < 0 ? 32 : Integer.parseInt(cidr.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid range " + cidr, e);
+        }
+        if (prefix < MIN_PREFIX || prefix > 32) {
+            throw new IllegalArgumentException("unsupported prefix length " + cidr);
+        }
+        long base = toLong(parse(address.trim(), cidr));
+        long mask = (0xffffffffL << (32 - prefix)) & 0xffffffffL;
+        long network = base & mask;
+        long broadcast = network | (~mask & 0xffffffffL);
+        if (prefix <= 30) {
+            first = network + 1;
+            last = broadcast - 1;
+        } else {
+            first = network;
+            last = broadcast;
+        }
+    }
+
+    /**
+     * @return the number of host addresses
+     */
+    int size() {
+        return (int) (last - first + 1);
+    }
+
+    @Override
+    public Iterator<InetAddress> iterator() {
+        return new Iterator<InetAddress>() {
+            private long next = first;
+
+            @Override
+            public boolean hasNext() {
+                return next <= last;
+            }
+
+            @Override
+            public InetAddress next() {
+                if (next > last) {
+                    throw new NoSuchElementException();
+                }
+                return toAddress(next++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private static byte[] parse(String address, String cidr) {
+        String[] parts = address.split("\\.", -1);
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("invalid IPv4 range " + cidr);
+        }
+        byte[] bytes = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            int value;
+            try {
+                value = Integer.parseInt(parts[i]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid IPv4 range " + cidr, e);
+            }
+            if (value < 0 || value > 255) {
+                throw new IllegalArgumentException("invalid IPv4 range " + cidr);
+            }
+            bytes[i] = (byte) value;
+        }
+        return bytes;
+    }
+
+    private static long toLong(byte[] bytes) {
+        return ((bytes[0] & 0xffL) << 24) | ((bytes[1] & 0xffL) << 16) | ((bytes[2] & 0xffL) << 8) | (bytes[3] & 0xffL);
+    }
+
+    private static InetAddress toAddress(long value) {
+        byte[] bytes = {(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+        try {
+            return InetAddress.getByAddress(bytes);
+        } catch (UnknownHostException e) {
+            // never thrown for a 4 bytes address
+            throw new IllegalStateException(e);
+        }
+    }
+}
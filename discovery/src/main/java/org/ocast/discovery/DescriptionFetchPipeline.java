@@ -0,0 +1,250 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the device description requests with a bounded concurrency.
+ * Waiting requests are started by priority: locations that have already been resolved first,
+ * then locations advertised during the current scan, then the others. Locations that
+ * failed recently come last and are requested with short timeouts, so that unreachable devices
+ * do not hold the slots of the others.
+ */
+class DescriptionFetchPipeline {
+    private static final String TAG = LogTag.DISCOVERY;
+    private static final int MAX_HISTORY = 256;
+    private static final long FAILURE_MEMORY = 60000;
+    // connect and read timeouts of the requests of the locations that failed recently (seconds)
+    private static final int FAIL_FAST_TIMEOUT = 1;
+
+    private final DeviceDescriptionRequest request;
+    private final DeviceDescriptionRequest failFastRequest;
+    private final PriorityQueue<Fetch> queue = new PriorityQueue<>();
+    // outcome of the latest request of the recent locations, by location
+    private final Map<URI, Outcome> history = new LinkedHashMap<URI, Outcome>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<URI, Outcome> eldest) {
+            return size() > MAX_HISTORY;
+        }
+    };
+    private int maxConcurrent;
+    private int inFlight;
+    private long sequence;
+    private long completed;
+    private long failed;
+    private long totalWait;
+    private long totalLatency;
+
+    private static class Outcome {
+        final boolean success;
+        final long time;
+
+        Outcome(boolean success, long time) {
+            this.success = success;
+            this.time = time;
+        }
+    }
+
+    private class Fetch implements Comparable<Fetch>, DeviceDescriptionRequest.RevalidationCallbacks {
+        final URI location;
+        final DeviceDescriptionRequest.Validators validators;
+        final DeviceDescriptionRequest.RevalidationCallbacks callbacks;
+        final int priority;
+        final boolean failFast;
+        final long order;
+        final long queued;
+        long started;
+
+        Fetch(URI location, DeviceDescriptionRequest.Validators validators, DeviceDescriptionRequest.RevalidationCallbacks callbacks,
+              int priority, boolean failFast, long order, long queued) {
+            this.location = location;
+            this.validators = validators;
+            this.callbacks = callbacks;
+            this.priority = priority;
+            this.failFast = failFast;
+            this.order = order;
+            this.queued = queued;
+        }
+
+        @Override
+        public int compareTo(Fetch other) {
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+            return Long.compare(order, other.order);
+        }
+
+        @Override
+        public void onDeviceDescription(URI location, DialDevice dd, DeviceDescriptionRequest.Validators validators) {
+            complete(this, true);
+            callbacks.onDeviceDescription(location, dd, validators);
+        }
+
+        @Override
+        public void onNotModified(URI location) {
+            complete(this, true);
+            callbacks.onNotModified(location);
+        }
+
+        @Override
+        public void onError(URI location) {
+            complete(this, false);
+            callbacks.onError(location);
+        }
+    }
+
+    /**
+     * @param request the request used for the locations that did not fail recently, the locations
+     *                that failed recently are requested with 1 second timeouts
+     * @param maxConcurrent the maximum number of requests in progress
+     */
+    DescriptionFetchPipeline(DeviceDescriptionRequest request, int maxConcurrent) {
+        this(request, new DeviceDescriptionRequest(request.getClient().newBuilder()
+                .connectTimeout(FAIL_FAST_TIMEOUT, TimeUnit.SECONDS)
+                .readTimeout(FAIL_FAST_TIMEOUT, TimeUnit.SECONDS)
+                .build()), maxConcurrent);
+    }
+
+    /**
+     * @param request the request used for the locations that did not fail recently
+     * @param failFastRequest the request, with short timeouts, used for the locations that failed recently
+     * @param maxConcurrent the maximum number of requests in progress
+     */
+    DescriptionFetchPipeline(DeviceDescriptionRequest request, DeviceDescriptionRequest failFastRequest, int maxConcurrent) {
+        this.request = request;
+        this.failFastRequest = failFastRequest;
+        setMaxConcurrent(maxConcurrent);
+    }
+
+    /**
+     * Change the number of concurrent requests, applied as requests complete
+     * @param maxConcurrent the maximum number of requests in progress
+     */
+    void setMaxConcurrent(int maxConcurrent) {
+        if (maxConcurrent <= 0) {
+            throw new IllegalArgumentException("invalid concurrency");
+        }
+        List<Fetch> started;
+        synchronized (this) {
+            this.maxConcurrent = maxConcurrent;
+            started = pollStartable(now());
+        }
+        start(started);
+    }
+
+    /**
+     * Queue a device description request. A location which is not a HTTP URL fails right away.
+     * @param location the location of the description
+     * @param validators the validators of a cached description, or null
+     * @param advertised true if the location has been advertised during the current scan
+     * @param callbacks notified once the request completes
+     */
+    void submit(URI location, DeviceDescriptionRequest.Validators validators, boolean advertised, DeviceDescriptionRequest.RevalidationCallbacks callbacks) {
+        if (!isHttp(location)) {
+            Logger.getLogger(TAG).log(Level.WARNING, "not fetching description of {0}", location);
+            callbacks.onError(location);
+            return;
+        }
+        List<Fetch> started;
+        synchronized (this) {
+            long now = now();
+            Outcome outcome = history.get(location);
+            boolean failFast = outcome != null && !outcome.success && now - outcome.time < FAILURE_MEMORY;
+            int priority;
+            if (failFast) {
+                priority = 0;
+            } else {
+                priority = 1 + (advertised ? 1 : 0) + (outcome != null && outcome.success ? 2 : 0);
+            }
+            queue.add(new Fetch(location, validators, callbacks, priority, failFast, sequence++, now));
+            started = pollStartable(now);
+        }
+        start(started);
+    }
+
+    /**
+     * @return the current activity of the pipeline
+     */
+    synchronized DescriptionFetchStats getStats() {
+        return new DescriptionFetchStats(queue.size(), inFlight, completed, failed,
+                completed == 0 ? 0 : totalWait / completed, completed == 0 ? 0 : totalLatency / completed);
+    }
+
+    private void complete(Fetch fetch, boolean success) {
+        List<Fetch> started;
+        synchronized (this) {
+            long now = now();
+            inFlight--;
+            completed++;
+            if (!success) {
+                failed++;
+            }
+            totalWait += fetch.started - fetch.queued;
+            totalLatency += now - fetch.started;
+            history.put(fetch.location, new Outcome(success, now));
+            started = pollStartable(now);
+        }
+        start(started);
+    }
+
+    /**
+     * Take the requests that can be started
+     */
+    private List<Fetch> pollStartable(long now) {
+        List<Fetch> started = new ArrayList<>();
+        while (inFlight < maxConcurrent && !queue.isEmpty()) {
+            Fetch fetch = queue.poll();
+            fetch.started = now;
+            inFlight++;
+            started.add(fetch);
+        }
+        return started;
+    }
+
+    private void start(List<Fetch> fetches) {
+        for (Fetch fetch : fetches) {
+            DeviceDescriptionRequest r = fetch.failFast ? failFastRequest : request;
+            try {
+                r.revalidateDeviceDescription(fetch.location, fetch.validators, fetch);
+            } catch (RuntimeException e) {
+                // the request could not be sent, its slot goes to the next one
+                Logger.getLogger(TAG).log(Level.WARNING, "could not fetch description of " + fetch.location, e);
+                fetch.onError(fetch.location);
+            }
+        }
+    }
+
+    private static boolean isHttp(URI location) {
+        String scheme = location.getScheme();
+        return ("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme)) && location.getHost() != null;
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+}
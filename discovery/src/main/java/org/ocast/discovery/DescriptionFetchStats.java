@@ -0,0 +1,88 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+/**
+ * A snapshot of the activity of the device description requests
+ */
+public class DescriptionFetchStats {
+    private final int mQueueDepth;
+    private final int mInFlight;
+    private final long mCompleted;
+    private final long mFailed;
+    private final long mAverageWait;
+    private final long mAverageLatency;
+
+    DescriptionFetchStats(int queueDepth, int inFlight, long completed, long failed, long averageWait, long averageLatency) {
+        mQueueDepth = queueDepth;
+        mInFlight = inFlight;
+        mCompleted = completed;
+        mFailed = failed;
+        mAverageWait = averageWait;
+        mAverageLatency = averageLatency;
+    }
+
+    /**
+     * @return the number of requests waiting for a free slot
+     */
+    public int getQueueDepth() {
+        return mQueueDepth;
+    }
+
+    /**
+     * @return the number of requests in progress
+     */
+    public int getInFlight() {
+        return mInFlight;
+    }
+
+    /**
+     * @return the number of requests completed, successfully or not
+     */
+    public long getCompletedCount() {
+        return mCompleted;
+    }
+
+    /**
+     * @return the number of requests that failed
+     */
+    public long getFailedCount() {
+        return mFailed;
+    }
+
+    /**
+     * @return the average time a request waited for a free slot (milliseconds)
+     */
+    public long getAverageWait() {
+        return mAverageWait;
+    }
+
+    /**
+     * @return the average duration of a request once started (milliseconds)
+     */
+    public long getAverageLatency() {
+        return mAverageLatency;
+    }
+
+    @Override
+    public String toString() {
+        return "fetches [queued:" + mQueueDepth + " inFlight:" + mInFlight + " completed:" + mCompleted
+                + " failed:" + mFailed + " wait:" + mAverageWait + "ms latency:" + mAverageLatency + "ms]";
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+import java.net.URI;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches the device descriptions by location.
+ * A description stays fresh for the max-age advertised by the device, so that it does not have to
+ * be fetched again on every SSDP response. Once stale, it is revalidated with its HTTP validators.
+ * An entry is dropped when an other device (USN) is advertised at the same location, and the least
+ * recently used entry is dropped once the cache is full.
+ */
+class DeviceDescriptionCache {
+    private final Map<URI, Entry> entries = new LinkedHashMap<URI, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<URI, DeviceDescriptionCache.Entry> eldest) {
+            if (size() <= capacity) {
+                return false;
+            }
+            evictions++;
+            return true;
+        }
+    };
+    private int capacity = DeviceRegistry.DEFAULT_CAPACITY;
+    private long evictions;
+
+    private static class Entry {
+        String uuid;
+        long lifetime;
+        DialDevice device;
+        DeviceDescriptionRequest.Validators validators;
+        long expiry = Long.MIN_VALUE;
+    }
+
+    /**
+     * Record a SSDP advertisement of a location
+     * @param location the advertised location
+     * @param uuid the uuid of the advertised USN, or null if unknown
+     * @param lifetime how long a description fetched from this location stays fresh (milliseconds)
+     */
+    synchronized void advertise(URI location, String uuid, long lifetime) {
+        Entry entry = entries.get(location);
+        if (entry == null || (uuid != null && entry.uuid != null && !uuid.equals(entry.uuid))) {
+            entry = new Entry();
+            entries.put(location, entry);
+        }
+        if (uuid != null) {
+            entry.uuid = uuid;
+        }
+        entry.lifetime = lifetime;
+    }
+
+    /**
+     * Get a description that does not need to be fetched again
+     * @param location the device location
+     * @param now the current time (milliseconds)
+     * @return the cached DialDevice, or null if it is unknown or stale
+     */
+    synchronized DialDevice getFresh(URI location, long now) {
+        Entry entry = entries.get(location);
+        if (entry == null || entry.device == null || now >= entry.expiry) {
+            return null;
+        }
+        return entry.device;
+    }
+
+    /**
+     * Get the validators of the cached description
+     * @param location the device location
+     * @return the validators, or null if no description has been cached
+     */
+    synchronized DeviceDescriptionRequest.Validators getValidators(URI location) {
+        Entry entry = entries.get(location);
+        if (entry == null || entry.device == null || entry.validators == null || entry.validators.isEmpty()) {
+            return null;
+        }
+        return entry.validators;
+    }
+
+    /**
+     * Cache a description that has just been fetched
+     * @param location the device location
+     * @param device the fetched description
+     * @param validators the validators of the description
+     * @param now the current time (milliseconds)
+     */
+    synchronized void store(URI location, DialDevice device, DeviceDescriptionRequest.Validators validators, long now) {
+        Entry entry = entries.get(location);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(location, entry);
+        }
+        entry.device = device;
+        entry.validators = validators;
+        entry.expiry = now + entry.lifetime;
+    }
+
+    /**
+     * Extend the freshness of a description that has been revalidated
+     * @param location the device location
+     * @param now the current time (milliseconds)
+     * @return the cached DialDevice, or null if it has been dropped meanwhile
+     */
+    synchronized DialDevice refresh(URI location, long now) {
+        Entry entry = entries.get(location);
+        if (entry == null || entry.device == null) {
+            return null;
+        }
+        entry.expiry = now + entry.lifetime;
+        return entry.device;
+    }
+
+    /**
+     * Mark a description as stale, it will be revalidated on next use
+     * @param location the device location
+     */
+    synchronized void invalidate(URI location) {
+        Entry entry = entries.get(location);
+        if (entry != null) {
+            entry.expiry = Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * @param capacity the maximum number of cached descriptions
+     */
+    synchronized void setCapacity(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("invalid capacity " + capacity);
+        }
+        this.capacity = capacity;
+        Iterator<URI> iterator = entries.keySet().iterator();
+        while (entries.size() > capacity) {
+            iterator.next();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * @return the number of cached descriptions
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the number of descriptions dropped because the cache was full
+     */
+    synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Drop a description and its validators
+     * @param location the device location
+     */
+    synchronized void remove(URI location) {
+        entries.remove(location);
+    }
+}
@@ -38,7 +38,6 @@ import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
-import okhttp3.logging.HttpLoggingInterceptor;
 
 /**
  * A request to retrieve a {@link org.ocast.discovery.DialDevice DialDevice} based on a location URL
@@ -48,6 +47,12 @@ public class DeviceDescriptionRequest {
 
     private static final String APP_DIAL_URL_HEADER = "Application-DIAL-URL";
     private static final String APP_URL_HEADER = "Application-URL";
+    private static final String ETAG_HEADER = "ETag";
+    private static final String LAST_MODIFIED_HEADER = "Last-Modified";
+    private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+    private static final String IF_MODIFIED_SINCE_HEADER = "If-Modified-Since";
+    private static final int HTTP_NOT_MODIFIED = 304;
+    private static OkHttpClient sharedClient;
     private final OkHttpClient mClient;
 
     /**
@@ -68,6 +73,63 @@ public class DeviceDescriptionRequest {
         void onError(URI location);
     }
 
+    /**
+     * Defines an object that will notify a conditional DeviceDescriptionRequest result
+     */
+    public interface RevalidationCallbacks {
+        /**
+         * called when a device description has been fetched
+         * @param location the location URL that has been fetched
+         * @param dd the corresponding {@link org.ocast.discovery.DialDevice DialDevice}
+         * @param validators the validators of the fetched description, to be used for the next request
+         */
+        void onDeviceDescription(URI location, DialDevice dd, Validators validators);
+
+        /**
+         * called when the device description did not change since it has been fetched
+         * @param location the location URL that has been revalidated
+         */
+        void onNotModified(URI location);
+
+        /**
+         * called when a location could not be fetched
+         * @param location the location URL that could not be fetched
+         */
+        void onError(URI location);
+    }
+
+    /**
+     * The HTTP validators (ETag / Last-Modified) of a device description
+     */
+    public static class Validators {
+        private final String mETag;
+        private final String mLastModified;
+
+        /**
+         * @param eTag the ETag header value, may be null
+         * @param lastModified the Last-Modified header value, may be null
+         */
+        public Validators(String eTag, String lastModified) {
+            mETag = eTag;
+            mLastModified = lastModified;
+        }
+
+        public String getETag() {
+            return mETag;
+        }
+
+        public String getLastModified() {
+            return mLastModified;
+        }
+
+        /**
+         * @return true if none of the validators is known
+         */
+        public boolean isEmpty() {
+            return mETag == null && mLastModified == null;
+        }
+    }
+
     /**
      * Initializes a newly created DeviceDescriptionRequest object using default timeout
      */
@@ -76,18 +138,37 @@ public class DeviceDescriptionRequest {
     }
 
     /**
-     * Constructs a new DeviceDescriptionRequest using provided timeout
+     * Constructs a new DeviceDescriptionRequest using provided timeout.
+     * The requests share the connection pool and dispatcher of every DeviceDescriptionRequest
+     * created without a client.
      * @param connectTimeout connection timeout (seconds)
      * @param readTimeout read timeout (seconds)
      */
     public DeviceDescriptionRequest(int connectTimeout, int readTimeout) {
-        HttpLoggingInterceptor loggingInterceptor = new HttpLoggingInterceptor();
-        loggingInterceptor.setLevel(HttpLoggingInterceptor.Level.BODY);
-        mClient = new OkHttpClient.Builder()
-                .addInterceptor(loggingInterceptor)
+        this(getSharedClient().newBuilder()
                 .connectTimeout(connectTimeout, TimeUnit.SECONDS)
                 .readTimeout(readTimeout, TimeUnit.SECONDS)
-                .build();
+                .build());
+    }
+
+    /**
+     * Constructs a new DeviceDescriptionRequest sending its requests with a given client, e.g. one
+     * shared with the rest of the application
+     * @param client the HTTP client
+     */
+    public DeviceDescriptionRequest(OkHttpClient client) {
+        mClient = client;
+    }
+
+    OkHttpClient getClient() {
+        return mClient;
+    }
+
+    private static synchronized OkHttpClient getSharedClient() {
+        if (sharedClient == null) {
+            sharedClient = new OkHttpClient();
+        }
+        return sharedClient;
     }
 
     /**
@@ -97,6 +178,33 @@ public class DeviceDescriptionRequest {
      * @param cb the callback notifying the request result
      */
     public void getDeviceDescription(final URI location, final Callbacks cb) {
+        revalidateDeviceDescription(location, null, new RevalidationCallbacks() {
+            @Override
+            public void onDeviceDescription(URI location, DialDevice dd, Validators validators) {
+                cb.onDeviceDescription(location, dd);
+            }
+
+            @Override
+            public void onNotModified(URI location) {
+                // not a conditional request
+                cb.onError(location);
+            }
+
+            @Override
+            public void onError(URI location) {
+                cb.onError(location);
+            }
+        });
+    }
+
+    /**
+     * Attempts to retrieve a {@link org.ocast.discovery.DialDevice DialDevice} at a specific
+     * location, unless it did not change since a previous request
+     * @param location the location URL of a device
+     * @param validators the validators of the previously fetched description, or null
+     * @param cb the callback notifying the request result
+     */
+    public void revalidateDeviceDescription(final URI location, Validators validators, final RevalidationCallbacks cb) {
         Logger.getLogger(TAG).log(Level.FINE,"Retrieving device description through {0}", location);
 
         DateFormat formatter = new SimpleDateFormat("E, d MMM yyyy HH:mm:ss", Locale.US);
@@ -105,12 +213,19 @@ public class DeviceDescriptionRequest {
         calendar.setTimeInMillis(System.currentTimeMillis());
         formatter.setCalendar(calendar);
 
-        Request request = new Request.Builder()
+        Request.Builder builder = new Request.Builder()
                 .url(location.toString())
-                .header("Date", String.format("%s GMT",formatter.format(calendar.getTime())))
-                .build();
+                .header("Date", String.format("%s GMT",formatter.format(calendar.getTime())));
+        if (validators != null) {
+            if (validators.getETag() != null) {
+                builder.header(IF_NONE_MATCH_HEADER, validators.getETag());
+            }
+            if (validators.getLastModified() != null) {
+                builder.header(IF_MODIFIED_SINCE_HEADER, validators.getLastModified());
+            }
+        }
 
-        mClient.newCall(request).enqueue(new Callback() {
+        mClient.newCall(builder.build()).enqueue(new Callback() {
             @Override
             public void onFailure(Call call, IOException e) {
                 cb.onError(location);
@@ -118,22 +233,31 @@ public class DeviceDescriptionRequest {
 
             @Override
             public void onResponse(Call call, Response response) throws IOException {
-                if (!response.isSuccessful()) {
-                    cb.onError(location);
-                }
-                Headers responseHeaders = response.headers();
-                ResponseBody responseBody = response.body();
-                String resultString = responseBody.string();
-                String headerApplicationURL = responseHeaders.get(APP_DIAL_URL_HEADER);
-                if(headerApplicationURL == null) {
-                    headerApplicationURL = responseHeaders.get(APP_URL_HEADER);
-                }
-                try {
-                    DialDevice dd = DialDevice.fromDeviceDescription(resultString, headerApplicationURL, location);
-                    cb.onDeviceDescription(location, dd);
-                } catch(ParseException e) {
-                    Logger.getLogger(TAG).log(Level.SEVERE, "could not parse :" + resultString);
-                    cb.onError(location);
+                try (ResponseBody responseBody = response.body()) {
+                    if (response.code() == HTTP_NOT_MODIFIED) {
+                        cb.onNotModified(location);
+                        return;
+                    }
+                    if (!response.isSuccessful()) {
+                        cb.onError(location);
+                        return;
+                    }
+                    Headers responseHeaders = response.headers();
+                    String headerApplicationURL = responseHeaders.get(APP_DIAL_URL_HEADER);
+                    if(headerApplicationURL == null) {
+                        headerApplicationURL = responseHeaders.get(APP_URL_HEADER);
+                    }
+                    DialDevice dd;
+                    try {
+                        dd = DialDevice.fromDeviceDescription(responseBody.charStream(), headerApplicationURL, location);
+                    } catch(ParseException | RuntimeException e) {
+                        // OkHttp would swallow a runtime exception and never report this request
+                        Logger.getLogger(TAG).log(Level.SEVERE, "could not parse description of " + location, e);
+                        cb.onError(location);
+                        return;
+                    }
+                    Validators responseValidators = new Validators(responseHeaders.get(ETAG_HEADER), responseHeaders.get(LAST_MODIFIED_HEADER));
+                    cb.onDeviceDescription(location, dd, responseValidators);
                 }
             }
         });
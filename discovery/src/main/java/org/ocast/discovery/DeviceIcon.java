@@ -0,0 +1,109 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+import java.net.URI;
+
+/**
+ * An icon of a device, as listed in the iconList of its UPnP device description
+ */
+public class DeviceIcon {
+    private final String mMimeType;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mDepth;
+    private final URI mUrl;
+
+    /**
+     * @param mimeType the image format, or null if unknown
+     * @param width the width (pixels), 0 if unknown
+     * @param height the height (pixels), 0 if unknown
+     * @param depth the color depth (bits per pixel), 0 if unknown
+     * @param url the absolute URL of the image
+     */
+    public DeviceIcon(String mimeType, int width, int height, int depth, URI url) {
+        mMimeType = StringInterner.intern(mimeType);
+        mWidth = width;
+        mHeight = height;
+        mDepth = depth;
+        mUrl = url;
+    }
+
+    /**
+     * @return the image format, e.g. image/png, or null if unknown
+     */
+    public String getMimeType() {
+        return mMimeType;
+    }
+
+    /**
+     * @return the width (pixels), 0 if unknown
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * @return the height (pixels), 0 if unknown
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return the color depth (bits per pixel), 0 if unknown
+     */
+    public int getDepth() {
+        return mDepth;
+    }
+
+    /**
+     * @return the absolute URL of the image
+     */
+    public URI getUrl() {
+        return mUrl;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        DeviceIcon that = (DeviceIcon) o;
+
+        if (mWidth != that.mWidth || mHeight != that.mHeight || mDepth != that.mDepth) return false;
+        if (mMimeType != null ? !mMimeType.equals(that.mMimeType) : that.mMimeType != null) return false;
+        return mUrl != null ? mUrl.equals(that.mUrl) : that.mUrl == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mMimeType != null ? mMimeType.hashCode() : 0;
+        result = 31 * result + mWidth;
+        result = 31 * result + mHeight;
+        result = 31 * result + mDepth;
+        result = 31 * result + (mUrl != null ? mUrl.hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return mUrl + " (" + mWidth + "x" + mHeight + ")";
+    }
+}
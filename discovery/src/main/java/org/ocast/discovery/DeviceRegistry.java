@@ -0,0 +1,403 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The known devices, indexed by UUID and by location.
+ * A device may be advertised at several locations: it is announced once, with the location it has
+ * first been resolved from (its primary location), and lost when none of its locations is
+ * advertised anymore. When its primary location is removed, an other of its locations becomes the
+ * primary one.
+ * Every lookup and update holds the registry lock, since the entries are mutable. Every change of
+ * the resolved devices publishes a new {@link DeviceSnapshot}, which can be read without locking.
+ * The number of locations is capped: once full, the least recently advertised location is to be
+ * evicted.
+ */
+class DeviceRegistry {
+    static final int DEFAULT_CAPACITY = 512;
+    // rough memory cost of the objects of an entry and of a location, not counting the strings
+    private static final int ENTRY_FOOTPRINT = 160;
+    private static final int LOCATION_FOOTPRINT = 240;
+    private static final int DEVICE_FOOTPRINT = 200;
+
+    /**
+     * Result of the update of a device description
+     */
+    enum Update {
+        /**
+         * the device was not known
+         */
+        ADDED,
+        /**
+         * the device description changed
+         */
+        CHANGED,
+        /**
+         * the device description did not change
+         */
+        UNCHANGED
+    }
+
+    /**
+     * A device removed from the registry
+     */
+    static class Removal {
+        final DialDevice device;
+        final List<URI> locations;
+
+        Removal(DialDevice device, List<URI> locations) {
+            this.device = device;
+            this.locations = locations;
+        }
+
+        /**
+         * @return the locations to be reported as lost: the primary location of a resolved device,
+         * every location of a device that has not been resolved
+         */
+        List<URI> getLostLocations() {
+            return device != null ? Collections.singletonList(device.getLocation()) : locations;
+        }
+    }
+
+    private static class Entry {
+        final String uuid;
+        final Set<URI> locations = new LinkedHashSet<>();
+        DialDevice device;
+
+        Entry(String uuid) {
+            this.uuid = uuid;
+        }
+    }
+
+    private final Map<String, Entry> byUuid = new HashMap<>();
+    private final Map<URI, Entry> byLocation = new HashMap<>();
+    // the uuids of the devices changed by the current update
+    private final Set<String> changes = new LinkedHashSet<>();
+    private volatile DeviceSnapshot snapshot = DeviceSnapshot.EMPTY;
+    // the locations from the least to the most recently advertised, mapped to their shared instance
+    private final LinkedHashMap<URI, URI> recent = new LinkedHashMap<>(16, 0.75f, true);
+    private int capacity = DEFAULT_CAPACITY;
+
+    /**
+     * Record that a device is advertised at a location
+     * @param location the advertised location
+     * @param uuid the uuid of the advertised USN, or null if unknown
+     * @return a location to be reported as lost because the device previously advertised at this
+     * location is not reachable anymore, or null
+     */
+    synchronized URI advertise(URI location, String uuid) {
+        Entry entry = byLocation.get(location);
+        if (entry != null && (uuid == null || uuid.equals(entry.uuid))) {
+            // now the most recently advertised location
+            recent.get(location);
+            return null;
+        }
+        URI lost = null;
+        if (entry != null) {
+            // an other device took this location over
+            lost = detach(entry, location);
+        }
+        if (uuid == null) {
+            entry = new Entry(null);
+        } else {
+            entry = byUuid.get(uuid);
+            if (entry == null) {
+                entry = new Entry(uuid);
+                byUuid.put(uuid, entry);
+            }
+        }
+        entry.locations.add(location);
+        byLocation.put(location, entry);
+        recent.put(location, location);
+        publish();
+        return lost;
+    }
+
+    /**
+     * Update the description of a device
+     * @param location the location the description has been fetched from
+     * @param dd the fetched description
+     * @return whether the device has been added or changed, a device that gets verified is changed
+     */
+    synchronized Update update(URI location, DialDevice dd) {
+        Entry entry = byUuid.get(dd.getUuid());
+        if (entry == null) {
+            entry = new Entry(dd.getUuid());
+            byUuid.put(dd.getUuid(), entry);
+        }
+        Entry previous = byLocation.get(location);
+        if (previous != entry) {
+            if (previous != null) {
+                detach(previous, location);
+            }
+            entry.locations.add(location);
+            byLocation.put(location, entry);
+        }
+        recent.put(location, canonical(location));
+        Update result;
+        if (entry.device == null) {
+            entry.device = dd;
+            result = Update.ADDED;
+        } else if (!dd.isVerified()) {
+            // a restored description never replaces a known one
+            result = Update.UNCHANGED;
+        } else if (entry.device.equals(dd) && entry.device.isVerified()) {
+            result = Update.UNCHANGED;
+        } else {
+            URI primary = entry.device.getLocation();
+            entry.device = location.equals(primary) ? dd : new DialDevice(dd.getUuid(), dd.getFriendlyName(), dd.getManufacturer(), dd.getModelName(), dd.getDialURI(), primary, dd.getIcons(), true);
+            result = Update.CHANGED;
+        }
+        if (result != Update.UNCHANGED) {
+            changes.add(entry.uuid);
+        }
+        publish();
+        return result;
+    }
+
+    /**
+     * Check whether a location is an additional location of an already resolved device,
+     * that does not need to be resolved
+     * @param location the location
+     * @return true if the device has already been resolved from an other location
+     */
+    synchronized boolean isSecondaryLocation(URI location) {
+        Entry entry = byLocation.get(location);
+        if (entry == null) {
+            return false;
+        }
+        DialDevice device = entry.device;
+        return device != null && !location.equals(device.getLocation());
+    }
+
+    /**
+     * Forget a location that is not advertised anymore
+     * @param location the location
+     * @return the location to be reported as lost, or null if the device is still reachable, possibly
+     * at an other primary location
+     */
+    synchronized URI removeLocation(URI location) {
+        Entry entry = byLocation.get(location);
+        if (entry == null) {
+            return location;
+        }
+        URI lost = detach(entry, location);
+        publish();
+        return lost;
+    }
+
+    /**
+     * Forget a device and all its locations
+     * @param uuid the device uuid
+     * @return the removed device, or null if it is unknown
+     */
+    synchronized Removal removeDevice(String uuid) {
+        Entry entry = byUuid.remove(uuid);
+        if (entry == null) {
+            return null;
+        }
+        for (URI location : entry.locations) {
+            byLocation.remove(location);
+            recent.remove(location);
+        }
+        if (entry.device != null) {
+            changes.add(uuid);
+            publish();
+        }
+        return new Removal(entry.device, new ArrayList<>(entry.locations));
+    }
+
+    /**
+     * Forget every device
+     * @return the locations to be reported as lost
+     */
+    synchronized List<URI> clear() {
+        Set<Entry> entries = new HashSet<>(byLocation.values());
+        List<URI> lost = new ArrayList<>();
+        for (Entry entry : entries) {
+            lost.addAll(new Removal(entry.device, new ArrayList<>(entry.locations)).getLostLocations());
+            if (entry.device != null && entry.uuid != null) {
+                changes.add(entry.uuid);
+            }
+        }
+        byLocation.clear();
+        byUuid.clear();
+        recent.clear();
+        publish();
+        return lost;
+    }
+
+    /**
+     * @param uuid a device uuid
+     * @return the resolved device, or null if it is unknown or not resolved yet
+     */
+    synchronized DialDevice getByUuid(String uuid) {
+        Entry entry = byUuid.get(uuid);
+        return entry == null ? null : entry.device;
+    }
+
+    /**
+     * @param location a location
+     * @return the device resolved at this location, or null if it is unknown or not resolved yet
+     */
+    synchronized DialDevice getByLocation(URI location) {
+        Entry entry = byLocation.get(location);
+        return entry == null ? null : entry.device;
+    }
+
+    /**
+     * Get the shared instance of a location, so that the devices, the caches and the timers of a
+     * location do not each hold their own copy
+     * @param location a location
+     * @return the instance of the location already known, or the location itself
+     */
+    synchronized URI canonical(URI location) {
+        URI known = recent.get(location);
+        return known != null ? known : location;
+    }
+
+    /**
+     * @param capacity the maximum number of locations
+     */
+    synchronized void setCapacity(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("invalid capacity " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return the least recently advertised location if there are more locations than the capacity, or null
+     */
+    synchronized URI getOverflow() {
+        return recent.size() > capacity ? recent.keySet().iterator().next() : null;
+    }
+
+    /**
+     * @return a copy of the known locations
+     */
+    synchronized Set<URI> getLocations() {
+        return new HashSet<>(recent.keySet());
+    }
+
+    /**
+     * @return the number of known locations
+     */
+    synchronized int getLocationCount() {
+        return recent.size();
+    }
+
+    /**
+     * Estimate the memory held by the registry
+     * @return an approximate size (bytes)
+     */
+    synchronized long estimateFootprint() {
+        long footprint = 0;
+        for (URI location : recent.keySet()) {
+            footprint += LOCATION_FOOTPRINT + 4L * location.toString().length();
+        }
+        for (Entry entry : new HashSet<>(byLocation.values())) {
+            footprint += ENTRY_FOOTPRINT;
+            DialDevice device = entry.device;
+            if (device != null) {
+                // the manufacturer and model names are shared, the uuid is held by the entry too
+                footprint += DEVICE_FOOTPRINT + 2L * length(device.getUuid()) + 2L * length(device.getFriendlyName())
+                        + LOCATION_FOOTPRINT + 4L * length(device.getDialURI() == null ? null : device.getDialURI().toString());
+            }
+        }
+        return footprint;
+    }
+
+    /**
+     * @return the resolved devices, the list is immutable
+     */
+    List<DialDevice> getDevices() {
+        return snapshot.getDevices();
+    }
+
+    /**
+     * @return the latest snapshot of the resolved devices
+     */
+    DeviceSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    private URI detach(Entry entry, URI location) {
+        byLocation.remove(location);
+        recent.remove(location);
+        entry.locations.remove(location);
+        boolean reachable = !entry.locations.isEmpty();
+        if (!reachable && entry.uuid != null && byUuid.get(entry.uuid) == entry) {
+            byUuid.remove(entry.uuid);
+            if (entry.device != null) {
+                changes.add(entry.uuid);
+            }
+        }
+        DialDevice device = entry.device;
+        if (device == null) {
+            return location;
+        }
+        if (reachable && location.equals(device.getLocation())) {
+            // e.g. the device got a new address, it is now known by its next location
+            URI primary = entry.locations.iterator().next();
+            entry.device = new DialDevice(device.getUuid(), device.getFriendlyName(), device.getManufacturer(), device.getModelName(),
+                    device.getDialURI(), primary, device.getIcons(), device.isVerified());
+            if (entry.uuid != null) {
+                changes.add(entry.uuid);
+            }
+        }
+        return reachable ? null : device.getLocation();
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private void publish() {
+        if (changes.isEmpty()) {
+            return;
+        }
+        // the devices keep the order of the previous snapshot
+        Map<String, DialDevice> devices = new LinkedHashMap<>();
+        for (DialDevice device : snapshot.getDevices()) {
+            devices.put(device.getUuid(), device);
+        }
+        for (String uuid : changes) {
+            DialDevice device = getByUuid(uuid);
+            if (device != null) {
+                devices.put(uuid, device);
+            } else {
+                devices.remove(uuid);
+            }
+        }
+        snapshot = snapshot.next(devices, changes);
+        changes.clear();
+    }
+}
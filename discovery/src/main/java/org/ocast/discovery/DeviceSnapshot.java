@@ -0,0 +1,209 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable view of the resolved devices at a given version.
+ * A new snapshot replaces the previous one on every change, so that it can be read without any
+ * lock nor copy. It keeps the uuids of the latest changes, to tell what changed since an earlier
+ * version.
+ */
+public class DeviceSnapshot {
+    // the number of changes kept to compute a delta
+    static final int HISTORY_SIZE = 128;
+
+    static final DeviceSnapshot EMPTY = new DeviceSnapshot(0, Collections.<String, DialDevice>emptyMap(), new long[0], new String[0], 0);
+
+    private final long mVersion;
+    private final Map<String, DialDevice> mDevices;
+    private final List<DialDevice> mDeviceList;
+    // the versions and uuids of the latest changes, oldest first
+    private final long[] mChangeVersions;
+    private final String[] mChangeUuids;
+    // the oldest version a delta can be computed from
+    private final long mOldestVersion;
+
+    /**
+     * The changes between two snapshots
+     */
+    public static class Delta {
+        private final long mFromVersion;
+        private final long mToVersion;
+        private final boolean mReset;
+        private final List<DialDevice> mUpdated;
+        private final List<String> mRemoved;
+
+        Delta(long fromVersion, long toVersion, boolean reset, List<DialDevice> updated, List<String> removed) {
+            mFromVersion = fromVersion;
+            mToVersion = toVersion;
+            mReset = reset;
+            mUpdated = Collections.unmodifiableList(updated);
+            mRemoved = Collections.unmodifiableList(removed);
+        }
+
+        /**
+         * @return the version the delta applies to
+         */
+        public long getFromVersion() {
+            return mFromVersion;
+        }
+
+        /**
+         * @return the version reached once the delta is applied
+         */
+        public long getToVersion() {
+            return mToVersion;
+        }
+
+        /**
+         * Check whether the changes since the requested version are not known anymore. The delta
+         * then holds every device and the previous view has to be discarded.
+         * @return true if the delta replaces the whole view
+         */
+        public boolean isReset() {
+            return mReset;
+        }
+
+        /**
+         * @return the devices added or changed
+         */
+        public List<DialDevice> getUpdated() {
+            return mUpdated;
+        }
+
+        /**
+         * @return the uuids of the devices removed
+         */
+        public List<String> getRemoved() {
+            return mRemoved;
+        }
+
+        /**
+         * @return true if nothing changed
+         */
+        public boolean isEmpty() {
+            return !mReset && mUpdated.isEmpty() && mRemoved.isEmpty();
+        }
+    }
+
+    private DeviceSnapshot(long version, Map<String, DialDevice> devices, long[] changeVersions, String[] changeUuids, long oldestVersion) {
+        mVersion = version;
+        mDevices = devices;
+        mDeviceList = Collections.unmodifiableList(new ArrayList<>(devices.values()));
+        mChangeVersions = changeVersions;
+        mChangeUuids = changeUuids;
+        mOldestVersion = oldestVersion;
+    }
+
+    /**
+     * Build the next snapshot
+     * @param devices the resolved devices by uuid, copied
+     * @param changed the uuids of the devices that changed since this snapshot
+     * @return the new snapshot, one version after this one
+     */
+    DeviceSnapshot next(Map<String, DialDevice> devices, Set<String> changed) {
+        long version = mVersion + 1;
+        int count = Math.min(mChangeUuids.length + changed.size(), HISTORY_SIZE);
+        long[] changeVersions = new long[count];
+        String[] changeUuids = new String[count];
+        int kept = Math.max(count - changed.size(), 0);
+        System.arraycopy(mChangeVersions, mChangeVersions.length - kept, changeVersions, 0, kept);
+        System.arraycopy(mChangeUuids, mChangeUuids.length - kept, changeUuids, 0, kept);
+        int i = kept;
+        int skipped = changed.size() - (count - kept);
+        for (String uuid : changed) {
+            if (skipped > 0) {
+                skipped--;
+                continue;
+            }
+            changeVersions[i] = version;
+            changeUuids[i] = uuid;
+            i++;
+        }
+        // once changes are dropped, only the versions from the latest dropped one are complete
+        int dropped = mChangeUuids.length + changed.size() - count;
+        long oldestVersion = mOldestVersion;
+        if (dropped > 0) {
+            oldestVersion = dropped <= mChangeVersions.length ? mChangeVersions[dropped - 1] : version;
+        }
+        return new DeviceSnapshot(version, Collections.unmodifiableMap(new LinkedHashMap<>(devices)), changeVersions, changeUuids, oldestVersion);
+    }
+
+    /**
+     * @return the version of the snapshot, incremented on every change
+     */
+    public long getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * @return the resolved devices, the list is immutable
+     */
+    public List<DialDevice> getDevices() {
+        return mDeviceList;
+    }
+
+    /**
+     * @param uuid a device uuid
+     * @return the resolved device, or null if it is unknown
+     */
+    public DialDevice getDevice(String uuid) {
+        return mDevices.get(uuid);
+    }
+
+    /**
+     * Get what changed since an earlier snapshot
+     * @param version the version of the earlier snapshot
+     * @return the changes to apply to the earlier snapshot to reach this one, all the devices if
+     * the changes since this version are not known anymore
+     */
+    public Delta changesSince(long version) {
+        if (version == mVersion) {
+            return new Delta(version, mVersion, false, Collections.<DialDevice>emptyList(), Collections.<String>emptyList());
+        }
+        if (version < mOldestVersion || version > mVersion) {
+            return new Delta(version, mVersion, true, mDeviceList, Collections.<String>emptyList());
+        }
+        Set<String> uuids = new LinkedHashSet<>();
+        for (int i = 0; i < mChangeVersions.length; i++) {
+            if (mChangeVersions[i] > version) {
+                uuids.add(mChangeUuids[i]);
+            }
+        }
+        List<DialDevice> updated = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        for (String uuid : uuids) {
+            DialDevice device = mDevices.get(uuid);
+            if (device != null) {
+                updated.add(device);
+            } else {
+                removed.add(uuid);
+            }
+        }
+        return new Delta(version, mVersion, false, updated, removed);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+/**
+ * A snapshot of the size of the device table
+ */
+public class DeviceTableStats {
+    private final int mDeviceCount;
+    private final int mLocationCount;
+    private final int mCachedDescriptionCount;
+    private final long mFootprint;
+    private final long mCapacityEvictions;
+    private final long mExpirations;
+    private final long mCacheEvictions;
+
+    DeviceTableStats(int deviceCount, int locationCount, int cachedDescriptionCount, long footprint,
+                     long capacityEvictions, long expirations, long cacheEvictions) {
+        mDeviceCount = deviceCount;
+        mLocationCount = locationCount;
+        mCachedDescriptionCount = cachedDescriptionCount;
+        mFootprint = footprint;
+        mCapacityEvictions = capacityEvictions;
+        mExpirations = expirations;
+        mCacheEvictions = cacheEvictions;
+    }
+
+    /**
+     * @return the number of resolved devices
+     */
+    public int getDeviceCount() {
+        return mDeviceCount;
+    }
+
+    /**
+     * @return the number of advertised locations, resolved or not
+     */
+    public int getLocationCount() {
+        return mLocationCount;
+    }
+
+    /**
+     * @return the number of cached device descriptions
+     */
+    public int getCachedDescriptionCount() {
+        return mCachedDescriptionCount;
+    }
+
+    /**
+     * @return an estimate of the memory held by the known devices and locations (bytes)
+     */
+    public long getFootprint() {
+        return mFootprint;
+    }
+
+    /**
+     * @return the number of locations evicted because the table was full
+     */
+    public long getCapacityEvictionCount() {
+        return mCapacityEvictions;
+    }
+
+    /**
+     * @return the number of locations evicted because they were not advertised for their lifetime
+     */
+    public long getExpirationCount() {
+        return mExpirations;
+    }
+
+    /**
+     * @return the number of cached descriptions dropped because the cache was full
+     */
+    public long getCacheEvictionCount() {
+        return mCacheEvictions;
+    }
+
+    @Override
+    public String toString() {
+        return "DeviceTableStats{devices=" + mDeviceCount + ", locations=" + mLocationCount
+                + ", cachedDescriptions=" + mCachedDescriptionCount + ", footprint=" + mFootprint
+                + ", capacityEvictions=" + mCapacityEvictions + ", expirations=" + mExpirations
+                + ", cacheEvictions=" + mCacheEvictions + "}";
+    }
+}
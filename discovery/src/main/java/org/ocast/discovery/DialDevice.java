@@ -21,13 +21,15 @@ package org.ocast.discovery;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
-import org.xmlpull.v1.XmlPullParserFactory;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.io.StringReader;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Defines a DialDevice as per its DIAL device description.
@@ -46,6 +48,15 @@ import java.text.ParseException;
  *         <manufacturer>OCast</manufacturer>
  *         <modelName>OCast</modelName>
  *         <UDN>uuid:c4323fee-db4b-4aa7-9039-fa4b71589e26</UDN>
+ *         <iconList>
+ *             <icon>
+ *                 <mimetype>image/png</mimetype>
+ *                 <width>48</width>
+ *                 <height>48</height>
+ *                 <depth>24</depth>
+ *                 <url>/icon48.png</url>
+ *             </icon>
+ *         </iconList>
  *     </device>
  * </root>
  * }
@@ -53,17 +64,48 @@ import java.text.ParseException;
  */
 public class DialDevice extends DiscoveredDevice {
 
+	// the fields of an icon, in the order of the DeviceIcon constructor
+	private static final String[] ICON_FIELDS = {"mimetype", "width", "height", "depth", "url"};
+	// the icons listed beyond this are ignored
+	static final int MAX_ICONS = 16;
+
 	private URI location;
+	private final boolean verified;
 
 	public DialDevice(String uuid, String friendlyName, String manufacturer, String modelName, URI url, URI location) {
-		super(uuid, friendlyName, manufacturer, modelName, url);
+		this(uuid, friendlyName, manufacturer, modelName, url, location, true);
+	}
+
+	/**
+	 * @param verified false if the device comes from a previous session and has not been seen yet
+	 */
+	public DialDevice(String uuid, String friendlyName, String manufacturer, String modelName, URI url, URI location, boolean verified) {
+		this(uuid, friendlyName, manufacturer, modelName, url, location, null, verified);
+	}
+
+	/**
+	 * @param icons the icons listed in the device description, or null
+	 * @param verified false if the device comes from a previous session and has not been seen yet
+	 */
+	public DialDevice(String uuid, String friendlyName, String manufacturer, String modelName, URI url, URI location, List<DeviceIcon> icons, boolean verified) {
+		super(uuid, friendlyName, manufacturer, modelName, url, icons);
 		this.location = location;
+		this.verified = verified;
 	}
 
 	public URI getLocation() {
 		return location;
 	}
 
+	/**
+	 * Tell whether the device description has been retrieved during this session
+	 * @return false if the device has been restored from a {@link PersistentDeviceCache} and is
+	 * being revalidated
+	 */
+	public boolean isVerified() {
+		return verified;
+	}
+
 	/**
 	 * Build a DeviceDescription from an XML representation
 	 *
@@ -73,18 +115,34 @@ public class DialDevice extends DiscoveredDevice {
      * @throws ParseException if the XML content is invalid
 	 */
 	public static DialDevice fromDeviceDescription(String xml, String dialUrlHeader, URI location) throws ParseException {
+		return fromDeviceDescription(new StringReader(xml), dialUrlHeader, location);
+	}
+
+	/**
+	 * Build a DeviceDescription from an XML stream.
+	 * The stream is read until all the fields of the DialDevice and its icons are known, not necessarily up to its end.
+	 * The icon URLs are resolved against the URLBase of the root element, or else against the location.
+	 *
+	 * @param xml XML representation stream, it is not closed
+	 * @param dialUrlHeader     Dial application URL if provided in a header
+	 * @return the resulting DeviceDescription
+	 * @throws ParseException if the XML content is invalid
+	 */
+	public static DialDevice fromDeviceDescription(Reader xml, String dialUrlHeader, URI location) throws ParseException {
 		String friendlyName = null;
 		String manufacturer = null;
 		String modelName = null;
 		String uuid = null;
 		String urlBase = dialUrlHeader;
+		String descriptionBase = null;
+		List<String[]> iconFields = new ArrayList<>();
+		String[] icon = null;
+		boolean iconsDone = false;
 		URI url;
+		XmlPullParser parser = null;
 		try {
-			XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
-			factory.setNamespaceAware(true);
-			XmlPullParser parser = factory.newPullParser();
-			StringReader sr = new StringReader(xml);
-			parser.setInput(sr);
+			parser = XmlParserPool.acquire();
+			parser.setInput(xml);
 			int eventType = parser.getEventType();
 			String currentTagName = null;
 			while (eventType != XmlPullParser.END_DOCUMENT) {
@@ -95,37 +153,67 @@ public class DialDevice extends DiscoveredDevice {
 						if (parser.getDepth() == 1 && !"root".equals(currentTagName)) {
 							throw new ParseException("Malformed XML. Expected root, got: " + currentTagName, parser.getLineNumber());
 						}
+						if (parser.getDepth() == 4 && "icon".equals(currentTagName)) {
+							icon = new String[ICON_FIELDS.length];
+						} else if (parser.getDepth() == 3 && ("serviceList".equals(currentTagName) || "deviceList".equals(currentTagName) || "presentationURL".equals(currentTagName))) {
+							// the iconList comes before these elements, if any
+							iconsDone = true;
+						}
 						break;
 					case XmlPullParser.TEXT:
 						if (currentTagName != null) {
-							if ("friendlyName".equals(currentTagName)) {
+							if (icon != null) {
+								for (int i = 0; i < ICON_FIELDS.length; i++) {
+									if (ICON_FIELDS[i].equals(currentTagName)) {
+										icon[i] = parser.getText().trim();
+									}
+								}
+							} else if ("friendlyName".equals(currentTagName)) {
 								friendlyName = parser.getText();
 							} else if ("UDN".equals(currentTagName)) {
 								uuid = parser.getText();
-								if (uuid.startsWith("uuid")) {
-									uuid = uuid.split(":")[1];
+								if (uuid.startsWith("uuid:")) {
+									uuid = uuid.substring("uuid:".length());
 								}
 							} else if ("manufacturer".equals(currentTagName)) {
 								manufacturer = parser.getText();
 							} else if ("modelName".equals(currentTagName)) {
 								modelName = parser.getText();
-							} else if ("URLBase".equals(currentTagName) && dialUrlHeader == null) {
-								urlBase = parser.getText();
+							} else if ("URLBase".equals(currentTagName)) {
+								if (parser.getDepth() == 2) {
+									// the UPnP URLBase of the description
+									descriptionBase = parser.getText().trim();
+								}
+								if (dialUrlHeader == null) {
+									urlBase = parser.getText();
+								}
 							}
 						}
 						break;
 					case XmlPullParser.END_TAG:
 						currentTagName = null;
+						if (icon != null && parser.getDepth() == 4) {
+							if (iconFields.size() < MAX_ICONS) {
+								iconFields.add(icon);
+							}
+							icon = null;
+						} else if ((parser.getDepth() == 3 && "iconList".equals(parser.getName())) || (parser.getDepth() == 2 && "device".equals(parser.getName()))) {
+							iconsDone = true;
+						}
 						break;
 					default:
 						break;
 				}
+				if (iconsDone && uuid != null && friendlyName != null && manufacturer != null && modelName != null && urlBase != null) {
+					// the rest of the document is not needed
+					break;
+				}
 				eventType = parser.next();
 			}
-			sr.close();
 			if(urlBase != null) {
 				url = new URI(urlBase);
-				return new DialDevice(uuid, friendlyName, manufacturer, modelName, url, location);
+				List<DeviceIcon> icons = toIcons(iconFields, descriptionBase != null ? descriptionBase : (location != null ? location.toString() : null));
+				return new DialDevice(uuid, friendlyName, manufacturer, modelName, url, location, icons, true);
 			} else {
 				throw new ParseException("Could find Dial URL", -1);
 			}
@@ -135,6 +223,37 @@ public class DialDevice extends DiscoveredDevice {
 			throw new ParseException("Could not parse device description", -1);
 		} catch (URISyntaxException e) {
 			throw new ParseException("Could find Dial URL", -1);
+		} finally {
+			if (parser != null) {
+				XmlParserPool.release(parser);
+			}
+		}
+	}
+
+	private static List<DeviceIcon> toIcons(List<String[]> iconFields, String base) {
+		List<DeviceIcon> icons = new ArrayList<>(iconFields.size());
+		for (String[] fields : iconFields) {
+			if (fields[4] == null || fields[4].isEmpty()) {
+				continue;
+			}
+			try {
+				URI url = base != null ? new URI(base).resolve(fields[4]) : new URI(fields[4]);
+				icons.add(new DeviceIcon(fields[0], toInt(fields[1]), toInt(fields[2]), toInt(fields[3]), url));
+			} catch (URISyntaxException | IllegalArgumentException e) {
+				// an icon that cannot be fetched is ignored
+			}
+		}
+		return icons;
+	}
+
+	private static int toInt(String value) {
+		if (value == null) {
+			return 0;
+		}
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			return 0;
 		}
 	}
 }
@@ -0,0 +1,529 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * A {@link Discovery} for the networks where multicast does not go through, such as the ones
+ * split in VLANs.
+ * Configured hosts and IPv4 ranges are swept periodically with unicast M-SEARCH requests, sent to
+ * many hosts at once, and known device description locations are fetched directly. A device that
+ * does not answer for two sweeps in a row is reported as removed.
+ * Each host is given a timeout derived from its past response times, so that a sweep is not held
+ * by silent addresses: a /22 range is swept in a few seconds.
+ * The responses and the devices go through the same {@link DiscoveryFilter} and device registry
+ * as the ones of a {@link SSDPDiscovery}.
+ */
+public class DirectedDiscovery implements Discovery {
+    private static final String TAG = LogTag.SSDP;
+    private static final int DEFAULT_MAX_PROBES = 128;
+    private static final int DEFAULT_INTERVAL = 30;
+    private static final int DEFAULT_CONCURRENT_FETCHES = 8;
+    // timeouts of a probe (milliseconds), the initial one applies to the hosts that never answered
+    private static final long INITIAL_TIMEOUT = 500;
+    private static final long MIN_TIMEOUT = 50;
+    private static final long MAX_TIMEOUT = 2000;
+    private static final int MISSED_SWEEPS = 2;
+    private static final int READ_BUFFER_SIZE = 4096;
+    // attempts to send a probe while the send buffer of the channel is full
+    private static final int MAX_SEND_ATTEMPTS = 3;
+    private static final long SEND_RETRY_DELAY = 10;
+
+    private final Set<String> searchTargets;
+    private final DiscoveryListener listener;
+    private final DescriptionFetchPipeline fetchPipeline;
+    private final List<Iterable<InetAddress>> hosts = new CopyOnWriteArrayList<>();
+    private final List<URI> descriptionLocations = new CopyOnWriteArrayList<>();
+    private final DeviceRegistry registry = new DeviceRegistry();
+    // held by a sweep from start to end, so that the sweep of a previous start never overlaps a new one
+    private final Object sweepLock = new Object();
+    // the smoothed response time of the hosts that answered (milliseconds), guarded by sweepLock
+    private final Map<InetAddress, Long> responseTimes = new HashMap<>();
+    // the locations already resolved during the current sweep, guarded by sweepLock
+    private final Set<URI> sweepLocations = new HashSet<>();
+    // the latest sweep which resolved each device, by uuid
+    private final Map<String, Integer> lastSweeps = new HashMap<>();
+    private volatile int maxProbes = DEFAULT_MAX_PROBES;
+    private volatile int interval = DEFAULT_INTERVAL;
+    private volatile boolean running;
+    // incremented by every start, a sweep goes on while the start it belongs to is the current one
+    private volatile int generation;
+    private volatile int sweep;
+    private volatile DiscoveryFilter filter;
+    private volatile long droppedProbes;
+    private ScheduledExecutorService executor;
+
+    private final DeviceDescriptionRequest.RevalidationCallbacks resolution = new DeviceDescriptionRequest.RevalidationCallbacks() {
+        @Override
+        public void onDeviceDescription(URI location, DialDevice dd, DeviceDescriptionRequest.Validators validators) {
+            onResolved(location, dd);
+        }
+
+        @Override
+        public void onNotModified(URI location) {
+            // the descriptions are fetched without validators
+        }
+
+        @Override
+        public void onError(URI location) {
+            Logger.getLogger(TAG).log(Level.FINE, "could not fetch {0}", location);
+        }
+    };
+
+    /**
+     * @param searchTargets the search targets corresponding to devices of interest
+     * @param listener the listener of the devices
+     */
+    public DirectedDiscovery(Set<String> searchTargets, DiscoveryListener listener) {
+        this(searchTargets, listener, null);
+    }
+
+    /**
+     * @param searchTargets the search targets corresponding to devices of interest
+     * @param listener the listener of the devices
+     * @param httpClient the client of the device description requests, or null to use a default one
+     */
+    public DirectedDiscovery(Set<String> searchTargets, DiscoveryListener listener, OkHttpClient httpClient) {
+        this.searchTargets = Collections.unmodifiableSet(new HashSet<>(searchTargets));
+        this.listener = listener;
+        DeviceDescriptionRequest request = httpClient != null ? new DeviceDescriptionRequest(httpClient) : new DeviceDescriptionRequest();
+        fetchPipeline = new DescriptionFetchPipeline(request, DEFAULT_CONCURRENT_FETCHES);
+    }
+
+    /**
+     * Probe a host on every sweep
+     * @param host the address of the host
+     */
+    public void addHost(InetAddress host) {
+        hosts.add(Collections.singletonList(host));
+    }
+
+    /**
+     * Probe every host of an IPv4 range on every sweep
+     * @param cidr the range in CIDR notation, eg: 192.168.4.0/22, from /16 to /32
+     * @throws IllegalArgumentException if the range is invalid or larger than a /16
+     */
+    public void addRange(String cidr) {
+        hosts.add(new CidrRange(cidr));
+    }
+
+    /**
+     * Fetch a device description on every sweep, without probing its host
+     * @param location the location of the description, eg: http://192.168.4.12:8008/ssdp/device-desc.xml
+     */
+    public void addDescriptionLocation(URI location) {
+        descriptionLocations.add(location);
+    }
+
+    /**
+     * @param max the maximum number of hosts probed at once
+     */
+    public void setMaxConcurrentProbes(int max) {
+        if (max <= 0) {
+            throw new IllegalArgumentException("invalid concurrency");
+        }
+        maxProbes = max;
+    }
+
+    /**
+     * @param interval the time between the end of a sweep and the start of the next one (seconds),
+     * applied on next start
+     */
+    public void setSweepInterval(int interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("invalid interval");
+        }
+        this.interval = interval;
+    }
+
+    /**
+     * Select the devices of interest from their SSDP headers, before fetching their description.
+     * The known devices that are filtered out are reported as removed on the next sweep.
+     * @param filter the filter, or null to accept every device
+     */
+    public void setFilter(DiscoveryFilter filter) {
+        this.filter = filter;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        Logger.getLogger(TAG).log(Level.INFO, "start directed discovery");
+        running = true;
+        int current = ++generation;
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "DirectedDiscovery");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(() -> sweep(current), 0, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stop sweeping and release the sweeping thread, the devices found are reported as removed
+     */
+    @Override
+    public void stop() {
+        List<DialDevice> removed;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            Logger.getLogger(TAG).log(Level.INFO, "stop directed discovery");
+            running = false;
+            // a sweep in progress ends on its next step, even if the discovery is started again meanwhile
+            executor.shutdown();
+            executor = null;
+        }
+        synchronized (lastSweeps) {
+            removed = registry.getDevices();
+            registry.clear();
+            lastSweeps.clear();
+        }
+        for (DialDevice device : removed) {
+            listener.onDeviceRemoved(device);
+        }
+    }
+
+    /**
+     * @return the activity of the device description requests
+     */
+    public DescriptionFetchStats getFetchStats() {
+        return fetchPipeline.getStats();
+    }
+
+    /**
+     * @return the number of probes that could not be sent because the send buffer stayed full
+     */
+    public long getDroppedProbeCount() {
+        return droppedProbes;
+    }
+
+    /**
+     * @param generation the start the sweep belongs to
+     */
+    private void sweep(int generation) {
+        synchronized (sweepLock) {
+            if (!isCurrent(generation)) {
+                return;
+            }
+            long start = now();
+            removeMissingDevices();
+            sweep++;
+            sweepLocations.clear();
+            for (URI location : descriptionLocations) {
+                resolve(location);
+            }
+            try {
+                probe(generation, new HostIterator(new ArrayList<>(hosts)));
+            } catch (IOException e) {
+                Logger.getLogger(TAG).log(Level.WARNING, "directed discovery failed", e);
+            }
+            Logger.getLogger(TAG).log(Level.FINE, "sweep done in {0} ms", now() - start);
+        }
+    }
+
+    /**
+     * @return true if the discovery has not been stopped since the given start
+     */
+    private boolean isCurrent(int generation) {
+        return running && this.generation == generation;
+    }
+
+    /**
+     * Send a unicast M-SEARCH to each host, at most {@link #maxProbes} being waited for at once,
+     * and resolve the locations of the responses
+     */
+    private void probe(int generation, Iterator<InetAddress> targets) throws IOException {
+        SSDPMessageParser parser = new SSDPMessageParser(searchTargets);
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        // the deadline and the sending time of the pending probes
+        Map<InetAddress, Long> deadlines = new HashMap<>();
+        Map<InetAddress, Long> sendTimes = new HashMap<>();
+        try (DatagramChannel channel = DatagramChannel.open(); Selector selector = Selector.open()) {
+            channel.configureBlocking(false);
+            channel.bind(null);
+            channel.register(selector, SelectionKey.OP_READ);
+            // a host whose probe could not be sent yet, and the number of attempts
+            InetAddress blocked = null;
+            int attempts = 0;
+            while (isCurrent(generation) && (blocked != null || targets.hasNext() || !deadlines.isEmpty())) {
+                while (deadlines.size() < maxProbes && (blocked != null || targets.hasNext())) {
+                    InetAddress host = blocked != null ? blocked : targets.next();
+                    blocked = null;
+                    boolean sent;
+                    try {
+                        sent = send(channel, host);
+                    } catch (IOException e) {
+                        Logger.getLogger(TAG).log(Level.FINE, "could not probe " + host, e);
+                        attempts = 0;
+                        continue;
+                    }
+                    if (!sent) {
+                        // the send buffer is full, the host is tried again once some responses are read
+                        if (++attempts < MAX_SEND_ATTEMPTS) {
+                            blocked = host;
+                        } else {
+                            Logger.getLogger(TAG).log(Level.FINE, "could not send probe to {0}", host);
+                            droppedProbes++;
+                            attempts = 0;
+                        }
+                        break;
+                    }
+                    attempts = 0;
+                    long now = now();
+                    deadlines.put(host, now + getTimeout(host));
+                    sendTimes.put(host, now);
+                }
+                long next = blocked != null ? now() + SEND_RETRY_DELAY : Long.MAX_VALUE;
+                for (long deadline : deadlines.values()) {
+                    next = Math.min(next, deadline);
+                }
+                if (next != Long.MAX_VALUE) {
+                    selector.select(Math.max(1, next - now()));
+                    selector.selectedKeys().clear();
+                }
+                SocketAddress from;
+                while ((from = channel.receive(buffer)) != null) {
+                    buffer.flip();
+                    InetAddress host = ((InetSocketAddress) from).getAddress();
+                    Long sent = sendTimes.remove(host);
+                    if (sent != null) {
+                        deadlines.remove(host);
+                        onResponseTime(host, now() - sent);
+                    }
+                    onDatagram(parser, buffer);
+                    buffer.clear();
+                }
+                long now = now();
+                for (Iterator<Map.Entry<InetAddress, Long>> iterator = deadlines.entrySet().iterator(); iterator.hasNext(); ) {
+                    Map.Entry<InetAddress, Long> entry = iterator.next();
+                    if (entry.getValue() <= now) {
+                        iterator.remove();
+                        sendTimes.remove(entry.getKey());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Send the M-SEARCH of every search target to a host
+     * @return false if the send buffer of the channel is full
+     * @throws IOException if the host cannot be probed
+     */
+    private boolean send(DatagramChannel channel, InetAddress host) throws IOException {
+        InetSocketAddress address = new InetSocketAddress(host, SSDPMessage.SSDP_PORT);
+        for (String searchTarget : searchTargets) {
+            // a non-blocking channel sends nothing rather than a part of the datagram
+            if (channel.send(ByteBuffer.wrap(SSDPMessage.createUnicastMSearchMessage(searchTarget, host.getHostAddress()).toBytes()), address) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void onDatagram(SSDPMessageParser parser, ByteBuffer buffer) {
+        SSDPMessage message;
+        try {
+            message = parser.parse(buffer);
+        } catch (ParseException e) {
+            Logger.getLogger(TAG).log(Level.FINE, "invalid SSDP response", e);
+            return;
+        }
+        if (message == null || message.getType() != SSDPMessage.Type.RESPONSE) {
+            return;
+        }
+        String header = message.getHeader(SSDPMessage.LOCATION);
+        if (header == null || header.isEmpty()) {
+            return;
+        }
+        DiscoveryFilter f = filter;
+        if (f != null && !f.accept(message)) {
+            Logger.getLogger(TAG).log(Level.FINEST, "Filtering out {0}", header);
+            return;
+        }
+        URI location;
+        try {
+            location = registry.canonical(URI.create(header));
+        } catch (IllegalArgumentException e) {
+            Logger.getLogger(TAG).log(Level.WARNING, "Skipping invalid location: " + header);
+            return;
+        }
+        if (registry.isSecondaryLocation(location)) {
+            Logger.getLogger(TAG).log(Level.FINEST, "{0} is an other location of a known device", location);
+            return;
+        }
+        resolve(location);
+    }
+
+    /**
+     * Fetch a description once per sweep
+     */
+    private void resolve(URI location) {
+        if (sweepLocations.add(location)) {
+            fetchPipeline.submit(location, null, true, resolution);
+        }
+    }
+
+    private void onResolved(URI location, DialDevice dd) {
+        List<DialDevice> removed = new ArrayList<>(1);
+        DialDevice added = null;
+        synchronized (lastSweeps) {
+            if (!running) {
+                return;
+            }
+            DiscoveryFilter f = filter;
+            if (f != null && !f.accept(dd)) {
+                Logger.getLogger(TAG).log(Level.FINE, "Filtering out the device at {0}", location);
+                remove(dd.getUuid(), removed);
+            } else {
+                DialDevice previous = registry.getByLocation(location);
+                if (previous != null && !previous.getUuid().equals(dd.getUuid())) {
+                    Logger.getLogger(TAG).log(Level.FINE, "An other device answered at {0}", location);
+                    remove(previous.getUuid(), removed);
+                }
+                lastSweeps.put(dd.getUuid(), sweep);
+                if (registry.update(location, dd) != DeviceRegistry.Update.UNCHANGED) {
+                    added = registry.getByUuid(dd.getUuid());
+                }
+            }
+        }
+        for (DialDevice device : removed) {
+            listener.onDeviceRemoved(device);
+        }
+        if (added != null) {
+            listener.onDeviceAdded(added);
+        }
+    }
+
+    private void removeMissingDevices() {
+        List<DialDevice> removed = new ArrayList<>();
+        synchronized (lastSweeps) {
+            DiscoveryFilter f = filter;
+            for (DialDevice device : registry.getDevices()) {
+                Integer last = lastSweeps.get(device.getUuid());
+                if (last == null || sweep - last >= MISSED_SWEEPS) {
+                    Logger.getLogger(TAG).log(Level.FINE, "{0} did not answer the latest sweeps", device.getLocation());
+                    remove(device.getUuid(), removed);
+                } else if (f != null && !f.accept(device)) {
+                    Logger.getLogger(TAG).log(Level.FINE, "{0} is filtered out", device.getLocation());
+                    remove(device.getUuid(), removed);
+                }
+            }
+        }
+        for (DialDevice device : removed) {
+            listener.onDeviceRemoved(device);
+        }
+    }
+
+    /**
+     * Forget a device, while holding the lock of the sweeps
+     * @param removed the list the device is added to if it has been resolved
+     */
+    private void remove(String uuid, List<DialDevice> removed) {
+        lastSweeps.remove(uuid);
+        DeviceRegistry.Removal removal = registry.removeDevice(uuid);
+        if (removal != null && removal.device != null) {
+            removed.add(removal.device);
+        }
+    }
+
+    /**
+     * @return a few times the smoothed response time of a host, or the initial timeout if it never answered
+     */
+    long getTimeout(InetAddress host) {
+        Long responseTime = responseTimes.get(host);
+        if (responseTime == null) {
+            return INITIAL_TIMEOUT;
+        }
+        return Math.max(MIN_TIMEOUT, Math.min(MAX_TIMEOUT, 4 * responseTime));
+    }
+
+    void onResponseTime(InetAddress host, long responseTime) {
+        Long previous = responseTimes.get(host);
+        responseTimes.put(host, previous == null ? responseTime : (7 * previous + responseTime) / 8);
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    /**
+     * Iterates over the hosts of several sources
+     */
+    private static class HostIterator implements Iterator<InetAddress> {
+        private final Iterator<Iterable<InetAddress>> sources;
+        private Iterator<InetAddress> current = Collections.<InetAddress>emptyList().iterator();
+
+        HostIterator(List<Iterable<InetAddress>> sources) {
+            this.sources = sources.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext() && sources.hasNext()) {
+                current = sources.next().iterator();
+            }
+            return current.hasNext();
+        }
+
+        @Override
+        public InetAddress next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
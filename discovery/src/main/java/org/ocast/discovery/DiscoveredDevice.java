@@ -20,6 +20,9 @@
 package org.ocast.discovery;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class DiscoveredDevice {
     private final String mFriendlyName;
@@ -27,13 +30,23 @@ public class DiscoveredDevice {
     private final String mModelName;
     private final String mUuid;
     private final URI mDialApplURI;
+    private final List<DeviceIcon> mIcons;
 
     public DiscoveredDevice(String uuid, String friendlyName, String manufacturer, String modelName, URI urlBase) {
+        this(uuid, friendlyName, manufacturer, modelName, urlBase, null);
+    }
+
+    /**
+     * @param icons the icons listed in the device description, or null
+     */
+    public DiscoveredDevice(String uuid, String friendlyName, String manufacturer, String modelName, URI urlBase, List<DeviceIcon> icons) {
         mUuid = uuid;
         mFriendlyName = friendlyName;
-        mManufacturer = manufacturer;
-        mModelName = modelName;
+        // shared by the devices of a kind
+        mManufacturer = StringInterner.intern(manufacturer);
+        mModelName = StringInterner.intern(modelName);
         mDialApplURI = urlBase;
+        mIcons = icons == null || icons.isEmpty() ? Collections.<DeviceIcon>emptyList() : Collections.unmodifiableList(new ArrayList<>(icons));
     }
 
     /**
@@ -82,13 +95,44 @@ public class DiscoveredDevice {
         return mDialApplURI;
     }
 
+    /**
+     * Retrieve the icons found in the iconList of the device tag
+     *
+     * @return the icons, the list is immutable and empty if the device has no icon
+     */
+    public List<DeviceIcon> getIcons() {
+        return mIcons;
+    }
+
+    /**
+     * Pick the icon to be displayed at a given size: the smallest one that is at least that large,
+     * or the largest one if none is
+     *
+     * @param size the size the icon is displayed at (pixels)
+     * @return the icon, or null if the device has no icon
+     */
+    public DeviceIcon getIcon(int size) {
+        DeviceIcon best = null;
+        for (DeviceIcon icon : mIcons) {
+            int side = Math.min(icon.getWidth(), icon.getHeight());
+            if (best == null) {
+                best = icon;
+                continue;
+            }
+            int bestSide = Math.min(best.getWidth(), best.getHeight());
+            if (bestSide < size ? side > bestSide : side >= size && side < bestSide) {
+                best = icon;
+            }
+        }
+        return best;
+    }
 
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
 
-        DiscoveredDevice that = (DialDevice) o;
+        DiscoveredDevice that = (DiscoveredDevice) o;
 
         if (mFriendlyName != null ? !mFriendlyName.equals(that.mFriendlyName) : that.mFriendlyName != null)
             return false;
@@ -97,7 +141,9 @@ public class DiscoveredDevice {
         if (mModelName != null ? !mModelName.equals(that.mModelName) : that.mModelName != null)
             return false;
         if (mUuid != null ? !mUuid.equals(that.mUuid) : that.mUuid != null) return false;
-        return mDialApplURI != null ? mDialApplURI.equals(that.mDialApplURI) : that.mDialApplURI == null;
+        if (mDialApplURI != null ? !mDialApplURI.equals(that.mDialApplURI) : that.mDialApplURI != null)
+            return false;
+        return mIcons.equals(that.mIcons);
 
     }
 
@@ -108,6 +154,7 @@ public class DiscoveredDevice {
         result = 31 * result + (mModelName != null ? mModelName.hashCode() : 0);
         result = 31 * result + (mUuid != null ? mUuid.hashCode() : 0);
         result = 31 * result + (mDialApplURI != null ? mDialApplURI.hashCode() : 0);
+        result = 31 * result + mIcons.hashCode();
         return result;
     }
 }
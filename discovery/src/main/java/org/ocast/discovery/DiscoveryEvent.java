@@ -0,0 +1,60 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+/**
+ * A change of the discovered devices
+ */
+public class DiscoveryEvent {
+
+    /**
+     * The kind of change
+     */
+    public enum Type {
+        /**
+         * the device has been found, or its description changed
+         */
+        ADDED,
+        /**
+         * the device has been lost
+         */
+        REMOVED
+    }
+
+    private final Type mType;
+    private final DiscoveredDevice mDevice;
+
+    public DiscoveryEvent(Type type, DiscoveredDevice device) {
+        mType = type;
+        mDevice = device;
+    }
+
+    public Type getType() {
+        return mType;
+    }
+
+    public DiscoveredDevice getDevice() {
+        return mDevice;
+    }
+
+    @Override
+    public String toString() {
+        return mType + " " + mDevice.getUuid();
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Selects the devices of interest before their description is fetched.
+ * The SSDP headers of an advertisement are matched against allow and deny lists, so that the
+ * description of a device that is filtered out is never requested. The manufacturer lists apply
+ * to the descriptions, whether they are fetched, cached or restored from a {@link PersistentDeviceCache}.
+ * A filter is immutable, use a {@link Builder} to create one.
+ */
+public final class DiscoveryFilter {
+    private final List<Rule> mHeaderRules;
+    private final Set<String> mAllowedManufacturers;
+    private final Set<String> mDeniedManufacturers;
+
+    private static class Rule {
+        final int header;
+        final String value;
+        final boolean allow;
+
+        Rule(int header, String value, boolean allow) {
+            this.header = header;
+            this.value = value;
+            this.allow = allow;
+        }
+    }
+
+    /**
+     * Builds a {@link DiscoveryFilter}
+     */
+    public static class Builder {
+        private final List<Rule> mHeaderRules = new ArrayList<>();
+        private final Set<String> mAllowedManufacturers = new HashSet<>();
+        private final Set<String> mDeniedManufacturers = new HashSet<>();
+
+        /**
+         * Accept only the advertisements whose header contains one of the allowed values.
+         * A header without allowed values accepts any value.
+         * @param header the header name, one of LOCATION, USN, SERVER, ST, NT, CACHE-CONTROL
+         * @param value a substring of the header value, case insensitive
+         * @return this builder
+         */
+        public Builder allowHeader(String header, String value) {
+            mHeaderRules.add(new Rule(checkHeader(header), value.toLowerCase(Locale.ROOT), true));
+            return this;
+        }
+
+        /**
+         * Reject the advertisements whose header contains a value
+         * @param header the header name, one of LOCATION, USN, SERVER, ST, NT, CACHE-CONTROL
+         * @param value a substring of the header value, case insensitive
+         * @return this builder
+         */
+        public Builder denyHeader(String header, String value) {
+            mHeaderRules.add(new Rule(checkHeader(header), value.toLowerCase(Locale.ROOT), false));
+            return this;
+        }
+
+        /**
+         * Accept only the devices of some manufacturers, typically the ones a driver is registered for
+         * @param manufacturers the manufacturer names, case sensitive
+         * @return this builder
+         */
+        public Builder allowManufacturers(Collection<String> manufacturers) {
+            mAllowedManufacturers.addAll(manufacturers);
+            return this;
+        }
+
+        /**
+         * Reject the devices of a manufacturer
+         * @param manufacturer the manufacturer name, case sensitive
+         * @return this builder
+         */
+        public Builder denyManufacturer(String manufacturer) {
+            mDeniedManufacturers.add(manufacturer);
+            return this;
+        }
+
+        public DiscoveryFilter build() {
+            return new DiscoveryFilter(this);
+        }
+
+        private static int checkHeader(String header) {
+            int index = SSDPMessage.headerIndex(header);
+            if (index < 0) {
+                throw new IllegalArgumentException("unsupported header " + header);
+            }
+            return index;
+        }
+    }
+
+    private DiscoveryFilter(Builder builder) {
+        mHeaderRules = Collections.unmodifiableList(new ArrayList<>(builder.mHeaderRules));
+        mAllowedManufacturers = Collections.unmodifiableSet(new HashSet<>(builder.mAllowedManufacturers));
+        mDeniedManufacturers = Collections.unmodifiableSet(new HashSet<>(builder.mDeniedManufacturers));
+    }
+
+    /**
+     * Check an advertisement (M-SEARCH response or NOTIFY) before its location is resolved
+     * @param message the advertisement
+     * @return true if the advertised device may be of interest
+     */
+    public boolean accept(SSDPMessage message) {
+        // headers having allowed values, and whether one of them matched
+        int allowed = 0;
+        int matched = 0;
+        for (Rule rule : mHeaderRules) {
+            String value = message.getHeader(SSDPMessage.HEADERS[rule.header]);
+            boolean contains = value != null && value.toLowerCase(Locale.ROOT).contains(rule.value);
+            if (!rule.allow) {
+                if (contains) {
+                    return false;
+                }
+                continue;
+            }
+            allowed |= 1 << rule.header;
+            if (contains) {
+                matched |= 1 << rule.header;
+            }
+        }
+        return allowed == matched;
+    }
+
+    /**
+     * Check a device description
+     * @param device the device
+     * @return true if the device is of interest
+     */
+    public boolean accept(DiscoveredDevice device) {
+        String manufacturer = device.getManufacturer();
+        if (mDeniedManufacturers.contains(manufacturer)) {
+            return false;
+        }
+        return mAllowedManufacturers.isEmpty() || mAllowedManufacturers.contains(manufacturer);
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+import org.ocast.discovery.flow.Flow;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Publishes the changes of the discovered devices to any number of Subscribers, without ever
+ * blocking the discovery.
+ * Every Subscriber first receives the devices already discovered, then their changes. Each one
+ * receives events on an executor, at its own pace: while it does not request more, the changes
+ * of a device are conflated into the latest one, and a device added then removed meanwhile is
+ * never delivered. A Subscriber therefore never buffers more than one event per device.
+ */
+public class DiscoveryPublisher implements Flow.Publisher<DiscoveryEvent>, Discovery.DiscoveryListener {
+    private static final String TAG = LogTag.DISCOVERY;
+
+    private static Executor defaultExecutor;
+
+    private final Executor executor;
+    // the discovered devices by uuid
+    private final Map<String, DiscoveredDevice> devices = new LinkedHashMap<>();
+    private final List<DiscoverySubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private boolean closed;
+
+    /**
+     * Creates a publisher delivering the events on a shared pool of daemon threads
+     */
+    public DiscoveryPublisher() {
+        this(null);
+    }
+
+    /**
+     * @param executor the executor delivering the events, or null to use a shared pool of daemon threads
+     */
+    public DiscoveryPublisher(Executor executor) {
+        this.executor = executor != null ? executor : getDefaultExecutor();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super DiscoveryEvent> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+        DiscoverySubscription subscription = new DiscoverySubscription(subscriber);
+        boolean complete;
+        synchronized (this) {
+            complete = closed;
+            if (!complete) {
+                // replay the current devices
+                for (DiscoveredDevice device : devices.values()) {
+                    subscription.pending.put(device.getUuid(), new DiscoveryEvent(DiscoveryEvent.Type.ADDED, device));
+                }
+                subscriptions.add(subscription);
+            }
+        }
+        subscriber.onSubscribe(subscription);
+        if (complete) {
+            subscription.complete();
+        }
+    }
+
+    @Override
+    public void onDeviceAdded(DiscoveredDevice dd) {
+        publish(new DiscoveryEvent(DiscoveryEvent.Type.ADDED, dd));
+    }
+
+    @Override
+    public void onDeviceRemoved(DiscoveredDevice dd) {
+        publish(new DiscoveryEvent(DiscoveryEvent.Type.REMOVED, dd));
+    }
+
+    /**
+     * Complete every subscription once its pending events are delivered.
+     * Nothing is published afterwards.
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        for (DiscoverySubscription subscription : subscriptions) {
+            subscription.complete();
+        }
+    }
+
+    private void publish(DiscoveryEvent event) {
+        String uuid = event.getDevice().getUuid();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (event.getType() == DiscoveryEvent.Type.ADDED) {
+                devices.put(uuid, event.getDevice());
+            } else {
+                devices.remove(uuid);
+            }
+            for (DiscoverySubscription subscription : subscriptions) {
+                subscription.offer(uuid, event);
+            }
+        }
+        for (DiscoverySubscription subscription : subscriptions) {
+            subscription.signal();
+        }
+    }
+
+    private static synchronized Executor getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            defaultExecutor = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "DiscoveryPublisher");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return defaultExecutor;
+    }
+
+    private class DiscoverySubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super DiscoveryEvent> subscriber;
+        // events not delivered yet, the latest one per device; guarded by the publisher
+        final Map<String, DiscoveryEvent> pending = new LinkedHashMap<>();
+        // the devices delivered as added; only used by the drain
+        private final Set<String> delivered = new HashSet<>();
+        // pending drains, only one runs at a time
+        private final AtomicInteger wip = new AtomicInteger();
+        private long demand;
+        private boolean cancelled;
+        private boolean completing;
+        private boolean done;
+        private Throwable error;
+
+        DiscoverySubscription(Flow.Subscriber<? super DiscoveryEvent> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (DiscoveryPublisher.this) {
+                if (n <= 0) {
+                    error = new IllegalArgumentException("non-positive request " + n);
+                } else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (DiscoveryPublisher.this) {
+                cancelled = true;
+                pending.clear();
+            }
+            subscriptions.remove(this);
+        }
+
+        void offer(String uuid, DiscoveryEvent event) {
+            if (!cancelled) {
+                // the previous event of the device is superseded
+                pending.remove(uuid);
+                pending.put(uuid, event);
+            }
+        }
+
+        void complete() {
+            synchronized (DiscoveryPublisher.this) {
+                completing = true;
+            }
+            signal();
+        }
+
+        void signal() {
+            if (wip.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RuntimeException e) {
+                    Logger.getLogger(TAG).log(Level.WARNING, "could not deliver discovery events", e);
+                    wip.set(0);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                drain();
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            while (true) {
+                DiscoveryEvent event = null;
+                Throwable failure;
+                boolean finished;
+                synchronized (DiscoveryPublisher.this) {
+                    if (done || cancelled) {
+                        return;
+                    }
+                    failure = error;
+                    if (failure == null && demand > 0) {
+                        Iterator<DiscoveryEvent> iterator = pending.values().iterator();
+                        while (event == null && iterator.hasNext()) {
+                            DiscoveryEvent next = iterator.next();
+                            iterator.remove();
+                            // a device removed before being delivered is skipped
+                            if (next.getType() == DiscoveryEvent.Type.ADDED || delivered.contains(next.getDevice().getUuid())) {
+                                event = next;
+                                demand--;
+                            }
+                        }
+                    }
+                    finished = failure != null || (event == null && completing && pending.isEmpty());
+                    if (finished) {
+                        done = true;
+                        subscriptions.remove(this);
+                    }
+                }
+                if (failure != null) {
+                    subscriber.onError(failure);
+                    return;
+                }
+                if (finished) {
+                    subscriber.onComplete();
+                    return;
+                }
+                if (event == null) {
+                    return;
+                }
+                if (event.getType() == DiscoveryEvent.Type.ADDED) {
+                    delivered.add(event.getDevice().getUuid());
+                } else {
+                    delivered.remove(event.getDevice().getUuid());
+                }
+                try {
+                    subscriber.onNext(event);
+                } catch (RuntimeException e) {
+                    Logger.getLogger(TAG).log(Level.WARNING, "discovery subscriber failed", e);
+                    cancel();
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Checks whether devices are still reachable with a HTTP HEAD on their location.
+ * Any HTTP response means the device is alive. A device is declared dead when the request fails
+ * twice. The attempts share the probe timeout, so that a dead device is reported within it.
+ */
+class LivenessProber {
+    private static final String TAG = LogTag.DISCOVERY;
+    private static final int ATTEMPTS = 2;
+
+    private final OkHttpClient client;
+    private final int timeout;
+    // locations being probed
+    private final Set<URI> probing = new HashSet<>();
+
+    /**
+     * Result of a probe
+     */
+    interface Listener {
+        void onAlive(URI location);
+        void onDead(URI location);
+    }
+
+    /**
+     * @param client the client the probe client is derived from
+     * @param timeout the time after which an unreachable device is declared dead (milliseconds)
+     */
+    LivenessProber(OkHttpClient client, int timeout) {
+        this.client = client.newBuilder()
+                .retryOnConnectionFailure(false)
+                .build();
+        this.timeout = timeout;
+    }
+
+    /**
+     * Probe a location, unless it is already being probed
+     * @param location the device location
+     * @param listener the listener notified of the result, from a HTTP thread
+     */
+    void probe(URI location, Listener listener) {
+        synchronized (probing) {
+            if (!probing.add(location)) {
+                return;
+            }
+        }
+        Request request;
+        try {
+            request = new Request.Builder().url(location.toURL()).head().build();
+        } catch (IOException | IllegalArgumentException e) {
+            Logger.getLogger(TAG).log(Level.WARNING, "could not probe " + location, e);
+            finish(location);
+            return;
+        }
+        send(request, location, ATTEMPTS, now() + timeout, listener);
+    }
+
+    /**
+     * Send an attempt, with an equal share of the time left before the deadline
+     * @param attempts the number of attempts left, this one included
+     * @param deadline the time at which the probe must be over (milliseconds)
+     */
+    private void send(Request request, URI location, int attempts, long deadline, Listener listener) {
+        long remaining = deadline - now();
+        if (remaining <= 0) {
+            reportDead(location, listener);
+            return;
+        }
+        // the connection and the response share the time of the attempt
+        long phaseTimeout = Math.max(1, remaining / attempts / 2);
+        OkHttpClient attemptClient = client.newBuilder()
+                .connectTimeout(phaseTimeout, TimeUnit.MILLISECONDS)
+                .writeTimeout(phaseTimeout, TimeUnit.MILLISECONDS)
+                .readTimeout(phaseTimeout, TimeUnit.MILLISECONDS)
+                .build();
+        attemptClient.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                if (attempts > 1) {
+                    send(request, location, attempts - 1, deadline, listener);
+                    return;
+                }
+                reportDead(location, listener);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.close();
+                finish(location);
+                listener.onAlive(location);
+            }
+        });
+    }
+
+    private void reportDead(URI location, Listener listener) {
+        Logger.getLogger(TAG).log(Level.FINE, "{0} is not reachable", location);
+        finish(location);
+        listener.onDead(location);
+    }
+
+    private void finish(URI location) {
+        synchronized (probing) {
+            probing.remove(location);
+        }
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * A {@link Discovery} receiving the devices from the {@link LocalDiscoveryServer} of an other
+ * process of the host.
+ * When no server runs, or when it does not search the requested targets, the devices are
+ * discovered in-process by a {@link SSDPDiscovery}. The discovery also falls back to it when the
+ * server goes away, after reporting the devices it served as removed. While discovering
+ * in-process, the connection to the server is attempted again periodically, so that a restarted
+ * server is used again.
+ */
+public class LocalDiscovery implements Discovery {
+    private static final String TAG = LogTag.DISCOVERY;
+    private static final int CONNECT_TIMEOUT = 500;
+    private static final long RECONNECT_INTERVAL = 5000;
+
+    private final Set<String> searchTargets;
+    private final DiscoveryListener listener;
+    private final OkHttpClient httpClient;
+    private final int port;
+    // the devices received from the server, by uuid
+    private final Map<String, DiscoveredDevice> devices = new LinkedHashMap<>();
+    private Socket socket;
+    private SSDPDiscovery fallback;
+    private ScheduledExecutorService reconnector;
+    private ScheduledFuture<?> reconnection;
+    private boolean running;
+
+    /**
+     * @param searchTargets the search targets corresponding to devices of interest
+     * @param listener the listener of the devices
+     */
+    public LocalDiscovery(Set<String> searchTargets, DiscoveryListener listener) {
+        this(searchTargets, listener, null, LocalDiscoveryServer.DEFAULT_PORT);
+    }
+
+    /**
+     * @param searchTargets the search targets corresponding to devices of interest
+     * @param listener the listener of the devices
+     * @param httpClient the client of the in-process discovery, or null to use a default one
+     * @param port the port of the server
+     */
+    public LocalDiscovery(Set<String> searchTargets, DiscoveryListener listener, OkHttpClient httpClient, int port) {
+        this.searchTargets = new HashSet<>(searchTargets);
+        this.listener = listener;
+        this.httpClient = httpClient;
+        this.port = port;
+    }
+
+    /**
+     * Connect to the server, or start an in-process discovery if it is not available
+     */
+    @Override
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        try {
+            connect();
+        } catch (IOException e) {
+            Logger.getLogger(TAG).log(Level.INFO, "no local discovery server, discovering in-process: " + e.getMessage());
+            startFallback();
+        }
+    }
+
+    /**
+     * Disconnect from the server, or stop the in-process discovery. The devices received from the
+     * server are reported as removed.
+     */
+    @Override
+    public void stop() {
+        List<DiscoveredDevice> removed;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            if (socket != null) {
+                closeQuietly(socket);
+                socket = null;
+            }
+            if (fallback != null) {
+                fallback.shutdown();
+                fallback = null;
+            }
+            if (reconnector != null) {
+                reconnector.shutdownNow();
+                reconnector = null;
+                reconnection = null;
+            }
+            removed = new ArrayList<>(devices.values());
+            devices.clear();
+        }
+        for (DiscoveredDevice device : removed) {
+            listener.onDeviceRemoved(device);
+        }
+    }
+
+    /**
+     * @return true if the devices are received from a server, false if they are discovered in-process
+     */
+    public synchronized boolean isConnected() {
+        return socket != null;
+    }
+
+    private void connect() throws IOException {
+        final Socket s = new Socket();
+        try {
+            s.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT);
+            s.setSoTimeout(CONNECT_TIMEOUT);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            LocalDiscoveryProtocol.writeHeader(out);
+            out.flush();
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            LocalDiscoveryProtocol.readHeader(in);
+            Set<String> served = LocalDiscoveryProtocol.readSearchTargets(in);
+            if (!served.containsAll(searchTargets)) {
+                throw new IOException("the local discovery server does not search " + searchTargets);
+            }
+            s.setSoTimeout(0);
+            if (fallback != null) {
+                // the devices found in-process are reported as removed before the server sends them
+                fallback.shutdown();
+                fallback = null;
+            }
+            if (reconnection != null) {
+                reconnection.cancel(false);
+                reconnection = null;
+            }
+            socket = s;
+            Thread reader = new Thread(() -> read(s, in), "LocalDiscovery");
+            reader.setDaemon(true);
+            reader.start();
+        } catch (IOException e) {
+            closeQuietly(s);
+            throw e;
+        }
+    }
+
+    private void read(Socket s, DataInputStream in) {
+        try {
+            while (true) {
+                DiscoveryEvent event = LocalDiscoveryProtocol.readEvent(in);
+                DiscoveredDevice device = event.getDevice();
+                synchronized (this) {
+                    if (socket != s) {
+                        return;
+                    }
+                    if (event.getType() == DiscoveryEvent.Type.ADDED) {
+                        devices.put(device.getUuid(), device);
+                    } else if (devices.remove(device.getUuid()) == null) {
+                        continue;
+                    }
+                }
+                if (event.getType() == DiscoveryEvent.Type.ADDED) {
+                    listener.onDeviceAdded(device);
+                } else {
+                    listener.onDeviceRemoved(device);
+                }
+            }
+        } catch (IOException e) {
+            disconnected(s, e);
+        }
+    }
+
+    private void disconnected(Socket s, IOException cause) {
+        List<DiscoveredDevice> removed;
+        synchronized (this) {
+            closeQuietly(s);
+            // the socket is reset when the discovery is stopped
+            if (socket != s) {
+                return;
+            }
+            Logger.getLogger(TAG).log(Level.WARNING, "local discovery server lost, discovering in-process", cause);
+            socket = null;
+            removed = new ArrayList<>(devices.values());
+            devices.clear();
+        }
+        for (DiscoveredDevice device : removed) {
+            listener.onDeviceRemoved(device);
+        }
+        synchronized (this) {
+            if (running && socket == null) {
+                startFallback();
+            }
+        }
+    }
+
+    private void startFallback() {
+        if (fallback == null) {
+            fallback = new SSDPDiscovery(searchTargets, listener, httpClient);
+        }
+        fallback.start();
+        if (reconnector == null) {
+            reconnector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "LocalDiscovery");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        if (reconnection == null) {
+            reconnection = reconnector.scheduleWithFixedDelay(this::reconnect, RECONNECT_INTERVAL, RECONNECT_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Switch from the in-process discovery to the server, if it is available again
+     */
+    private synchronized void reconnect() {
+        if (!running || socket != null) {
+            return;
+        }
+        try {
+            connect();
+            Logger.getLogger(TAG).log(Level.INFO, "local discovery server is back");
+        } catch (IOException e) {
+            Logger.getLogger(TAG).log(Level.FINEST, "local discovery server still not available: " + e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(Socket s) {
+        try {
+            s.close();
+        } catch (IOException e) {
+            // nothing to do
+        }
+    }
+}
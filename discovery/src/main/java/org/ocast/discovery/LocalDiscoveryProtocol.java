@@ -0,0 +1,114 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The protocol between a {@link LocalDiscoveryServer} and its {@link LocalDiscovery} clients.
+ * A client sends the magic and the version of the protocol, the server answers with them followed
+ * by its search targets, then streams the discovery events: the devices already discovered first,
+ * then their changes.
+ */
+final class LocalDiscoveryProtocol {
+    static final int MAGIC = 0x4f434453; // OCDS
+    static final int VERSION = 2;
+    static final byte DEVICE_ADDED = 1;
+    static final byte DEVICE_REMOVED = 2;
+
+    private LocalDiscoveryProtocol() {
+    }
+
+    static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    static void readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("unsupported discovery protocol");
+        }
+    }
+
+    static void writeSearchTargets(DataOutputStream out, Set<String> searchTargets) throws IOException {
+        out.writeInt(searchTargets.size());
+        for (String searchTarget : searchTargets) {
+            out.writeUTF(searchTarget);
+        }
+    }
+
+    static Set<String> readSearchTargets(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Set<String> searchTargets = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            searchTargets.add(in.readUTF());
+        }
+        return searchTargets;
+    }
+
+    static void writeEvent(DataOutputStream out, DiscoveryEvent event) throws IOException {
+        DiscoveredDevice device = event.getDevice();
+        out.writeByte(event.getType() == DiscoveryEvent.Type.ADDED ? DEVICE_ADDED : DEVICE_REMOVED);
+        writeString(out, device.getUuid());
+        writeString(out, device.getFriendlyName());
+        writeString(out, device.getManufacturer());
+        writeString(out, device.getModelName());
+        writeUri(out, device.getDialURI());
+        writeUri(out, device instanceof DialDevice ? ((DialDevice) device).getLocation() : null);
+        PersistentDeviceCache.writeIcons(out, device.getIcons());
+    }
+
+    static DiscoveryEvent readEvent(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        if (type != DEVICE_ADDED && type != DEVICE_REMOVED) {
+            throw new IOException("unknown discovery event " + type);
+        }
+        try {
+            DialDevice device = new DialDevice(readString(in), readString(in), readString(in), readString(in), readUri(in), readUri(in), PersistentDeviceCache.readIcons(in), true);
+            return new DiscoveryEvent(type == DEVICE_ADDED ? DiscoveryEvent.Type.ADDED : DiscoveryEvent.Type.REMOVED, device);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("corrupted discovery event", e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static void writeUri(DataOutputStream out, URI value) throws IOException {
+        writeString(out, value == null ? null : value.toString());
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static URI readUri(DataInputStream in) throws IOException {
+        String value = readString(in);
+        return value == null ? null : URI.create(value);
+    }
+}
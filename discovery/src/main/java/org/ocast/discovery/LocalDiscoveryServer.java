@@ -0,0 +1,245 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+import org.ocast.discovery.flow.Flow;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Serves the devices found by a {@link SSDPDiscovery} to {@link LocalDiscovery} clients of other
+ * processes, over a loopback socket.
+ * The processes of a host then share a single discovery instead of each one scanning the network
+ * and fetching the same device descriptions.
+ * Every client is served by a thread of its own, which performs the handshake and then watches
+ * the connection, so that a client going away is forgotten right away.
+ */
+public class LocalDiscoveryServer {
+    private static final String TAG = LogTag.DISCOVERY;
+    /**
+     * The port the server listens to by default
+     */
+    public static final int DEFAULT_PORT = 18091;
+    private static final int HANDSHAKE_TIMEOUT = 2000;
+
+    private final SSDPDiscovery discovery;
+    private final Set<String> searchTargets;
+    private final int port;
+    private final Set<Socket> clients = new CopyOnWriteArraySet<>();
+    private ServerSocket serverSocket;
+
+    /**
+     * @param discovery the discovery whose devices are served, it is started and stopped by the caller
+     * @param searchTargets the search targets of the discovery
+     * @param port the loopback port to listen to, 0 for any free port
+     */
+    public LocalDiscoveryServer(SSDPDiscovery discovery, Set<String> searchTargets, int port) {
+        this.discovery = discovery;
+        this.searchTargets = Collections.unmodifiableSet(new HashSet<>(searchTargets));
+        this.port = port;
+    }
+
+    /**
+     * Start accepting clients
+     * @throws IOException if the port could not be bound, typically because an other server runs
+     */
+    public synchronized void start() throws IOException {
+        if (serverSocket != null) {
+            return;
+        }
+        final ServerSocket socket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+        serverSocket = socket;
+        Thread acceptor = new Thread(() -> accept(socket), "LocalDiscoveryServer");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        Logger.getLogger(TAG).log(Level.INFO, "serving discovery on port " + socket.getLocalPort());
+    }
+
+    /**
+     * Stop accepting clients and disconnect the connected ones
+     */
+    public synchronized void stop() {
+        if (serverSocket == null) {
+            return;
+        }
+        closeQuietly(serverSocket);
+        serverSocket = null;
+        for (Socket client : clients) {
+            closeQuietly(client);
+        }
+        clients.clear();
+    }
+
+    /**
+     * @return the port the server listens to, or -1 if it is not started
+     */
+    public synchronized int getLocalPort() {
+        return serverSocket == null ? -1 : serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return the number of connected clients
+     */
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    private void accept(ServerSocket socket) {
+        while (!socket.isClosed()) {
+            Socket client;
+            try {
+                client = socket.accept();
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    Logger.getLogger(TAG).log(Level.WARNING, "could not accept discovery client", e);
+                }
+                return;
+            }
+            Thread handler = new Thread(() -> serve(client), "LocalDiscoveryClient");
+            handler.setDaemon(true);
+            handler.start();
+        }
+    }
+
+    /**
+     * Serve a client until it disconnects
+     */
+    private void serve(Socket client) {
+        DataInputStream in;
+        DataOutputStream out;
+        try {
+            client.setSoTimeout(HANDSHAKE_TIMEOUT);
+            client.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+            LocalDiscoveryProtocol.readHeader(in);
+            out = new DataOutputStream(new BufferedOutputStream(client.getOutputStream()));
+            LocalDiscoveryProtocol.writeHeader(out);
+            LocalDiscoveryProtocol.writeSearchTargets(out, searchTargets);
+            out.flush();
+            client.setSoTimeout(0);
+        } catch (IOException e) {
+            Logger.getLogger(TAG).log(Level.WARNING, "discovery client rejected", e);
+            closeQuietly(client);
+            return;
+        }
+        synchronized (this) {
+            if (serverSocket == null) {
+                // stopped during the handshake
+                closeQuietly(client);
+                return;
+            }
+            clients.add(client);
+        }
+        ClientSubscriber subscriber = new ClientSubscriber(client, out);
+        discovery.getPublisher().subscribe(subscriber);
+        try {
+            // a client sends nothing after the handshake, until it closes the connection
+            while (in.read() >= 0) {
+                // ignored
+            }
+        } catch (IOException e) {
+            Logger.getLogger(TAG).log(Level.FINEST, "discovery client connection failed", e);
+        }
+        Logger.getLogger(TAG).log(Level.FINE, "discovery client disconnected");
+        subscriber.close();
+    }
+
+    /**
+     * Writes the discovery events to a client, from the publisher executor one at a time
+     */
+    private class ClientSubscriber implements Flow.Subscriber<DiscoveryEvent> {
+        private final Socket client;
+        private final DataOutputStream out;
+        private volatile Flow.Subscription subscription;
+        private volatile boolean closed;
+
+        ClientSubscriber(Socket client, DataOutputStream out) {
+            this.client = client;
+            this.out = out;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (closed) {
+                subscription.cancel();
+                return;
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(DiscoveryEvent item) {
+            try {
+                LocalDiscoveryProtocol.writeEvent(out, item);
+                out.flush();
+            } catch (IOException e) {
+                Logger.getLogger(TAG).log(Level.FINE, "discovery client disconnected", e);
+                close();
+                return;
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            close();
+        }
+
+        @Override
+        public void onComplete() {
+            close();
+        }
+
+        /**
+         * Stop sending events and close the connection
+         */
+        void close() {
+            closed = true;
+            Flow.Subscription s = subscription;
+            if (s != null) {
+                s.cancel();
+            }
+            clients.remove(client);
+            closeQuietly(client);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // nothing to do
+        }
+    }
+}
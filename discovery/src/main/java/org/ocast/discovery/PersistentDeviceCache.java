@@ -0,0 +1,175 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An on-disk snapshot of resolved devices, used to show the devices of the previous session as
+ * soon as the discovery starts.
+ * The snapshot is written to a temporary file which then replaces the previous one, so that a
+ * crash while saving never leaves a truncated snapshot.
+ */
+public class PersistentDeviceCache {
+    private static final int MAGIC = 0x4f434443; // OCDC
+    private static final int VERSION = 2;
+    // the snapshots written before the icons were saved
+    private static final int VERSION_WITHOUT_ICONS = 1;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File mFile;
+
+    /**
+     * @param file the file holding the snapshot
+     */
+    public PersistentDeviceCache(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Read the devices of the snapshot. They are returned as not verified.
+     * @return the devices, or an empty list if there is no snapshot yet
+     * @throws IOException if the snapshot could not be read
+     */
+    public List<DialDevice> load() throws IOException {
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+        } catch (FileNotFoundException e) {
+            return Collections.emptyList();
+        }
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("unsupported device cache " + mFile);
+            }
+            int version = in.readInt();
+            if (version != VERSION && version != VERSION_WITHOUT_ICONS) {
+                throw new IOException("unsupported device cache " + mFile);
+            }
+            int count = in.readInt();
+            List<DialDevice> devices = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String uuid = readString(in);
+                String friendlyName = readString(in);
+                String manufacturer = readString(in);
+                String modelName = readString(in);
+                URI url = readUri(in);
+                URI location = readUri(in);
+                List<DeviceIcon> icons = version == VERSION ? readIcons(in) : null;
+                devices.add(new DialDevice(uuid, friendlyName, manufacturer, modelName, url, location, icons, false));
+            }
+            return devices;
+        } catch (IllegalArgumentException e) {
+            throw new IOException("corrupted device cache " + mFile, e);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Replace the snapshot
+     * @param devices the devices to be saved, the ones that are not verified are skipped
+     * @throws IOException if the snapshot could not be written
+     */
+    public void save(Collection<DialDevice> devices) throws IOException {
+        List<DialDevice> verified = new ArrayList<>(devices.size());
+        for (DialDevice device : devices) {
+            if (device.isVerified()) {
+                verified.add(device);
+            }
+        }
+        File temp = new File(mFile.getPath() + TEMP_SUFFIX);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(verified.size());
+            for (DialDevice device : verified) {
+                writeString(out, device.getUuid());
+                writeString(out, device.getFriendlyName());
+                writeString(out, device.getManufacturer());
+                writeString(out, device.getModelName());
+                writeString(out, device.getDialURI() == null ? null : device.getDialURI().toString());
+                writeString(out, device.getLocation() == null ? null : device.getLocation().toString());
+                writeIcons(out, device.getIcons());
+            }
+        } finally {
+            out.close();
+        }
+        // File.renameTo does not replace an existing file on every platform
+        if (!temp.renameTo(mFile) && !(mFile.delete() && temp.renameTo(mFile))) {
+            temp.delete();
+            throw new IOException("could not write " + mFile);
+        }
+    }
+
+    static void writeIcons(DataOutputStream out, List<DeviceIcon> icons) throws IOException {
+        // the icons of a device built by the application are not capped by the parser
+        int count = Math.min(icons.size(), DialDevice.MAX_ICONS);
+        out.writeShort(count);
+        for (DeviceIcon icon : icons.subList(0, count)) {
+            writeString(out, icon.getMimeType());
+            out.writeInt(icon.getWidth());
+            out.writeInt(icon.getHeight());
+            out.writeInt(icon.getDepth());
+            out.writeUTF(icon.getUrl().toString());
+        }
+    }
+
+    static List<DeviceIcon> readIcons(DataInputStream in) throws IOException {
+        int count = in.readUnsignedShort();
+        if (count > DialDevice.MAX_ICONS) {
+            throw new IOException("too many icons: " + count);
+        }
+        List<DeviceIcon> icons = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            icons.add(new DeviceIcon(readString(in), in.readInt(), in.readInt(), in.readInt(), URI.create(in.readUTF())));
+        }
+        return icons;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static URI readUri(DataInputStream in) throws IOException {
+        String value = readString(in);
+        return value == null ? null : URI.create(value);
+    }
+}
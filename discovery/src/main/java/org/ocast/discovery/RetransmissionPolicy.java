@@ -0,0 +1,98 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.ocast.discovery;
+
+import java.util.Random;
+
+/**
+ * Defines how M-SEARCH requests are repeated during a discovery request
+ *
+ * Each M-SEARCH is sent several times since UDP is unreliable. Every copy is delayed by a random
+ * jitter so that several search targets, or several clients on the same network, do not emit
+ * synchronized bursts of multicast packets.
+ */
+public class RetransmissionPolicy {
+    private final int mCount;
+    private final int mInterval;
+    private final int mJitter;
+
+    /**
+     * defines 3 copies of each M-SEARCH, 250ms apart with up to 100ms of jitter
+     */
+    public static final RetransmissionPolicy DEFAULT = new RetransmissionPolicy(3, 250, 100);
+
+    /**
+     * Constructs an object and initializes it with the provided values
+     * @param count number of times each M-SEARCH is sent
+     * @param interval delay between two copies of a M-SEARCH (milliseconds)
+     * @param jitter maximum random delay added to each copy (milliseconds)
+     */
+    public RetransmissionPolicy(int count, int interval, int jitter) {
+        if (count < 1 || interval < 0 || jitter < 0) {
+            throw new IllegalArgumentException("invalid retransmission policy");
+        }
+        mCount = count;
+        mInterval = interval;
+        mJitter = jitter;
+    }
+
+    /**
+     * get the number of times each M-SEARCH is sent
+     * @return the number of copies
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * get the delay between two copies of a M-SEARCH
+     * @return a duration in milliseconds
+     */
+    public int getInterval() {
+        return mInterval;
+    }
+
+    /**
+     * get the maximum random delay added to each copy
+     * @return a duration in milliseconds
+     */
+    public int getJitter() {
+        return mJitter;
+    }
+
+    /**
+     * Compute when a copy of a M-SEARCH should be sent
+     * @param copy the copy index, from 0 to count - 1
+     * @param random the source of jitter
+     * @return the delay since the beginning of the discovery request (milliseconds)
+     */
+    long getOffset(int copy, Random random) {
+        long offset = (long) copy * mInterval;
+        if (mJitter > 0) {
+            offset += random.nextInt(mJitter + 1);
+        }
+        return offset;
+    }
+
+    @Override
+    public String toString() {
+        return "retransmission [count:" + mCount + " interval:" + mInterval + " jitter:" + mJitter + "]";
+    }
+}
@@ -23,11 +23,15 @@ import java.net.URI;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import okhttp3.OkHttpClient;
+
 /**
  * defines a SSDP {@link Discovery Discovery}
  */
@@ -37,7 +41,11 @@ public class SSDPDiscovery implements Discovery {
     SSDPManager manager;
     DiscoveryListener listener;
     private boolean mRunning = false;
-    private final Set<DialDevice> devices = Collections.synchronizedSet(new HashSet<>());
+    private boolean mNotificationListening = false;
+    private volatile AdaptiveScanPolicy mScanPolicy;
+    // devices by the location they have been announced with
+    private final Map<URI, DialDevice> devices = new ConcurrentHashMap<>();
+    private final DiscoveryPublisher publisher = new DiscoveryPublisher();
     private final SSDPManager.DiscoveryListener ssdpListener = new SSDPManager.DiscoveryListener() {
 
         @Override
@@ -47,21 +55,22 @@ public class SSDPDiscovery implements Discovery {
 
         @Override
         public void onServiceLost(URI location) {
-            synchronized (devices) {
-                for (Iterator<DialDevice> iterator = devices.iterator(); iterator.hasNext(); ) {
-                    DialDevice d = iterator.next();
-                    if (d.getLocation().equals(location)) {
-                        iterator.remove();
-                        listener.onDeviceRemoved(d);
-                    }
-                }
+            DialDevice d = devices.remove(location);
+            if (d != null) {
+                listener.onDeviceRemoved(d);
+                publisher.onDeviceRemoved(d);
             }
         }
 
         @Override
         public void onServiceResolved(DialDevice dd) {
-            devices.add(dd);
+            DialDevice previous = devices.put(dd.getLocation(), dd);
+            if (dd.equals(previous)) {
+                // a restored device that has been verified, it is already known by the listener
+                return;
+            }
             listener.onDeviceAdded(dd);
+            publisher.onDeviceAdded(dd);
         }
 
         @Override
@@ -80,8 +89,103 @@ public class SSDPDiscovery implements Discovery {
 
 
     public SSDPDiscovery(Set<String> searchTargetList, DiscoveryListener listener) {
+        this(searchTargetList, listener, null);
+    }
+
+    /**
+     * @param httpClient the client of the device description requests, or null to use a default one
+     */
+    public SSDPDiscovery(Set<String> searchTargetList, DiscoveryListener listener, OkHttpClient httpClient) {
+        this(searchTargetList, listener, httpClient, null);
+    }
+
+    /**
+     * @param httpClient the client of the device description requests, or null to use a default one
+     * @param executor the executor of the discovery, or null to let the discovery use its own thread
+     * @see SSDPManager#SSDPManager(Set, SSDPManager.DiscoveryListener, ScheduledExecutorService, OkHttpClient)
+     */
+    public SSDPDiscovery(Set<String> searchTargetList, DiscoveryListener listener, OkHttpClient httpClient, ScheduledExecutorService executor) {
         this.listener = listener;
-        manager = new SSDPManager(searchTargetList, ssdpListener);
+        manager = new SSDPManager(searchTargetList, ssdpListener, executor, httpClient);
+    }
+
+    /**
+     * Get a view of the discovered devices as a stream of events.
+     * A Subscriber first receives the devices already discovered, then their changes, at its own pace.
+     * @return the publisher of the discovery events
+     */
+    public DiscoveryPublisher getPublisher() {
+        return publisher;
+    }
+
+    /**
+     * Get the latest snapshot of the discovered devices, without any lock nor copy.
+     * @return the snapshot, use {@link DeviceSnapshot#changesSince(long)} to get what changed since an earlier one
+     */
+    public DeviceSnapshot getDeviceSnapshot() {
+        return manager.getDeviceSnapshot();
+    }
+
+    /**
+     * Listen to the devices announcements (ssdp:alive / ssdp:byebye) in addition to polling.
+     * As arrivals and departures are then notified by the devices, the passive discovery polls
+     * the network less often.
+     * @param listen true to listen to announcements, applied on next {@link #start(boolean) start}
+     */
+    public void setNotificationListening(boolean listen) {
+        mNotificationListening = listen;
+        manager.setNotificationListening(listen);
+    }
+
+    /**
+     * Poll the network with an adaptive schedule when the discovery is not active
+     * @param policy the scan policy, or null to use a fixed reliability
+     */
+    public void setScanPolicy(AdaptiveScanPolicy policy) {
+        mScanPolicy = policy;
+    }
+
+    /**
+     * Report the devices that missed a scan as removed as soon as they are unreachable
+     * @param timeout the time after which an unreachable device is reported (milliseconds), 0 to disable
+     * @see SSDPManager#setLivenessProbeTimeout(int)
+     */
+    public void setLivenessProbeTimeout(int timeout) {
+        manager.setLivenessProbeTimeout(timeout);
+    }
+
+    /**
+     * Select the devices of interest before fetching their description
+     * @param filter the filter, or null to accept every device
+     * @see SSDPManager#setFilter(DiscoveryFilter)
+     */
+    public void setFilter(DiscoveryFilter filter) {
+        manager.setFilter(filter);
+    }
+
+    /**
+     * Cap the number of devices kept in memory
+     * @param max the maximum number of devices
+     * @see SSDPManager#setMaxDevices(int)
+     */
+    public void setMaxDevices(int max) {
+        manager.setMaxDevices(max);
+    }
+
+    /**
+     * @return the size of the device table
+     */
+    public DeviceTableStats getDeviceTableStats() {
+        return manager.getDeviceTableStats();
+    }
+
+    /**
+     * Report the devices found during the previous session as soon as the discovery starts
+     * @param cache the device cache, or null to disable it
+     * @see SSDPManager#setDeviceCache(PersistentDeviceCache)
+     */
+    public void setDeviceCache(PersistentDeviceCache cache) {
+        manager.setDeviceCache(cache);
     }
 
     /**
@@ -97,7 +201,22 @@ public class SSDPDiscovery implements Discovery {
      */
     public void start(boolean active) {
         Logger.getLogger(TAG).log(Level.INFO, active ? "start active discovery":"start discovery");
-        DiscoveryReliability reliability = active ? DiscoveryReliability.HIGH:DiscoveryReliability.MEDIUM;
+        AdaptiveScanPolicy policy = mScanPolicy;
+        if (!active && policy != null) {
+            if (mRunning) {
+                manager.changeScanPolicy(policy);
+            } else {
+                manager.discoverServices(policy);
+                mRunning = true;
+            }
+            return;
+        }
+        DiscoveryReliability reliability;
+        if (active) {
+            reliability = DiscoveryReliability.HIGH;
+        } else {
+            reliability = mNotificationListening ? DiscoveryReliability.LOW : DiscoveryReliability.MEDIUM;
+        }
         if(mRunning) {
             manager.changeReliability(reliability);
         } else {
@@ -106,6 +225,29 @@ public class SSDPDiscovery implements Discovery {
         }
     }
 
+    /**
+     * Stop scanning while the network is down, without reporting the devices as removed.
+     * {@link #onNetworkChanged()} resumes the discovery. Does nothing if the discovery is not started.
+     * @see SSDPManager#pauseDiscovery()
+     */
+    public void pause() {
+        if (mRunning) {
+            manager.pauseDiscovery();
+        }
+    }
+
+    /**
+     * Restart the discovery on a new network, reporting as removed only the devices that are not
+     * reachable anymore instead of all of them. A paused discovery is resumed. Does nothing if
+     * the discovery is not started.
+     * @see SSDPManager#onNetworkChanged()
+     */
+    public void onNetworkChanged() {
+        if (mRunning) {
+            manager.onNetworkChanged();
+        }
+    }
+
     /**
      * Stops active scan
      */
@@ -115,4 +257,14 @@ public class SSDPDiscovery implements Discovery {
         manager.stopDiscovery();
         mRunning = false;
     }
+
+    /**
+     * Stops the discovery and releases its thread. The discovery cannot be started again afterwards.
+     * @see SSDPManager#shutdown()
+     */
+    public void shutdown() {
+        Logger.getLogger(TAG).log(Level.INFO, "Shutting down discovery...");
+        manager.shutdown();
+        mRunning = false;
+    }
 }
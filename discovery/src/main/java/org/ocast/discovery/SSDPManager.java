@@ -20,20 +20,28 @@
 package org.ocast.discovery;
 
 import java.io.IOException;
-import java.net.SocketException;
 import java.net.URI;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import okhttp3.OkHttpClient;
+
 /**
  * SSDPManager provides a high level API to discover services with Simple Service Discovery Protocol
  */
@@ -41,16 +49,67 @@ public class SSDPManager {
     private static final String TAG = LogTag.SSDP;
 
     private static final int SECOND_TO_MILLI = 1000;
-    private static final int IMMEDIATE = 0;
+    private static final long EXPIRY_TICK = 1000;
+    private static final int EXPIRY_WHEEL_SIZE = 512;
+    private static final long STOP_TIMEOUT = 2000;
+
+    private static final int DEFAULT_CONCURRENT_FETCHES = 4;
 
     private final DeviceDescriptionRequest deviceDescriptionRequest;
-    private final Map<URI, DialDevice> knownDevices = Collections.synchronizedMap(new HashMap<>());
-    private final Map<URI, Long> latestResponseForLocation = Collections.synchronizedMap(new HashMap<>());
+    private final DescriptionFetchPipeline fetchPipeline;
+    private final DeviceDescriptionCache descriptionCache = new DeviceDescriptionCache();
+    private final DeviceRegistry registry = new DeviceRegistry();
+    private final TimerWheel<URI> expirations = new TimerWheel<>(EXPIRY_TICK, EXPIRY_WHEEL_SIZE, now());
+    // locations already reported during the current scan
+    private final Set<URI> scanLocations = Collections.synchronizedSet(new HashSet<>());
+    // in-flight device description requests, by location
+    private final Map<URI, Resolution> pendingResolutions = new HashMap<>();
     private Set<String> searchTargets = Collections.synchronizedSet(new HashSet<>());
+    // encoded M-SEARCH packets by MX
+    private final Map<Integer, List<byte[]>> mSearchPayloads = new ConcurrentHashMap<>();
+    private final Random random = new Random();
+    private RetransmissionPolicy retransmissionPolicy = RetransmissionPolicy.DEFAULT;
+    private volatile boolean notificationListening;
+    private volatile PersistentDeviceCache deviceCache;
+    private volatile LivenessProber livenessProber;
+    private volatile DiscoveryFilter filter;
+    // only updated by the discovery engine
+    private volatile long capacityEvictions;
+    private volatile long expirationCount;
 
     private final DiscoveryListener discoveryListener;
-    private SSDPSocket socket;
-    private long currentScan;
+    private final ScheduledExecutorService executor;
+    private final boolean ownsExecutor;
+    // the engine tasks, run one at a time whatever the number of threads of the executor
+    private final ArrayDeque<Runnable> engineTasks = new ArrayDeque<>();
+    // whether a thread of the executor is running the engine tasks, guarded by engineTasks
+    private boolean engineRunning;
+    // the thread running the engine tasks, or null
+    private volatile Thread engineThread;
+    private final Object sessionLock = new Object();
+    private Session session;
+    // whether the session is paused until the next network change, guarded by sessionLock
+    private boolean paused;
+    // incremented by every stop, guarded by sessionLock
+    private int stopCount;
+    // responses received during the current scan, duplicates included
+    private int scanResponses;
+    // lifetime of a location which response does not advertise a max-age
+    private volatile long defaultLifetime;
+
+    /**
+     * An in-flight device description request
+     */
+    private static class Resolution {
+        // notified of the result in addition to the discovery
+        final List<DeviceDescriptionRequest.Callbacks> waiters = new ArrayList<>(1);
+        // the stop count when the description has last been requested
+        int stopCount;
+
+        Resolution(int stopCount) {
+            this.stopCount = stopCount;
+        }
+    }
 
     /**
      * Interface for listening SSDP service discovery
@@ -87,17 +146,33 @@ public class SSDPManager {
     private final DeviceDescriptionRequest.Callbacks deviceDescriptionCallback = new DeviceDescriptionRequest.Callbacks() {
         @Override
         public void onDeviceDescription(URI location, DialDevice dd) {
-            DialDevice knownDevice = getDeviceDescriptionByUudi(dd.getUuid());
-            if (knownDevice == null) {
+            DiscoveryFilter f = filter;
+            if (f != null && !f.accept(dd)) {
+                Logger.getLogger(TAG).log(Level.FINE, "Filtering out the device at {0}", location);
+                // its description stays cached, so that it is not fetched again
+                if (registry.getByUuid(dd.getUuid()) != null) {
+                    removeDevice(dd.getUuid(), "is filtered out");
+                }
+                return;
+            }
+            DialDevice previous = registry.getByLocation(location);
+            if (previous != null && !previous.getUuid().equals(dd.getUuid())) {
+                Logger.getLogger(TAG).log(Level.FINE,  "An other device answered at {0}", location);
+                evict(location);
+            }
+            track(location);
+            DeviceRegistry.Update update = registry.update(location, dd);
+            if (update == DeviceRegistry.Update.UNCHANGED) {
+                return;
+            }
+            if (update == DeviceRegistry.Update.ADDED) {
                 Logger.getLogger(TAG).log(Level.FINE,  "Looks like a brand new device at {0}", location);
-                knownDevices.put(location, dd);
-                discoveryListener.onServiceResolved(dd);
             } else {
-                if (!knownDevice.equals(dd)) {
-                    Logger.getLogger(TAG).log(Level.FINE,  "Looks like a device that changed");
-                    knownDevices.put(location, dd);
-                    discoveryListener.onServiceResolved(dd);
-                }
+                Logger.getLogger(TAG).log(Level.FINE,  "Looks like a device that changed");
+            }
+            DialDevice device = registry.getByUuid(dd.getUuid());
+            if (device != null) {
+                discoveryListener.onServiceResolved(device);
             }
         }
 
@@ -108,30 +183,134 @@ public class SSDPManager {
             Logger.getLogger(TAG).log(Level.SEVERE, "could not fetch {0}", location);
             discoveryListener.onServiceResolveFailed(location);
         }
+    };
+    /**
+     * Callback to a conditional device description request, feeding the description cache
+     */
+    private final DeviceDescriptionRequest.RevalidationCallbacks revalidationCallback = new DeviceDescriptionRequest.RevalidationCallbacks() {
+        @Override
+        public void onDeviceDescription(URI location, DialDevice dd, DeviceDescriptionRequest.Validators validators) {
+            dispatch(() -> {
+                try {
+                    descriptionCache.store(location, dd, validators, now());
+                    if (isCurrent(location)) {
+                        deviceDescriptionCallback.onDeviceDescription(location, dd);
+                    }
+                } finally {
+                    // even if the listener failed, so that the location can be resolved again
+                    completeResolution(location, dd);
+                }
+            });
+        }
 
-        private DialDevice getDeviceDescriptionByUudi(String uuid) {
-            synchronized (knownDevices) {
-                for (Map.Entry<URI, DialDevice> entry : knownDevices.entrySet()) {
-                    DialDevice dd = entry.getValue();
-                    if (uuid.equals(dd.getUuid())) {
-                        return dd;
+        @Override
+        public void onNotModified(URI location) {
+            dispatch(() -> {
+                DialDevice dd = descriptionCache.refresh(location, now());
+                if (dd == null) {
+                    // the cached description has been dropped meanwhile
+                    fetchPipeline.submit(location, null, true, this);
+                    return;
+                }
+                try {
+                    Logger.getLogger(TAG).log(Level.FINE, "Device description not modified at {0}", location);
+                    if (isCurrent(location)) {
+                        deviceDescriptionCallback.onDeviceDescription(location, dd);
                     }
+                } finally {
+                    completeResolution(location, dd);
                 }
+            });
+        }
+
+        @Override
+        public void onError(URI location) {
+            dispatch(() -> {
+                try {
+                    descriptionCache.remove(location);
+                    if (isCurrent(location)) {
+                        deviceDescriptionCallback.onError(location);
+                    }
+                } finally {
+                    completeResolution(location, null);
+                }
+            });
+        }
+    };
+    /**
+     * Callback to the revalidation of a device restored from the device cache
+     */
+    private final DeviceDescriptionRequest.Callbacks verificationCallback = new DeviceDescriptionRequest.Callbacks() {
+        @Override
+        public void onDeviceDescription(URI location, DialDevice dd) {
+            // the verified device has been reported as changed
+        }
+
+        @Override
+        public void onError(URI location) {
+            DialDevice dd = registry.getByLocation(location);
+            if (dd != null && !dd.isVerified()) {
+                Logger.getLogger(TAG).log(Level.FINE, "Evicting cached device at {0}", location);
+                evict(location);
+            }
+        }
+    };
+    /**
+     * Callback to the revalidation of a device after a network change
+     */
+    private final DeviceDescriptionRequest.Callbacks networkChangeCallback = new DeviceDescriptionRequest.Callbacks() {
+        @Override
+        public void onDeviceDescription(URI location, DialDevice dd) {
+            // the device is still there, or has been replaced and reported as such
+            synchronized (expirations) {
+                expirations.renew(location, now());
+            }
+        }
+
+        @Override
+        public void onError(URI location) {
+            if (registry.getByLocation(location) != null) {
+                Logger.getLogger(TAG).log(Level.FINE, "{0} is not reachable on the new network", location);
+                evict(location);
             }
-            return null;
         }
     };
-    private final SSDPSocket.Listener socketListener = response -> {
+    private final LivenessProber.Listener probeListener = new LivenessProber.Listener() {
+        @Override
+        public void onAlive(URI location) {
+            Logger.getLogger(TAG).log(Level.FINEST, "{0} missed a scan but is alive", location);
+        }
+
+        @Override
+        public void onDead(URI location) {
+            dispatch(() -> {
+                // unless it has been seen again meanwhile
+                if (registry.getByLocation(location) != null && !scanLocations.contains(location)) {
+                    Logger.getLogger(TAG).log(Level.FINE, "{0} did not answer its probe", location);
+                    evict(location);
+                }
+            });
+        }
+    };
+
+    /**
+     * Handle a SSDP message received by the socket, on the engine
+     */
+    private void onResponse(SSDPMessage response) {
         if (response.getType() == SSDPMessage.Type.RESPONSE) {
             if (validateResponse(response)) {
-                onLocationReceived(response);
+                scanResponses++;
+                if (accept(response)) {
+                    onLocationReceived(response);
+                }
             } else {
                 Logger.getLogger(TAG).log(Level.WARNING, "Skipping response from:" + response.getHeader(SSDPMessage.ST));
             }
         } else if (response.getType() == SSDPMessage.Type.NOTIFY) {
             Logger.getLogger(TAG).log(Level.FINEST, "got a NOTIFY");
+            onNotifyReceived(response);
         }
-    };
+    }
 
     /**
      * Execute a Http Request on the given address in order to retrieve a cast device's description
@@ -139,8 +318,53 @@ public class SSDPManager {
      * @param location of the device description xml file
      */
     public void resolve(URI location) {
+        resolve(location, null);
+    }
+
+    /**
+     * Execute a Http Request on the given address in order to retrieve a cast device's description.
+     * Concurrent calls for the same location share a single request.
+     *
+     * @param location of the device description xml file
+     * @param callbacks notified of the request result in addition to the {@link DiscoveryListener}, may be null
+     */
+    public void resolve(URI location, DeviceDescriptionRequest.Callbacks callbacks) {
+        DialDevice cached = descriptionCache.getFresh(location, now());
+        if (cached != null) {
+            Logger.getLogger(TAG).log(Level.FINEST, "Using cached device description of {0}", location);
+            int requested = getStopCount();
+            dispatch(() -> {
+                if (requested == getStopCount()) {
+                    deviceDescriptionCallback.onDeviceDescription(location, cached);
+                }
+                if (callbacks != null) {
+                    callbacks.onDeviceDescription(location, cached);
+                }
+            });
+            return;
+        }
+        int requested = getStopCount();
+        synchronized (pendingResolutions) {
+            Resolution resolution = pendingResolutions.get(location);
+            if (resolution != null) {
+                Logger.getLogger(TAG).log(Level.FINEST, "Already retrieving device description through {0}", location);
+                // requested again since a stop, the result is not stale anymore
+                resolution.stopCount = requested;
+                if (callbacks != null) {
+                    resolution.waiters.add(callbacks);
+                }
+                return;
+            }
+            resolution = new Resolution(requested);
+            if (callbacks != null) {
+                resolution.waiters.add(callbacks);
+            }
+            pendingResolutions.put(location, resolution);
+        }
         Logger.getLogger(TAG).log(Level.FINE,  "Retrieving device description through {0}", location);
-        deviceDescriptionRequest.getDeviceDescription(location, deviceDescriptionCallback);
+        // a location answering the current scan goes before one restored from the device cache
+        boolean advertised = scanLocations.contains(location);
+        fetchPipeline.submit(location, descriptionCache.getValidators(location), advertised, revalidationCallback);
     }
 
     /**
@@ -150,7 +374,8 @@ public class SSDPManager {
      */
     protected SSDPSocket createSocket() throws IOException {
         SSDPSocket s = new SSDPSocket();
-        s.init(false);
+        s.setSearchTargets(searchTargets);
+        s.init(notificationListening);
         return s;
     }
 
@@ -169,9 +394,141 @@ public class SSDPManager {
      * @param listener
      */
     public SSDPManager(Set<String> searchTargetList, DiscoveryListener listener) {
+        this(searchTargetList, listener, null);
+    }
+
+    /**
+     * Instanciate a SSDPManager running on a given executor.
+     * The socket, the scans, the expiry of devices and the listener calls are all run as tasks of
+     * this executor. They are run one at a time, so that the listener is called from one thread at a
+     * time even if the executor has several threads. A task may block up to one second while
+     * reading the socket.
+     * @param searchTargetList the search targets corresponding to devices of interest
+     * @param listener a listener interested in discovery events
+     * @param executor the executor of the discovery, or null to let the manager use its own thread
+     */
+    public SSDPManager(Set<String> searchTargetList, DiscoveryListener listener, ScheduledExecutorService executor) {
+        this(searchTargetList, listener, executor, null);
+    }
+
+    /**
+     * Instanciate a SSDPManager running on a given executor and fetching the device descriptions
+     * with a given HTTP client
+     * @param searchTargetList the search targets corresponding to devices of interest
+     * @param listener a listener interested in discovery events
+     * @param executor the executor of the discovery, or null to let the manager use its own thread
+     * @param httpClient the client of the device description requests, or null to use a default one
+     * @see #SSDPManager(Set, DiscoveryListener, ScheduledExecutorService)
+     */
+    public SSDPManager(Set<String> searchTargetList, DiscoveryListener listener, ScheduledExecutorService executor, OkHttpClient httpClient) {
         discoveryListener = listener;
-        deviceDescriptionRequest = new DeviceDescriptionRequest();
+        deviceDescriptionRequest = httpClient != null ? new DeviceDescriptionRequest(httpClient) : new DeviceDescriptionRequest();
+        fetchPipeline = new DescriptionFetchPipeline(deviceDescriptionRequest, DEFAULT_CONCURRENT_FETCHES);
         searchTargets = searchTargetList;
+        if (executor != null) {
+            this.executor = executor;
+            ownsExecutor = false;
+        } else {
+            this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "SSDPManager");
+                thread.setDaemon(true);
+                return thread;
+            });
+            ownsExecutor = true;
+        }
+    }
+
+    /**
+     * Change how M-SEARCH requests are repeated during each discovery request
+     * @param policy the retransmission policy to be applied from the next discovery request
+     */
+    public void setRetransmissionPolicy(RetransmissionPolicy policy) {
+        retransmissionPolicy = policy;
+    }
+
+    /**
+     * Listen to the NOTIFY messages sent on the multicast group in addition to active scanning.
+     * A ssdp:alive notification refreshes a device as a response would, and a ssdp:byebye
+     * notification reports the device as lost immediately.
+     * @param listen true to join the multicast group, applied when the discovery is (re)started
+     */
+    public void setNotificationListening(boolean listen) {
+        notificationListening = listen;
+    }
+
+    /**
+     * Limit the number of device descriptions retrieved at the same time.
+     * The other requests wait, the locations of known devices and the locations advertised during
+     * the current scan first.
+     * @param maxConcurrent the maximum number of requests in progress
+     */
+    public void setMaxConcurrentFetches(int maxConcurrent) {
+        fetchPipeline.setMaxConcurrent(maxConcurrent);
+    }
+
+    /**
+     * @return the activity of the device description requests
+     */
+    public DescriptionFetchStats getFetchStats() {
+        return fetchPipeline.getStats();
+    }
+
+    /**
+     * Cap the number of devices kept in memory. Once full, the least recently advertised location
+     * is reported as lost to make room for a new one.
+     * @param max the maximum number of locations and of cached descriptions
+     */
+    public void setMaxDevices(int max) {
+        registry.setCapacity(max);
+        descriptionCache.setCapacity(max);
+        post(this::trimDevices);
+    }
+
+    /**
+     * @return the size of the device table
+     */
+    public DeviceTableStats getDeviceTableStats() {
+        return new DeviceTableStats(registry.getDevices().size(), registry.getLocationCount(), descriptionCache.size(),
+                registry.estimateFootprint(), capacityEvictions, expirationCount, descriptionCache.getEvictionCount());
+    }
+
+    /**
+     * Probe the devices that did not answer a scan with a HTTP HEAD on their location, and report
+     * them as lost if they are not reachable, instead of waiting for their lifetime to elapse
+     * @param timeout the time after which an unreachable device is reported as lost (milliseconds),
+     *                0 to disable probing
+     */
+    public void setLivenessProbeTimeout(int timeout) {
+        livenessProber = timeout > 0 ? new LivenessProber(deviceDescriptionRequest.getClient(), timeout) : null;
+    }
+
+    /**
+     * Select the devices of interest from their SSDP headers, before fetching their description.
+     * The known devices that are filtered out are reported as lost.
+     * @param filter the filter, or null to accept every device
+     */
+    public void setFilter(DiscoveryFilter filter) {
+        this.filter = filter;
+        if (filter != null) {
+            post(() -> {
+                for (DialDevice device : registry.getDevices()) {
+                    if (!filter.accept(device)) {
+                        removeDevice(device.getUuid(), "is filtered out");
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Keep a snapshot of the resolved devices from one session to the other.
+     * The devices of the snapshot are reported as soon as the discovery starts, as not verified,
+     * and their description is fetched right away to confirm or evict them. The snapshot is
+     * written when the discovery stops.
+     * @param cache the device cache, or null to disable it
+     */
+    public void setDeviceCache(PersistentDeviceCache cache) {
+        deviceCache = cache;
     }
 
     /**
@@ -181,9 +538,17 @@ public class SSDPManager {
     public void discoverServices(DiscoveryReliability reliability) {
         stopDiscovery();
         Logger.getLogger(TAG).log(Level.INFO, "Starting discovery...");
-        currentScan = 0;
-        Thread discoveryThread = new Thread(getPeriodicDiscoveryTask(reliability));
-        discoveryThread.start();
+        startSession(createSession(reliability));
+    }
+
+    /**
+     * Starts polling the network with a period and a MX adapted to the stability of the devices
+     * @param policy the bounds of the scan period and MX
+     */
+    public void discoverServices(AdaptiveScanPolicy policy) {
+        stopDiscovery();
+        Logger.getLogger(TAG).log(Level.INFO, "Starting adaptive discovery...");
+        startSession(createSession(policy));
     }
 
     /**
@@ -192,113 +557,539 @@ public class SSDPManager {
      */
     public void changeReliability(DiscoveryReliability reliability) {
         Logger.getLogger(TAG).log(Level.INFO, "Changing discovery...");
-        if(socket != null) {
-            socket.close();
-            currentScan--;//don't account ongoing scan as it has been cancelled
-            Thread discoveryThread = new Thread(getPeriodicDiscoveryTask(reliability));
-            discoveryThread.start();
+        changeSession(createSession(reliability));
+    }
+
+    /**
+     * Switch the discovery to an adaptive schedule, starting again with a burst of scans
+     * @param policy the bounds of the scan period and MX
+     */
+    public void changeScanPolicy(AdaptiveScanPolicy policy) {
+        Logger.getLogger(TAG).log(Level.INFO, "Changing to adaptive discovery...");
+        changeSession(createSession(policy));
+    }
+
+    private void startSession(Session newSession) {
+        synchronized (sessionLock) {
+            session = newSession;
+        }
+        post(this::restoreDevices);
+        post(newSession);
+    }
+
+    private void changeSession(Session newSession) {
+        Session previous;
+        synchronized (sessionLock) {
+            previous = session;
+            if (previous == null) {
+                return;
+            }
+            session = newSession;
+            if (paused) {
+                // applied once the discovery resumes
+                return;
+            }
         }
+        previous.cancel();
+        post(newSession);
     }
 
     /**
-     * Stops scanning to discover devices
+     * Stop scanning without reporting the known devices as lost, typically while the network is
+     * down. The devices are kept, and do not expire, until {@link #onNetworkChanged()} resumes the
+     * discovery and revalidates them, or until {@link #stopDiscovery()} reports them as lost.
+     * Does nothing if the discovery is not started.
+     */
+    public void pauseDiscovery() {
+        Session current;
+        synchronized (sessionLock) {
+            current = session;
+            if (current == null || paused) {
+                return;
+            }
+            paused = true;
+        }
+        Logger.getLogger(TAG).log(Level.INFO, "Pausing discovery...");
+        current.cancel();
+    }
+
+    /**
+     * Restart the discovery after a network change, without reporting the known devices as lost.
+     * The socket is opened again on the current interfaces, and the description of every known
+     * device is revalidated with a conditional request: only the devices that do not answer, or
+     * that have been replaced by an other device, are reported as lost.
+     * A paused discovery is resumed. Does nothing if the discovery is not started.
+     */
+    public void onNetworkChanged() {
+        Session previous;
+        Session next;
+        synchronized (sessionLock) {
+            previous = session;
+            if (previous == null) {
+                return;
+            }
+            next = previous.restart();
+            session = next;
+            paused = false;
+        }
+        Logger.getLogger(TAG).log(Level.INFO, "Network changed, revalidating devices...");
+        previous.cancel();
+        post(this::revalidateDevices);
+        post(next);
+    }
+
+    /**
+     * Stops scanning to discover devices.
+     * Returns once the devices have been reported as lost.
      */
     public void stopDiscovery() {
         Logger.getLogger(TAG).log(Level.INFO, "Stopping discovery...");
-        if(socket != null) {
-            socket.close();
-            // We cannot use SocketException to clear known devices because it will be triggered a few seconds later
-            pruneDevices(IMMEDIATE);
+        Session previous;
+        synchronized (sessionLock) {
+            previous = session;
+            session = null;
+            paused = false;
+            if (previous != null) {
+                stopCount++;
+            }
+        }
+        if (previous != null) {
+            previous.cancel();
+            runAndWait(() -> {
+                saveDevices();
+                flushDevices();
+            });
+        }
+    }
+
+    /**
+     * Stops the discovery and releases the thread of the manager.
+     * The manager cannot be used afterwards. An executor provided to the constructor is not shut down.
+     */
+    public void shutdown() {
+        stopDiscovery();
+        if (ownsExecutor) {
+            executor.shutdown();
         }
     }
 
     /**
      * Get a list of devices discovered during latest network scan
-     * @return
+     * @return the devices, the list is immutable
      */
     public List<DialDevice> getDeviceDescriptions() {
-        return new ArrayList<>(knownDevices.values());
+        return registry.getDevices();
+    }
+
+    /**
+     * Get the latest snapshot of the discovered devices. It is replaced on every change and can
+     * be polled at no cost.
+     * @return the snapshot, whose version tells what changed since an earlier one
+     */
+    public DeviceSnapshot getDeviceSnapshot() {
+        return registry.getSnapshot();
     }
 
     private void onLocationReceived(SSDPMessage ssdpMessage) {
-        String location = ssdpMessage.getHeader(SSDPMessage.LOCATION);
-        latestResponseForLocation.put(URI.create(location), currentScan);
-        discoveryListener.onServiceFound(URI.create(location));
+        URI location;
+        try {
+            location = registry.canonical(URI.create(ssdpMessage.getHeader(SSDPMessage.LOCATION)));
+        } catch (IllegalArgumentException e) {
+            Logger.getLogger(TAG).log(Level.WARNING, "Skipping invalid location: " + ssdpMessage.getHeader(SSDPMessage.LOCATION));
+            return;
+        }
+        int maxAge = ssdpMessage.getMaxAge();
+        long lifetime = maxAge >= 0 ? (long) maxAge * SECOND_TO_MILLI : defaultLifetime;
+        synchronized (expirations) {
+            expirations.schedule(location, now(), lifetime);
+        }
+        String uuid = ssdpMessage.getUuid();
+        DialDevice previous = registry.getByLocation(location);
+        URI lost = registry.advertise(location, uuid);
+        if (lost != null || (previous != null && uuid != null && !uuid.equals(previous.getUuid()))) {
+            Logger.getLogger(TAG).log(Level.FINE, "an other device is advertised at {0}", location);
+            onLocationRemoved(location, previous, lost);
+        }
+        trimDevices();
+        // a description without advertised max-age is revalidated on every response
+        descriptionCache.advertise(location, uuid, maxAge >= 0 ? (long) maxAge * SECOND_TO_MILLI : 0);
+        if (registry.isSecondaryLocation(location)) {
+            Logger.getLogger(TAG).log(Level.FINEST, "{0} is an other location of a known device", location);
+            return;
+        }
+        // a device usually answers each copy of the M-SEARCH, report it once per scan
+        if (scanLocations.add(location)) {
+            discoveryListener.onServiceFound(location);
+        }
     }
 
-    private void onError() {
-        pruneDevices(IMMEDIATE);
+    /**
+     * Notify the callbacks waiting for a device description request
+     * @param dd the retrieved device description, or null if the request failed
+     */
+    private void completeResolution(URI location, DialDevice dd) {
+        Resolution resolution;
+        synchronized (pendingResolutions) {
+            resolution = pendingResolutions.remove(location);
+        }
+        if (resolution == null) {
+            return;
+        }
+        for (DeviceDescriptionRequest.Callbacks waiter : resolution.waiters) {
+            try {
+                if (dd != null) {
+                    waiter.onDeviceDescription(location, dd);
+                } else {
+                    waiter.onError(location);
+                }
+            } catch (RuntimeException e) {
+                // a failing waiter must not deprive the others of the result
+                Logger.getLogger(TAG).log(Level.WARNING, "device description callback failed", e);
+            }
+        }
     }
 
     /**
-     * Get a Runnable that will periodically send "discover" request
+     * @return false if the discovery has been stopped since the description of a location has been
+     * requested, its result would then add a device that never expires
      */
-    private Runnable getPeriodicDiscoveryTask(DiscoveryReliability reliability) {
-        int timeout =reliability.getTimeout() * SECOND_TO_MILLI;
-        return () -> {
-            socket = null;
+    private boolean isCurrent(URI location) {
+        int requested;
+        synchronized (pendingResolutions) {
+            Resolution resolution = pendingResolutions.get(location);
+            if (resolution == null) {
+                return true;
+            }
+            requested = resolution.stopCount;
+        }
+        if (requested != getStopCount()) {
+            Logger.getLogger(TAG).log(Level.FINE, "Discovery stopped, ignoring the description of {0}", location);
+            return false;
+        }
+        return true;
+    }
+
+    private int getStopCount() {
+        synchronized (sessionLock) {
+            return stopCount;
+        }
+    }
+
+    private void onNotifyReceived(SSDPMessage notify) {
+        String subType = notify.getHeader(SSDPMessage.NTS);
+        if (SSDPMessage.SSDP_ALIVE.equalsIgnoreCase(subType)) {
+            if (validateNotify(notify) && accept(notify)) {
+                onLocationReceived(notify);
+            }
+        } else if (SSDPMessage.SSDP_BYEBYE.equalsIgnoreCase(subType)) {
+            String uuid = notify.getUuid();
+            if (uuid != null) {
+                removeDevice(uuid, "said goodbye");
+            }
+        }
+    }
+
+    /**
+     * Report a device as lost right away, whatever its locations
+     */
+    private void removeDevice(String uuid, String reason) {
+        DeviceRegistry.Removal removal = registry.removeDevice(uuid);
+        if (removal == null) {
+            return;
+        }
+        synchronized (expirations) {
+            for (URI location : removal.locations) {
+                expirations.cancel(location);
+            }
+        }
+        for (URI location : removal.locations) {
+            forget(location);
+        }
+        for (URI location : removal.getLostLocations()) {
+            Logger.getLogger(TAG).log(Level.FINE, "{0} " + reason, location);
+            discoveryListener.onServiceLost(location);
+        }
+    }
+
+    private Session createSession(DiscoveryReliability reliability) {
+        defaultLifetime = (long) reliability.getTimeout() * SECOND_TO_MILLI * reliability.getRetry();
+        return new Session(reliability.getTimeout() * SECOND_TO_MILLI, null);
+    }
+
+    private Session createSession(AdaptiveScanPolicy policy) {
+        // a device is lost after missing two scans of the longest period
+        defaultLifetime = (long) (2 * policy.getMaxInterval() + policy.getMaxMaxWaitTime()) * SECOND_TO_MILLI;
+        return new Session(0, new AdaptiveScanScheduler(policy));
+    }
+
+    /**
+     * Run a task on the discovery engine
+     */
+    private void post(Runnable task) {
+        synchronized (engineTasks) {
+            engineTasks.add(task);
+            if (engineRunning) {
+                return;
+            }
+            engineRunning = true;
+        }
+        try {
+            executor.execute(this::runEngine);
+        } catch (RejectedExecutionException e) {
+            synchronized (engineTasks) {
+                engineTasks.clear();
+                engineRunning = false;
+            }
+            Logger.getLogger(TAG).log(Level.FINE, "discovery engine is shut down");
+        }
+    }
+
+    /**
+     * Run the queued engine tasks, on one thread of the executor at a time
+     */
+    private void runEngine() {
+        engineThread = Thread.currentThread();
+        while (true) {
+            Runnable task;
+            synchronized (engineTasks) {
+                task = engineTasks.poll();
+                if (task == null) {
+                    engineThread = null;
+                    engineRunning = false;
+                    return;
+                }
+            }
             try {
-                socket = createSocket();
-            } catch (IOException e) {
-                Logger.getLogger(TAG).log(Level.WARNING, "could not create Socket", e);
+                task.run();
+            } catch (RuntimeException e) {
+                Logger.getLogger(TAG).log(Level.WARNING, "discovery task failed", e);
             }
+        }
+    }
+
+    /**
+     * Run a task on the discovery engine, right away if already called from it
+     */
+    private void dispatch(Runnable task) {
+        if (Thread.currentThread() == engineThread) {
+            task.run();
+        } else {
+            post(task);
+        }
+    }
+
+    /**
+     * Run a task on the discovery engine and wait for its completion.
+     * If the engine stays busy for too long, the task is left to the engine and the caller
+     * returns without waiting any longer.
+     */
+    private void runAndWait(Runnable task) {
+        if (Thread.currentThread() == engineThread) {
+            task.run();
+            return;
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        post(() -> {
             try {
-                while (true) { //Note: loop exit with SocketException
-                    Logger.getLogger(TAG).log(Level.FINE, "timeout {0}", timeout);
-                    discoverInternal(socket, timeout, reliability.getRetry());
-                }
-            } catch (SocketException e) {
-                Logger.getLogger(TAG).log(Level.WARNING, "Socket closed", e);
-            } catch (IOException e) {
-                Logger.getLogger(TAG).log(Level.WARNING, "could not execute request (Network might be unreachable)", e);
-                onError();
-            } catch (Exception e) {
-                Logger.getLogger(TAG).log(Level.WARNING, "Exception ", e);
-                onError();
+                task.run();
+            } finally {
+                done.countDown();
             }
-        };
+        });
+        try {
+            if (!done.await(STOP_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                Logger.getLogger(TAG).log(Level.WARNING, "discovery engine busy, the devices will be reported lost once it is done");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
-    private void pruneDevices(int threshold) {
-        synchronized (latestResponseForLocation) {
-            for (Iterator<Map.Entry<URI, Long>> iterator = latestResponseForLocation.entrySet().iterator(); iterator.hasNext(); ) {
-                Map.Entry<URI, Long> entry = iterator.next();
-                URI location = entry.getKey();
-                long lastScan = entry.getValue();
-                long delta = currentScan - lastScan;
-                Logger.getLogger(TAG).log(Level.FINE, " {0} / delta {1} ({2})", new Object[]{location, delta, currentScan});
-                if (delta >= threshold) {
-                    iterator.remove();
-                    discoveryListener.onServiceLost(location);
-                    removeKnownDevice(location);
-                }
+    /**
+     * Report the locations whose lifetime elapsed as lost
+     */
+    private void expireDevices() {
+        List<URI> expired;
+        synchronized (expirations) {
+            expired = expirations.advance(now());
+        }
+        expirationCount += expired.size();
+        for (URI location : expired) {
+            Logger.getLogger(TAG).log(Level.FINE, "{0} expired", location);
+            DialDevice previous = registry.getByLocation(location);
+            URI lost = registry.removeLocation(location);
+            forget(location);
+            onLocationRemoved(location, previous, lost);
+        }
+    }
+
+    /**
+     * Confirm the known devices with a conditional request on their location
+     */
+    private void revalidateDevices() {
+        // the lifetimes elapsed while paused say nothing about the devices on the new network
+        synchronized (expirations) {
+            expirations.renewAll(now());
+        }
+        for (DialDevice device : registry.getDevices()) {
+            URI location = device.getLocation();
+            descriptionCache.invalidate(location);
+            resolve(location, networkChangeCallback);
+        }
+    }
+
+    /**
+     * Evict the least recently advertised locations while there are too many
+     */
+    private void trimDevices() {
+        URI eldest;
+        while ((eldest = registry.getOverflow()) != null) {
+            Logger.getLogger(TAG).log(Level.FINE, "Too many devices, evicting {0}", eldest);
+            capacityEvictions++;
+            evict(eldest);
+        }
+    }
+
+    /**
+     * Report every known location as lost
+     */
+    private void flushDevices() {
+        List<URI> locations;
+        synchronized (expirations) {
+            locations = expirations.clear();
+        }
+        List<URI> lost = registry.clear();
+        for (URI location : locations) {
+            forget(location);
+        }
+        for (URI location : lost) {
+            discoveryListener.onServiceLost(location);
+        }
+    }
+
+    /**
+     * Report the devices of the device cache and revalidate them
+     */
+    private void restoreDevices() {
+        PersistentDeviceCache cache = deviceCache;
+        if (cache == null) {
+            return;
+        }
+        List<DialDevice> devices;
+        try {
+            devices = cache.load();
+        } catch (IOException e) {
+            Logger.getLogger(TAG).log(Level.WARNING, "could not load device cache", e);
+            return;
+        }
+        DiscoveryFilter f = filter;
+        for (DialDevice dd : devices) {
+            URI location = dd.getLocation();
+            if (location == null || dd.getUuid() == null || registry.getByUuid(dd.getUuid()) != null
+                    || f != null && !f.accept(dd)) {
+                continue;
             }
+            track(location);
+            registry.advertise(location, dd.getUuid());
+            registry.update(location, dd);
+            discoveryListener.onServiceResolved(dd);
+            resolve(location, verificationCallback);
         }
+        trimDevices();
     }
 
-    private void removeKnownDevice(URI location) {
-        synchronized (knownDevices) {
-            for (Iterator<Map.Entry<URI, DialDevice>> iterator = knownDevices.entrySet().iterator(); iterator.hasNext(); ) {
-                Map.Entry<URI, DialDevice> entry = iterator.next();
-                URI uri = entry.getKey();
-                if (location.equals(uri)) {
-                    iterator.remove();
-                }
+    /**
+     * Probe the resolved devices that did not answer the latest scan
+     */
+    private void probeMissingDevices() {
+        LivenessProber prober = livenessProber;
+        if (prober == null) {
+            return;
+        }
+        for (DialDevice device : registry.getDevices()) {
+            URI location = device.getLocation();
+            if (location != null && !scanLocations.contains(location)) {
+                prober.probe(location, probeListener);
             }
         }
     }
 
-    private List<SSDPMessage> discoverInternal(SSDPSocket socket, int timeout, int retry) throws IOException {
-        pruneDevices(retry);
-        for (SSDPMessage mSearch : buildMSearchPacket(searchTargets)) {
-            socket.send(mSearch);
+    private void saveDevices() {
+        PersistentDeviceCache cache = deviceCache;
+        if (cache == null) {
+            return;
         }
-        currentScan++;
-        List<SSDPMessage> result = socket.read(timeout, socketListener);
-        if (result.isEmpty()) {
-            Logger.getLogger(TAG).log(Level.FINE, "no device found");
+        try {
+            cache.save(registry.getDevices());
+        } catch (IOException e) {
+            Logger.getLogger(TAG).log(Level.WARNING, "could not save device cache", e);
         }
-        return result;
+    }
+
+    /**
+     * Report a location as lost right away
+     */
+    private void evict(URI location) {
+        synchronized (expirations) {
+            expirations.cancel(location);
+        }
+        DialDevice previous = registry.getByLocation(location);
+        URI lost = registry.removeLocation(location);
+        forget(location);
+        onLocationRemoved(location, previous, lost);
+    }
+
+    /**
+     * Report the removal of a location from the registry
+     * @param location the removed location
+     * @param previous the device resolved at this location before the removal, or null
+     * @param lost the location to be reported as lost, or null
+     */
+    private void onLocationRemoved(URI location, DialDevice previous, URI lost) {
+        if (lost != null) {
+            discoveryListener.onServiceLost(lost);
+            return;
+        }
+        if (previous != null && location.equals(previous.getLocation())) {
+            DialDevice moved = registry.getByUuid(previous.getUuid());
+            if (moved != null) {
+                // still reachable at an other location, which the device is now announced with
+                Logger.getLogger(TAG).log(Level.FINE, "{0} is now known by {1}", new Object[]{previous.getUuid(), moved.getLocation()});
+                discoveryListener.onServiceLost(location);
+                discoveryListener.onServiceResolved(moved);
+            }
+        }
+    }
+
+    /**
+     * Make sure a location that has been resolved will expire
+     */
+    private void track(URI location) {
+        synchronized (expirations) {
+            if (!expirations.contains(location)) {
+                expirations.schedule(location, now(), defaultLifetime);
+            }
+        }
+    }
+
+    private void forget(URI location) {
+        descriptionCache.invalidate(location);
+        scanLocations.remove(location);
+    }
+
+    /**
+     * Spread the copies of every M-SEARCH payload according to the retransmission policy
+     * @return the transmissions sorted by offset
+     */
+    private List<Transmission> scheduleTransmissions(RetransmissionPolicy policy, List<byte[]> payloads) {
+        List<Transmission> transmissions = new ArrayList<>(payloads.size() * policy.getCount());
+        for (byte[] payload : payloads) {
+            for (int copy = 0; copy < policy.getCount(); copy++) {
+                transmissions.add(new Transmission(policy.getOffset(copy, random), payload));
+            }
+        }
+        Collections.sort(transmissions, (t1, t2) -> Long.compare(t1.offset, t2.offset));
+        return transmissions;
     }
 
     private boolean validateResponse(SSDPMessage ssdpResponse) {
@@ -308,18 +1099,209 @@ public class SSDPManager {
                 searchTargets.contains(searchTarget));
     }
 
+    private boolean accept(SSDPMessage advertisement) {
+        DiscoveryFilter f = filter;
+        if (f == null || f.accept(advertisement)) {
+            return true;
+        }
+        Logger.getLogger(TAG).log(Level.FINEST, "Filtering out {0}", advertisement.getHeader(SSDPMessage.LOCATION));
+        return false;
+    }
+
+    private boolean validateNotify(SSDPMessage notify) {
+        String location = notify.getHeader(SSDPMessage.LOCATION);
+        String notificationType = notify.getHeader(SSDPMessage.NT);
+        return (location != null && location.length() > 0 &&
+                searchTargets.contains(notificationType));
+    }
+
+    /**
+     * Get the M-SEARCH packets for a MX, they are encoded once
+     */
+    private List<byte[]> getMSearchPayloads(int maxWaitTime) {
+        List<byte[]> payloads = mSearchPayloads.get(maxWaitTime);
+        if (payloads == null) {
+            payloads = buildMSearchPayloads(searchTargets, maxWaitTime);
+            mSearchPayloads.put(maxWaitTime, payloads);
+        }
+        return payloads;
+    }
+
     /**
-     * Build a list of M-SEARCH packet to be sent on the multicast address
-     * @return a List of SSDPMessage
+     * Encode the M-SEARCH packets to be sent on the multicast address
+     * @return a List of encoded datagrams, one per search target
      */
-    private List<SSDPMessage> buildMSearchPacket(Set<String> searchTargets) {
-        List<SSDPMessage> mSearchPacketList = new ArrayList<>();
+    private static List<byte[]> buildMSearchPayloads(Set<String> searchTargets, int maxWaitTime) {
+        List<byte[]> mSearchPayloadList = new ArrayList<>();
         synchronized (searchTargets) {
             for (String searchTarget : searchTargets) {
-                SSDPMessage mSearch = SSDPMessage.createMSearchMessage(searchTarget);
-                mSearchPacketList.add(mSearch);
+                mSearchPayloadList.add(SSDPMessage.createMSearchMessage(searchTarget, maxWaitTime).toBytes());
+            }
+        }
+        return mSearchPayloadList;
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    /**
+     * A discovery run with a given reliability or scan policy, executed step by step on the engine.
+     * Each step sends the M-SEARCH copies that are due, then reads the socket until the next
+     * transmission or for one expiry tick at most.
+     */
+    private class Session implements Runnable {
+        private final AdaptiveScanScheduler scheduler;
+        private int timeout;
+        private volatile boolean cancelled;
+        private volatile SSDPSocket socket;
+        // called on the dispatch thread of the socket, the message is handled on the engine
+        private final SSDPSocket.Listener socketListener = response -> {
+            if (cancelled) {
+                return;
+            }
+            post(() -> onResponse(response));
+            SSDPSocket s = socket;
+            if (s != null) {
+                // let the engine handle the message without waiting for the end of the read
+                s.wakeup();
             }
+        };
+        private List<Transmission> transmissions;
+        private int nextTransmission;
+        private long scanStart;
+
+        Session(int timeout, AdaptiveScanScheduler scheduler) {
+            this.timeout = timeout;
+            this.scheduler = scheduler;
+        }
+
+        /**
+         * @return a session with the same settings, starting again with a burst of scans
+         */
+        Session restart() {
+            return new Session(timeout, scheduler == null ? null : new AdaptiveScanScheduler(scheduler.getPolicy()));
+        }
+
+        void cancel() {
+            cancelled = true;
+            SSDPSocket s = socket;
+            if (s != null) {
+                s.close();
+            }
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            long stepEnd;
+            try {
+                if (socket == null) {
+                    socket = createSocket();
+                    if (cancelled) {
+                        socket.close();
+                        return;
+                    }
+                }
+                stepEnd = step(socket);
+            } catch (IOException e) {
+                if (cancelled) {
+                    Logger.getLogger(TAG).log(Level.FINE, "Socket closed");
+                } else {
+                    Logger.getLogger(TAG).log(Level.WARNING, "could not execute request (Network might be unreachable)", e);
+                    abort();
+                }
+                return;
+            } catch (RuntimeException e) {
+                Logger.getLogger(TAG).log(Level.WARNING, "Exception ", e);
+                abort();
+                return;
+            }
+            boolean pendingTasks;
+            synchronized (engineTasks) {
+                pendingTasks = !engineTasks.isEmpty();
+            }
+            if (pendingTasks) {
+                // the received messages are handled first, then the reading goes on
+                post(this);
+                return;
+            }
+            // a socket returning early must not make the engine spin
+            try {
+                executor.schedule(() -> post(this), Math.max(0, stepEnd - now()), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                Logger.getLogger(TAG).log(Level.FINE, "discovery engine is shut down");
+            }
+        }
+
+        /**
+         * @return the time until which the step was expected to read
+         */
+        private long step(SSDPSocket socket) throws IOException {
+            long now = now();
+            if (transmissions == null) {
+                int maxWaitTime = SSDPMessage.SSDP_MAX_WAIT_TIME;
+                if (scheduler != null) {
+                    timeout = scheduler.getInterval() * SECOND_TO_MILLI;
+                    maxWaitTime = scheduler.getMaxWaitTime();
+                }
+                Logger.getLogger(TAG).log(Level.FINE, "timeout {0}", timeout);
+                expireDevices();
+                // the datagrams of the previous scan are not reported in this one
+                socket.discardQueued();
+                scanLocations.clear();
+                scanResponses = 0;
+                transmissions = scheduleTransmissions(retransmissionPolicy, getMSearchPayloads(maxWaitTime));
+                nextTransmission = 0;
+                scanStart = now;
+            }
+            while (nextTransmission < transmissions.size() && scanStart + transmissions.get(nextTransmission).offset <= now) {
+                socket.send(transmissions.get(nextTransmission++).payload);
+            }
+            long deadline = scanStart + (nextTransmission < transmissions.size() ? transmissions.get(nextTransmission).offset : timeout);
+            long end = Math.min(deadline, now + EXPIRY_TICK);
+            if (end > now) {
+                socket.read((int) (end - now), socketListener);
+            }
+            expireDevices();
+            if (nextTransmission == transmissions.size() && now() >= scanStart + timeout) {
+                if (scanLocations.isEmpty()) {
+                    Logger.getLogger(TAG).log(Level.FINE, "no device found");
+                }
+                if (scheduler != null) {
+                    // a missing response does not count as a change until the location expires
+                    scheduler.onScanCompleted(registry.getLocations(), scanResponses);
+                }
+                probeMissingDevices();
+                transmissions = null;
+            }
+            return end;
+        }
+
+        private void abort() {
+            cancelled = true;
+            SSDPSocket s = socket;
+            if (s != null) {
+                s.close();
+            }
+            synchronized (sessionLock) {
+                if (session == this) {
+                    session = null;
+                }
+            }
+            flushDevices();
+        }
+    }
+
+    private static class Transmission {
+        final long offset;
+        final byte[] payload;
+
+        Transmission(long offset, byte[] payload) {
+            this.offset = offset;
+            this.payload = payload;
         }
-        return mSearchPacketList;
     }
 }
@@ -19,10 +19,9 @@
 
 package org.ocast.discovery;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.text.ParseException;
-import java.util.HashMap;
-import java.util.Locale;
-import java.util.Map;
 
 /**
  * A basic class to build/parse SSDP messages
@@ -31,7 +30,8 @@ import java.util.Map;
 public class SSDPMessage {
 
     private static final String SSDP_DISCOVER_EXTENSION = "\"ssdp:discover\"";
-    private static final String SSDP_MAX_WAIT_TIME = "5";
+    private static final String MAX_AGE = "max-age";
+    static final int SSDP_MAX_WAIT_TIME = 5;
 
     // Multicast channel and port reserved for SSDP by IANA
     static final String SSDP_MULTICAT_ADDRESS = "239.255.255.250";
@@ -39,13 +39,28 @@ public class SSDPMessage {
 
     static final String LOCATION = "LOCATION";   //URL for device description
     static final String ST = "ST";               //Search Target
+    static final String USN = "USN";             //Unique Service Name
+    static final String CACHE_CONTROL = "CACHE-CONTROL";
+    static final String SERVER = "SERVER";
+    static final String NT = "NT";               //Notification Type
+    static final String NTS = "NTS";             //Notification Sub Type
+
+    // Notification Sub Types of a NOTIFY message
+    static final String SSDP_ALIVE = "ssdp:alive";
+    static final String SSDP_BYEBYE = "ssdp:byebye";
 
     private static final String HOST = "HOST";           //Should always be SSDP Multicast channel
     private static final String MAN = "MAN";             //Mandatory Extesion
     private static final String MX = "MX";               //Max Wait Time
-    private static final String USN = "USN";             //Unique Service Name
     private static final String CRLF = "\r\n";
 
+    static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * Supported headers, in the order they are serialized
+     */
+    static final String[] HEADERS = {ST, HOST, MAN, MX, LOCATION, CACHE_CONTROL, SERVER, USN, NT, NTS};
+
     /**
      * Type is inferred by the HTTP discover line / status line
      */
@@ -86,7 +101,7 @@ public class SSDPMessage {
     }
 
     private Type mType;
-    private Map<String, String> mHeaders = new HashMap<>();
+    private final String[] mHeaders = new String[HEADERS.length];
 
     public SSDPMessage(Type type) {
         this.mType = type;
@@ -106,16 +121,26 @@ public class SSDPMessage {
      * @param value the header value
      */
     private void addHeader(String key, String value){
-        mHeaders.put(key, value);
+        setHeader(headerIndex(key), value);
+    }
+
+    /**
+     * Set the header at a given index of {@link #HEADERS}
+     * @param index the header index
+     * @param value the header value
+     */
+    void setHeader(int index, String value) {
+        mHeaders[index] = value;
     }
 
     /**
      * Get the corresponding header
-     * @param name the header name
-     * @return header value or null if header is not present
+     * @param name the header name (case insensitive)
+     * @return header value or null if header is not present or not supported
      */
     String getHeader(String name){
-        return mHeaders.get(name);
+        int index = headerIndex(name);
+        return index < 0 ? null : mHeaders[index];
     }
 
     /**
@@ -125,8 +150,37 @@ public class SSDPMessage {
      * @return a unique id
      */
     public String getUuid() {
-        String usn = mHeaders.get(USN);
-        return usn.split(":")[1];
+        String usn = getHeader(USN);
+        if (usn == null) {
+            return null;
+        }
+        int start = usn.indexOf(':') + 1;
+        int end = usn.indexOf(':', start);
+        return end < 0 ? usn.substring(start) : usn.substring(start, end);
+    }
+
+    /**
+     * Retrieve the max-age directive of the CACHE-CONTROL header
+     * eg: if header is "max-age=1800" the return value will be 1800
+     * @return the advertisement validity in seconds, or -1 if absent or invalid
+     */
+    public int getMaxAge() {
+        String cacheControl = getHeader(CACHE_CONTROL);
+        if (cacheControl == null) {
+            return -1;
+        }
+        for (String directive : cacheControl.split(",")) {
+            int equal = directive.indexOf('=');
+            if (equal > 0 && MAX_AGE.equalsIgnoreCase(directive.substring(0, equal).trim())) {
+                try {
+                    int maxAge = Integer.parseInt(directive.substring(equal + 1).trim());
+                    return maxAge >= 0 ? maxAge : -1;
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
     }
 
     /**
@@ -136,14 +190,47 @@ public class SSDPMessage {
      * @return a M-SEARCH SSDP message
      */
     static SSDPMessage createMSearchMessage(String searchTarget) {
+        return createMSearchMessage(searchTarget, SSDP_MAX_WAIT_TIME);
+    }
+
+    /**
+     * Returns an SSDPMessage to send a M-SEARCH message
+     * @param searchTarget the urn identifying the devices targeted by the scanInternal discoverInternal
+     *                     eg: urn:cast-ocast-org:service:cast:1
+     * @param maxWaitTime the MX value, maximum time (seconds) a device may wait before responding
+     * @return a M-SEARCH SSDP message
+     */
+    static SSDPMessage createMSearchMessage(String searchTarget, int maxWaitTime) {
+        SSDPMessage mSearchMessage = new SSDPMessage(Type.M_SEARCH);
+        mSearchMessage.addHeader(HOST, SSDP_MULTICAT_ADDRESS + ":" + SSDP_PORT);
+        mSearchMessage.addHeader(MAN, SSDP_DISCOVER_EXTENSION);
+        mSearchMessage.addHeader(MX, Integer.toString(maxWaitTime));
+        mSearchMessage.addHeader(ST, searchTarget);
+        return mSearchMessage;
+    }
+
+    /**
+     * Returns an SSDPMessage to send a M-SEARCH message to a single device, which answers right away
+     * @param searchTarget the urn identifying the devices targeted by the search
+     * @param host the address of the device
+     * @return a unicast M-SEARCH SSDP message
+     */
+    static SSDPMessage createUnicastMSearchMessage(String searchTarget, String host) {
         SSDPMessage mSearchMessage = new SSDPMessage(Type.M_SEARCH);
-        mSearchMessage.addHeader(HOST, String.format(Locale.US, "%s:%d", SSDPMessage.SSDP_MULTICAT_ADDRESS, SSDPMessage.SSDP_PORT));
+        mSearchMessage.addHeader(HOST, host + ":" + SSDP_PORT);
         mSearchMessage.addHeader(MAN, SSDP_DISCOVER_EXTENSION);
-        mSearchMessage.addHeader(MX, SSDP_MAX_WAIT_TIME);
         mSearchMessage.addHeader(ST, searchTarget);
         return mSearchMessage;
     }
 
+    /**
+     * Encode the message to be sent on the network
+     * @return the UTF-8 representation of the message
+     */
+    byte[] toBytes() {
+        return toString().getBytes(CHARSET);
+    }
+
     /**
      * Returns an SSDPMessage instance created according to the text parameter
      * @param txt a text SSDP payload, eg
@@ -158,33 +245,29 @@ public class SSDPMessage {
      * @return an SSDPMessage
      */
     static SSDPMessage fromString(String txt) throws ParseException {
-        String[] lines = txt.split(CRLF);
-        Type type = Type.fromString(lines[0].trim());
-        if(type == null){
-            throw new ParseException("unexpected line: "+ lines[0].trim(),0);
-        }
-        SSDPMessage ssdpMessage = new SSDPMessage(type);
-        for (int i = 1; i < lines.length; i++) {
-            String line = lines[i].trim();
-            int index = line.indexOf(':');
-            if (index > 0) {
-                String header = line.substring(0, index).trim();
-                String value = line.substring(index + 1).trim();
-                ssdpMessage.addHeader(header, value);
+        return new SSDPMessageParser(null).parse(ByteBuffer.wrap(txt.getBytes(CHARSET)));
+    }
+
+    static int headerIndex(String name) {
+        for (int i = 0; i < HEADERS.length; i++) {
+            if (HEADERS[i].equalsIgnoreCase(name)) {
+                return i;
             }
         }
-        return ssdpMessage;
+        return -1;
     }
 
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
         builder.append(mType).append(CRLF);
-        for (Map.Entry<String,String> entry: mHeaders.entrySet()) {
-            builder.append(entry.getKey())
-                    .append(": ")
-                    .append(entry.getValue())
-                    .append(CRLF);
+        for (int i = 0; i < HEADERS.length; i++) {
+            if (mHeaders[i] != null) {
+                builder.append(HEADERS[i])
+                        .append(": ")
+                        .append(mHeaders[i])
+                        .append(CRLF);
+            }
         }
         builder.append(CRLF);
         return builder.toString();
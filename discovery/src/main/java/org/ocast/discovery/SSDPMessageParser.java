@@ -0,0 +1,245 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Parses SSDP datagrams directly from a ByteBuffer.
+ * Only the start line and the headers used by the discovery (LOCATION, ST, USN, CACHE-CONTROL,
+ * NT, NTS, SERVER) are read. When search targets are given, responses whose ST and notifications
+ * whose NT is not a search target of interest are rejected before any String is allocated, as well
+ * as M-SEARCH requests from other control points.
+ * A parser instance is not thread-safe.
+ */
+class SSDPMessageParser {
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+    private static final byte COLON = ':';
+
+    private static final String[] PARSED_HEADERS = {
+            SSDPMessage.LOCATION, SSDPMessage.ST, SSDPMessage.USN, SSDPMessage.CACHE_CONTROL,
+            SSDPMessage.NT, SSDPMessage.NTS, SSDPMessage.SERVER
+    };
+    private static final byte[][] PARSED_HEADER_NAMES = new byte[PARSED_HEADERS.length][];
+    private static final int[] PARSED_HEADER_INDEXES = new int[PARSED_HEADERS.length];
+    private static final int ST_INDEX = 1;
+    private static final int NT_INDEX = 4;
+    private static final SSDPMessage.Type[] TYPES = SSDPMessage.Type.values();
+    private static final byte[][] TYPE_LINES = new byte[TYPES.length][];
+
+    static {
+        for (int i = 0; i < PARSED_HEADERS.length; i++) {
+            PARSED_HEADER_NAMES[i] = PARSED_HEADERS[i].getBytes(SSDPMessage.CHARSET);
+            PARSED_HEADER_INDEXES[i] = SSDPMessage.headerIndex(PARSED_HEADERS[i]);
+        }
+        for (int i = 0; i < TYPES.length; i++) {
+            TYPE_LINES[i] = TYPES[i].toString().getBytes(SSDPMessage.CHARSET);
+        }
+    }
+
+    private final byte[][] searchTargets;
+    // start/end offsets of each parsed header value, reused from one datagram to the other
+    private final int[] valueOffsets = new int[PARSED_HEADERS.length * 2];
+
+    /**
+     * @param searchTargets the search targets a RESPONSE (ST) or a NOTIFY (NT) must match to be
+     *                      accepted, or null to accept every message
+     */
+    SSDPMessageParser(Set<String> searchTargets) {
+        if (searchTargets == null) {
+            this.searchTargets = null;
+        } else {
+            this.searchTargets = new byte[searchTargets.size()][];
+            int i = 0;
+            for (String searchTarget : searchTargets) {
+                this.searchTargets[i++] = searchTarget.getBytes(SSDPMessage.CHARSET);
+            }
+        }
+    }
+
+    /**
+     * Parse the remaining bytes of a buffer. The buffer position is left unchanged.
+     * @param buffer a buffer holding one SSDP datagram
+     * @return the corresponding SSDPMessage, or null if it does not concern the search targets
+     * @throws ParseException if the start line is unknown
+     */
+    SSDPMessage parse(ByteBuffer buffer) throws ParseException {
+        int limit = buffer.limit();
+        int lineStart = buffer.position();
+        int lineEnd = lineEnd(buffer, lineStart, limit);
+        SSDPMessage.Type type = readType(buffer, lineStart, lineEnd);
+        if (type == null) {
+            throw new ParseException("unexpected line: " + decode(buffer, trimStart(buffer, lineStart, lineEnd), trimEnd(buffer, lineStart, lineEnd)), 0);
+        }
+        Arrays.fill(valueOffsets, -1);
+        lineStart = nextLine(buffer, lineEnd, limit);
+        while (lineStart < limit) {
+            lineEnd = lineEnd(buffer, lineStart, limit);
+            readHeader(buffer, lineStart, lineEnd);
+            lineStart = nextLine(buffer, lineEnd, limit);
+        }
+        if (!accept(type, buffer)) {
+            return null;
+        }
+        SSDPMessage message = new SSDPMessage(type);
+        for (int i = 0; i < PARSED_HEADERS.length; i++) {
+            int start = valueOffsets[2 * i];
+            if (start >= 0) {
+                message.setHeader(PARSED_HEADER_INDEXES[i], decode(buffer, start, valueOffsets[2 * i + 1]));
+            }
+        }
+        return message;
+    }
+
+    private SSDPMessage.Type readType(ByteBuffer buffer, int start, int end) {
+        start = trimStart(buffer, start, end);
+        end = trimEnd(buffer, start, end);
+        for (int i = 0; i < TYPES.length; i++) {
+            if (equalsIgnoreCase(buffer, start, end, TYPE_LINES[i])) {
+                return TYPES[i];
+            }
+        }
+        return null;
+    }
+
+    private void readHeader(ByteBuffer buffer, int start, int end) {
+        int colon = start;
+        while (colon < end && buffer.get(colon) != COLON) {
+            colon++;
+        }
+        if (colon == end) {
+            return;
+        }
+        int nameStart = trimStart(buffer, start, colon);
+        int nameEnd = trimEnd(buffer, nameStart, colon);
+        for (int i = 0; i < PARSED_HEADER_NAMES.length; i++) {
+            if (equalsIgnoreCase(buffer, nameStart, nameEnd, PARSED_HEADER_NAMES[i])) {
+                int valueStart = trimStart(buffer, colon + 1, end);
+                valueOffsets[2 * i] = valueStart;
+                valueOffsets[2 * i + 1] = trimEnd(buffer, valueStart, end);
+                return;
+            }
+        }
+    }
+
+    private boolean accept(SSDPMessage.Type type, ByteBuffer buffer) {
+        if (searchTargets == null) {
+            return true;
+        }
+        switch (type) {
+            case RESPONSE:
+                return matchSearchTarget(buffer, ST_INDEX);
+            case NOTIFY:
+                return matchSearchTarget(buffer, NT_INDEX);
+            default:
+                return false;
+        }
+    }
+
+    private boolean matchSearchTarget(ByteBuffer buffer, int headerIndex) {
+        int start = valueOffsets[2 * headerIndex];
+        if (start < 0) {
+            return false;
+        }
+        int end = valueOffsets[2 * headerIndex + 1];
+        for (byte[] searchTarget : searchTargets) {
+            if (equals(buffer, start, end, searchTarget)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int lineEnd(ByteBuffer buffer, int start, int limit) {
+        int i = start;
+        while (i < limit) {
+            byte b = buffer.get(i);
+            if (b == CR || b == LF) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static int nextLine(ByteBuffer buffer, int lineEnd, int limit) {
+        int i = lineEnd;
+        if (i < limit && buffer.get(i) == CR) {
+            i++;
+        }
+        if (i < limit && buffer.get(i) == LF) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int trimStart(ByteBuffer buffer, int start, int end) {
+        while (start < end && buffer.get(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimEnd(ByteBuffer buffer, int start, int end) {
+        while (end > start && buffer.get(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    private static boolean equals(ByteBuffer buffer, int start, int end, byte[] value) {
+        if (end - start != value.length) {
+            return false;
+        }
+        for (int i = 0; i < value.length; i++) {
+            if (buffer.get(start + i) != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equalsIgnoreCase(ByteBuffer buffer, int start, int end, byte[] value) {
+        if (end - start != value.length) {
+            return false;
+        }
+        for (int i = 0; i < value.length; i++) {
+            if (toUpperCase(buffer.get(start + i)) != toUpperCase(value[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte toUpperCase(byte b) {
+        return b >= 'a' && b <= 'z' ? (byte) (b - ('a' - 'A')) : b;
+    }
+
+    private static String decode(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, SSDPMessage.CHARSET);
+    }
+}
@@ -19,36 +19,222 @@
 package org.ocast.discovery;
 
 import java.io.IOException;
-import java.io.InterruptedIOException;
 import java.net.DatagramPacket;
+import java.net.Inet4Address;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
 import java.net.SocketException;
-import java.net.UnknownHostException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * A SSDP socket working on every enabled network interface.
+ * One DatagramChannel is bound per interface and all of them are multiplexed on a single Selector,
+ * so that M-SEARCH requests are sent on each interface and responses are received on one thread.
+ * Where the channels do not support multicast (before Android 7.0), one MulticastSocket is bound
+ * per interface instead, each received on its own thread.
+ * The received datagrams are handed to a dispatch thread of the socket, which parses them and
+ * notifies the listener, so that a slow listener does not delay the reception.
+ */
 public class SSDPSocket {
     private static final String TAG = SSDPSocket.class.getSimpleName();
     private static final int READ_BUFFER_SIZE = 4096;
+    private static final int QUEUE_CAPACITY = 32;
+    // one buffer per queued datagram, plus the one being received and the one being dispatched
+    private static final int BUFFER_POOL_SIZE = QUEUE_CAPACITY + 2;
+    private static final int DEFAULT_SOURCE_RATE = 20;
+    private static final int DEFAULT_SOURCE_BURST = 40;
+    private static final String DEFAULT_INTERFACE = "default";
+    // DatagramChannel supports multicast from Java 7 and Android 7.0 (API 24) only
+    private static final boolean CHANNEL_MULTICAST = isChannelMulticastSupported();
 
-    private MulticastSocket socket;
-    private InetAddress multicastAddress;
+    private final int receiveBufferSize;
+    private final boolean channelMulticast;
+    // notified when a read without selector must return
+    private final Object readLock = new Object();
+    // one byte more than the largest datagram accepted, so that a truncated datagram fills the buffer
+    private final ByteBufferPool bufferPool = new ByteBufferPool(READ_BUFFER_SIZE + 1, BUFFER_POOL_SIZE);
+    private final List<InterfaceChannel> channels = new ArrayList<>();
+    // datagrams received but not dispatched yet
+    private final BlockingQueue<Datagram> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private SourceRateLimiter rateLimiter = new SourceRateLimiter(DEFAULT_SOURCE_RATE, DEFAULT_SOURCE_BURST);
+    private volatile SSDPMessageParser parser = new SSDPMessageParser(null);
+    private Selector selector;
+    private InetSocketAddress multicastAddress;
+    private Thread dispatcher;
+    private volatile boolean closed;
+    // set by a wakeup, cleared by the read it makes return, even if it arrived before that read
+    private final AtomicBoolean wakeupRequested = new AtomicBoolean();
+    // the listener of the latest read, notified by the dispatcher
+    private volatile Listener listener;
+    // the responses dispatched during the current read, or null
+    private volatile List<SSDPMessage> readResponses;
 
     public interface Listener {
         void onResponse(SSDPMessage response);
     }
 
     /**
-     * Allow subclass to customize the socket creation
-     * @return a MulticastSocket
-     * @throws IOException
+     * Counters of the datagrams received on a network interface
+     */
+    public static class InterfaceStats {
+        private final String mInterfaceName;
+        private final AtomicLong mReceived = new AtomicLong();
+        private final AtomicLong mDropped = new AtomicLong();
+        private final AtomicLong mRateLimited = new AtomicLong();
+        private final AtomicLong mOverflowed = new AtomicLong();
+
+        InterfaceStats(String interfaceName) {
+            mInterfaceName = interfaceName;
+        }
+
+        /**
+         * @return the name of the network interface
+         */
+        public String getInterfaceName() {
+            return mInterfaceName;
+        }
+
+        /**
+         * @return the number of datagrams received on this interface
+         */
+        public long getReceivedCount() {
+            return mReceived.get();
+        }
+
+        /**
+         * @return the number of received datagrams that have been dropped (truncated or malformed)
+         */
+        public long getDroppedCount() {
+            return mDropped.get();
+        }
+
+        /**
+         * @return the number of received datagrams that have been dropped because their source
+         * exceeded its rate limit
+         */
+        public long getRateLimitedCount() {
+            return mRateLimited.get();
+        }
+
+        /**
+         * @return the number of received datagrams that have been dropped because too many
+         * datagrams were waiting to be processed
+         */
+        public long getOverflowCount() {
+            return mOverflowed.get();
+        }
+
+        @Override
+        public String toString() {
+            return mInterfaceName + " [received:" + mReceived.get() + " dropped:" + mDropped.get()
+                    + " rateLimited:" + mRateLimited.get() + " overflow:" + mOverflowed.get() + "]";
+        }
+    }
+
+    private static class InterfaceChannel {
+        final DatagramChannel channel;
+        // used instead of the channel where channels do not support multicast
+        final MulticastSocket socket;
+        final InterfaceStats stats;
+        final boolean groupMember;
+
+        InterfaceChannel(DatagramChannel channel, MulticastSocket socket, String name, boolean groupMember) {
+            this.channel = channel;
+            this.socket = socket;
+            this.stats = new InterfaceStats(name);
+            this.groupMember = groupMember;
+        }
+    }
+
+    private static class Datagram {
+        final ByteBuffer buffer;
+        final SocketAddress source;
+        final InterfaceChannel interfaceChannel;
+
+        Datagram(ByteBuffer buffer, SocketAddress source, InterfaceChannel interfaceChannel) {
+            this.buffer = buffer;
+            this.source = source;
+            this.interfaceChannel = interfaceChannel;
+        }
+    }
+
+    /**
+     * Initializes a newly created SSDPSocket using the system default receive buffer size
+     */
+    public SSDPSocket() {
+        this(0);
+    }
+
+    /**
+     * Initializes a newly created SSDPSocket
+     * @param receiveBufferSize SO_RCVBUF applied to every channel (bytes), 0 to keep the system default
+     */
+    public SSDPSocket(int receiveBufferSize) {
+        this(receiveBufferSize, CHANNEL_MULTICAST);
+    }
+
+    /**
+     * @param receiveBufferSize SO_RCVBUF applied to every channel (bytes), 0 to keep the system default
+     * @param channelMulticast false to use a MulticastSocket per interface instead of channels
+     */
+    SSDPSocket(int receiveBufferSize, boolean channelMulticast) {
+        this.receiveBufferSize = receiveBufferSize;
+        this.channelMulticast = channelMulticast;
+    }
+
+    /**
+     * Allow subclass to customize the interfaces used for discovery
+     * @param networkInterface a network interface of the host
+     * @return true if SSDP messages should be sent/received on this interface
+     * @throws SocketException
+     */
+    protected boolean acceptInterface(NetworkInterface networkInterface) throws SocketException {
+        return networkInterface.isUp()
+                && !networkInterface.isLoopback()
+                && networkInterface.supportsMulticast()
+                && getIPv4Address(networkInterface) != null;
+    }
+
+    /**
+     * Restrict the responses returned by {@link #read(int, Listener) read} to a set of search targets.
+     * Responses to other search targets are discarded without being fully parsed.
+     * @param searchTargets the search targets of interest, or null to accept every response
+     */
+    public void setSearchTargets(Set<String> searchTargets) {
+        parser = new SSDPMessageParser(searchTargets);
+    }
+
+    /**
+     * Limit the rate of datagrams accepted from every source address, the datagrams in excess are
+     * dropped before being parsed
+     * @param rate the steady number of datagrams accepted per second from a source
+     * @param burst the number of datagrams a source may send at once
      */
-    protected MulticastSocket createSocket() throws IOException {
-        return new MulticastSocket();
+    public void setSourceRateLimit(int rate, int burst) {
+        rateLimiter = new SourceRateLimiter(rate, burst);
     }
 
     /**
@@ -57,71 +243,439 @@ public class SSDPSocket {
      * @throws IOException
      */
     public void init(boolean joinGroup) throws IOException {
+        multicastAddress = new InetSocketAddress(InetAddress.getByName(SSDPMessage.SSDP_MULTICAT_ADDRESS), SSDPMessage.SSDP_PORT);
+        List<NetworkInterface> interfaces = getNetworkInterfaces();
+        if (channelMulticast) {
+            initChannels(interfaces, joinGroup);
+        } else {
+            initSockets(interfaces, joinGroup);
+        }
+        dispatcher = new Thread(this::dispatch, "SSDPSocket");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    private void initChannels(List<NetworkInterface> interfaces, boolean joinGroup) throws IOException {
+        selector = Selector.open();
+        try {
+            for (NetworkInterface networkInterface : interfaces) {
+                InetAddress address = getIPv4Address(networkInterface);
+                DatagramChannel channel = openChannel();
+                channel.bind(new InetSocketAddress(address, 0));
+                channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface);
+                register(channel, networkInterface.getName(), false);
+            }
+            if (interfaces.isEmpty()) {
+                Logger.getLogger(TAG).log(Level.WARNING, "no multicast interface found, using default interface");
+                DatagramChannel channel = openChannel();
+                channel.bind(new InetSocketAddress(0));
+                register(channel, DEFAULT_INTERFACE, false);
+            }
+            if (joinGroup) {
+                DatagramChannel channel = openChannel();
+                channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+                channel.bind(new InetSocketAddress(SSDPMessage.SSDP_PORT));
+                for (NetworkInterface networkInterface : interfaces) {
+                    channel.join(multicastAddress.getAddress(), networkInterface);
+                }
+                register(channel, SSDPMessage.SSDP_MULTICAT_ADDRESS, true);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private void initSockets(List<NetworkInterface> interfaces, boolean joinGroup) throws IOException {
         try {
-            multicastAddress = InetAddress.getByName(SSDPMessage.SSDP_MULTICAT_ADDRESS);
-            socket = createSocket();
-            if(joinGroup) {
-                socket.joinGroup(multicastAddress);
+            for (NetworkInterface networkInterface : interfaces) {
+                MulticastSocket socket = openSocket(new InetSocketAddress(getIPv4Address(networkInterface), 0));
+                channels.add(new InterfaceChannel(null, socket, networkInterface.getName(), false));
+                socket.setNetworkInterface(networkInterface);
+            }
+            if (interfaces.isEmpty()) {
+                Logger.getLogger(TAG).log(Level.WARNING, "no multicast interface found, using default interface");
+                channels.add(new InterfaceChannel(null, openSocket(new InetSocketAddress(0)), DEFAULT_INTERFACE, false));
+            }
+            if (joinGroup) {
+                MulticastSocket socket = openSocket(new InetSocketAddress(SSDPMessage.SSDP_PORT));
+                channels.add(new InterfaceChannel(null, socket, SSDPMessage.SSDP_MULTICAT_ADDRESS, true));
+                for (NetworkInterface networkInterface : interfaces) {
+                    socket.joinGroup(multicastAddress, networkInterface);
+                }
             }
-        } catch (UnknownHostException e) {
-            //Should not happen as we provide a dotted address representation
-            Logger.getLogger(TAG).log(Level.WARNING, "Exception at init ", e);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        for (InterfaceChannel interfaceChannel : channels) {
+            Thread receiver = new Thread(() -> receiveSocket(interfaceChannel), "SSDPSocket " + interfaceChannel.stats.getInterfaceName());
+            receiver.setDaemon(true);
+            receiver.start();
         }
     }
 
     /**
-     * Close the SSDPSocket
+     * Close the SSDPSocket. It may be called from any thread: a pending {@link #read(int, Listener) read}
+     * returns, and the datagrams still queued are released by the thread reading the socket.
      */
     public void close() {
-        socket.close();
+        closed = true;
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+        }
+        for (InterfaceChannel interfaceChannel : channels) {
+            if (interfaceChannel.socket != null) {
+                interfaceChannel.socket.close();
+                continue;
+            }
+            try {
+                interfaceChannel.channel.close();
+            } catch (IOException e) {
+                Logger.getLogger(TAG).log(Level.FINE, "could not close channel", e);
+            }
+        }
+        synchronized (readLock) {
+            readLock.notifyAll();
+        }
+        if (selector != null) {
+            try {
+                selector.close();
+            } catch (IOException e) {
+                Logger.getLogger(TAG).log(Level.FINE, "could not close selector", e);
+            }
+        }
     }
 
-
     /**
-     * Send a SSDPMessage, typically M-SEARCH
+     * Send a SSDPMessage, typically M-SEARCH, once on every interface
      * @param message to be sent
      * @throws IOException
      */
     public void send(SSDPMessage message) throws IOException {
-        byte[] payload = message.toString().getBytes();
-        DatagramPacket packet = new DatagramPacket(payload, payload.length, multicastAddress, SSDPMessage.SSDP_PORT);
-        for (int i = 0 ; i < 3 ; i++) {
-            socket.send(packet);
+        send(message.toBytes());
+    }
+
+    /**
+     * Send an encoded SSDP message once on every interface
+     * @param payload the datagram content
+     * @throws IOException
+     */
+    public void send(byte[] payload) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        for (InterfaceChannel interfaceChannel : channels) {
+            if (interfaceChannel.groupMember) {
+                continue;
+            }
+            try {
+                if (interfaceChannel.socket != null) {
+                    interfaceChannel.socket.send(new DatagramPacket(payload, payload.length, multicastAddress));
+                } else {
+                    buffer.rewind();
+                    interfaceChannel.channel.send(buffer, multicastAddress);
+                }
+            } catch (ClosedChannelException e) {
+                throw new SocketException("Socket is closed");
+            } catch (IOException e) {
+                if (closed) {
+                    throw new SocketException("Socket is closed");
+                }
+                // One unreachable interface must not prevent discovery on the others
+                Logger.getLogger(TAG).log(Level.WARNING, "could not send on " + interfaceChannel.stats.getInterfaceName(), e);
+            }
         }
     }
 
     /**
-     * Read data on the multicast channel
+     * Read data on all the channels.
+     * The datagrams ready on the channels are queued without being parsed, and the dispatch thread
+     * of the socket parses them and notifies the listener, so that a burst of datagrams or a slow
+     * listener does not let the system buffers overflow. The datagrams that do not fit in the
+     * queue are dropped.
      * @param timeout amount of time the method should wait for data
-     * @param responseListener the object to be notified just in time
-     * @return a List of SSDPMessage received until timeout
+     * @param responseListener the object to be notified, from the dispatch thread of the socket
+     * @return a List of SSDPMessage dispatched until timeout
      * @throws IOException
      */
     public List<SSDPMessage> read(int timeout, Listener responseListener) throws IOException {
         List<SSDPMessage> result = new ArrayList<>();
+        listener = responseListener;
+        readResponses = result;
+        long endTime = System.currentTimeMillis() + timeout;
         try {
-            socket.setSoTimeout(timeout);
-        } catch (SocketException e) {
-            Logger.getLogger(TAG).log(Level.WARNING,"could not set socket timeout");
+            if (channelMulticast) {
+                long remaining;
+                while (!closed && !wakeupRequested.getAndSet(false) && (remaining = endTime - System.currentTimeMillis()) > 0) {
+                    selector.select(remaining);
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        InterfaceChannel interfaceChannel = (InterfaceChannel) key.attachment();
+                        receive(interfaceChannel);
+                    }
+                }
+            } else {
+                // the sockets are received on their own threads
+                awaitEnd(endTime);
+            }
+        } catch (ClosedSelectorException | ClosedChannelException e) {
+            // closed meanwhile
+        } finally {
+            readResponses = null;
         }
-        long endTime = System.currentTimeMillis() + timeout;
-        byte[] buffer = new byte[READ_BUFFER_SIZE];
-        DatagramPacket receivedPacket = new DatagramPacket(buffer, buffer.length);
-        do {
+        if (closed) {
+            discardQueued();
+            throw new SocketException("Socket closed");
+        }
+        synchronized (result) {
+            return new ArrayList<>(result);
+        }
+    }
+
+    /**
+     * Make a pending {@link #read(int, Listener) read} return before its timeout, or the next one
+     * return at once if none is pending
+     */
+    void wakeup() {
+        wakeupRequested.set(true);
+        if (selector != null) {
+            selector.wakeup();
+        }
+        synchronized (readLock) {
+            readLock.notifyAll();
+        }
+    }
+
+    /**
+     * Drop the datagrams received but not dispatched yet, typically when a new scan starts
+     */
+    void discardQueued() {
+        Datagram datagram;
+        while ((datagram = queue.poll()) != null) {
+            bufferPool.release(datagram.buffer);
+        }
+    }
+
+    /**
+     * Get the datagram counters of every interface in use
+     * @return a List of InterfaceStats
+     */
+    public List<InterfaceStats> getInterfaceStats() {
+        List<InterfaceStats> result = new ArrayList<>(channels.size());
+        for (InterfaceChannel interfaceChannel : channels) {
+            result.add(interfaceChannel.stats);
+        }
+        return result;
+    }
+
+    /**
+     * Get the local addresses the channels are bound to
+     * @return a List of socket addresses
+     * @throws IOException
+     */
+    List<InetSocketAddress> getLocalAddresses() throws IOException {
+        List<InetSocketAddress> result = new ArrayList<>(channels.size());
+        for (InterfaceChannel interfaceChannel : channels) {
+            if (interfaceChannel.socket != null) {
+                result.add((InetSocketAddress) interfaceChannel.socket.getLocalSocketAddress());
+            } else {
+                result.add((InetSocketAddress) interfaceChannel.channel.getLocalAddress());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Queue the datagrams ready on a channel, without parsing them
+     */
+    private void receive(InterfaceChannel interfaceChannel) throws IOException {
+        ByteBuffer buffer = bufferPool.acquire();
+        try {
+            SocketAddress source;
+            while ((source = interfaceChannel.channel.receive(buffer)) != null) {
+                if (enqueue(interfaceChannel, buffer, source)) {
+                    buffer = bufferPool.acquire();
+                }
+                buffer.clear();
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Queue the datagrams received on a socket, until the socket is closed
+     */
+    private void receiveSocket(InterfaceChannel interfaceChannel) {
+        byte[] data = new byte[bufferPool.getBufferSize()];
+        DatagramPacket packet = new DatagramPacket(data, data.length);
+        while (!closed) {
             try {
-                socket.receive(receivedPacket);
-                String data = new String(receivedPacket.getData(), 0, receivedPacket.getLength());
-                Logger.getLogger(TAG).log(Level.FINEST, "Received UDP packet : {0}", data.replace("\r", ""));
-                SSDPMessage ssdpResponse = SSDPMessage.fromString(data);
-                result.add(ssdpResponse);
+                packet.setLength(data.length);
+                interfaceChannel.socket.receive(packet);
+            } catch (IOException e) {
+                if (!closed) {
+                    Logger.getLogger(TAG).log(Level.WARNING, "could not receive on " + interfaceChannel.stats.getInterfaceName(), e);
+                }
+                // the socket is unusable once it failed
+                return;
+            }
+            ByteBuffer buffer = bufferPool.acquire();
+            buffer.put(data, 0, packet.getLength());
+            if (!enqueue(interfaceChannel, buffer, packet.getSocketAddress())) {
+                bufferPool.release(buffer);
+            }
+        }
+    }
+
+    /**
+     * Queue a received datagram, unless it is dropped
+     * @return true if the buffer has been queued, false if it can be reused
+     */
+    private boolean enqueue(InterfaceChannel interfaceChannel, ByteBuffer buffer, SocketAddress source) {
+        InterfaceStats stats = interfaceChannel.stats;
+        stats.mReceived.incrementAndGet();
+        if (buffer.position() == buffer.capacity()) {
+            // Datagrams larger than the buffer are silently truncated
+            stats.mDropped.incrementAndGet();
+            Logger.getLogger(TAG).log(Level.WARNING, "dropping oversized datagram from {0}", source);
+        } else if (!rateLimiter.tryAcquire(((InetSocketAddress) source).getAddress(), System.nanoTime() / 1000000)) {
+            stats.mRateLimited.incrementAndGet();
+        } else {
+            buffer.flip();
+            if (queue.offer(new Datagram(buffer, source, interfaceChannel))) {
+                return true;
+            }
+            stats.mOverflowed.incrementAndGet();
+        }
+        return false;
+    }
+
+    /**
+     * Wait until a read without selector must return
+     */
+    private void awaitEnd(long endTime) {
+        synchronized (readLock) {
+            long remaining;
+            while (!closed && !wakeupRequested.getAndSet(false) && (remaining = endTime - System.currentTimeMillis()) > 0) {
+                try {
+                    readLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Parse the queued datagrams and notify the listener, until the socket is closed
+     */
+    private void dispatch() {
+        try {
+            while (!closed) {
+                Datagram datagram = queue.take();
+                try {
+                    if (!closed) {
+                        process(datagram);
+                    }
+                } finally {
+                    bufferPool.release(datagram.buffer);
+                }
+            }
+        } catch (InterruptedException e) {
+            // the socket is closed
+        }
+    }
+
+    /**
+     * Parse a queued datagram and notify the listener
+     */
+    private void process(Datagram datagram) {
+        ByteBuffer buffer = datagram.buffer;
+        try {
+            Logger logger = Logger.getLogger(TAG);
+            if (logger.isLoggable(Level.FINEST)) {
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.duplicate().get(bytes);
+                logger.log(Level.FINEST, "Received UDP packet : {0}", new String(bytes, SSDPMessage.CHARSET).replace("\r", ""));
+            }
+            SSDPMessage ssdpResponse = parser.parse(buffer);
+            if (ssdpResponse == null) {
+                return;
+            }
+            List<SSDPMessage> result = readResponses;
+            if (result != null) {
+                synchronized (result) {
+                    result.add(ssdpResponse);
+                }
+            }
+            Listener responseListener = listener;
+            if (responseListener != null) {
                 responseListener.onResponse(ssdpResponse);
-            } catch (ParseException e) {
-                Logger.getLogger(TAG).log(Level.WARNING, "ignoring malformed payload", e);
-            } catch (InterruptedIOException e) {
-                //Catching this exception to stay in the loop after a receive timeout
-                Logger.getLogger(TAG).log(Level.FINEST, "socket receive timeout");
             }
-        } while (endTime - System.currentTimeMillis() > 0);
+        } catch (ParseException e) {
+            datagram.interfaceChannel.stats.mDropped.incrementAndGet();
+            Logger.getLogger(TAG).log(Level.WARNING, "ignoring malformed payload from " + datagram.source, e);
+        } catch (RuntimeException e) {
+            // the dispatch thread must survive a failing listener
+            Logger.getLogger(TAG).log(Level.WARNING, "response listener failed", e);
+        }
+    }
+
+    private List<NetworkInterface> getNetworkInterfaces() throws SocketException {
+        List<NetworkInterface> result = new ArrayList<>();
+        Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+        if (interfaces == null) {
+            return result;
+        }
+        for (NetworkInterface networkInterface : Collections.list(interfaces)) {
+            if (acceptInterface(networkInterface)) {
+                result.add(networkInterface);
+            }
+        }
         return result;
     }
+
+    private DatagramChannel openChannel() throws IOException {
+        DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        if (receiveBufferSize > 0) {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+        }
+        channel.configureBlocking(false);
+        return channel;
+    }
+
+    private MulticastSocket openSocket(InetSocketAddress address) throws IOException {
+        MulticastSocket socket = new MulticastSocket(address);
+        if (receiveBufferSize > 0) {
+            socket.setReceiveBufferSize(receiveBufferSize);
+        }
+        return socket;
+    }
+
+    private void register(DatagramChannel channel, String name, boolean groupMember) throws ClosedChannelException {
+        InterfaceChannel interfaceChannel = new InterfaceChannel(channel, null, name, groupMember);
+        channels.add(interfaceChannel);
+        channel.register(selector, SelectionKey.OP_READ, interfaceChannel);
+    }
+
+    private static InetAddress getIPv4Address(NetworkInterface networkInterface) {
+        for (InetAddress address : Collections.list(networkInterface.getInetAddresses())) {
+            if (address instanceof Inet4Address) {
+                return address;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isChannelMulticastSupported() {
+        try {
+            Class.forName("java.nio.channels.MulticastChannel");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
 }
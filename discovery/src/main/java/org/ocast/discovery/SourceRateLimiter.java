@@ -0,0 +1,86 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+import java.net.InetAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Limits the rate of datagrams accepted from each source address with a token bucket.
+ * Every source may send a burst of datagrams, then is limited to a steady rate. Only the most
+ * recently seen sources are tracked, so that a flood of spoofed addresses does not grow the table.
+ * A SourceRateLimiter is not thread-safe.
+ */
+class SourceRateLimiter {
+    private static final int MAX_SOURCES = 256;
+
+    private final double rate;
+    private final int burst;
+    private final Map<InetAddress, Bucket> buckets = new LinkedHashMap<InetAddress, Bucket>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<InetAddress, Bucket> eldest) {
+            return size() > MAX_SOURCES;
+        }
+    };
+
+    private static class Bucket {
+        double tokens;
+        long last;
+
+        Bucket(double tokens, long last) {
+            this.tokens = tokens;
+            this.last = last;
+        }
+    }
+
+    /**
+     * @param rate the steady number of datagrams accepted per second from a source
+     * @param burst the number of datagrams a source may send at once
+     */
+    SourceRateLimiter(int rate, int burst) {
+        if (rate <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("invalid rate limit");
+        }
+        this.rate = rate / 1000.0;
+        this.burst = burst;
+    }
+
+    /**
+     * Take a token for a datagram
+     * @param source the source address of the datagram
+     * @param now the current time (milliseconds)
+     * @return true if the datagram is accepted, false if the source exceeded its rate
+     */
+    boolean tryAcquire(InetAddress source, long now) {
+        Bucket bucket = buckets.get(source);
+        if (bucket == null) {
+            bucket = new Bucket(burst, now);
+            buckets.put(source, bucket);
+        } else {
+            bucket.tokens = Math.min(burst, bucket.tokens + (now - bucket.last) * rate);
+            bucket.last = now;
+        }
+        if (bucket.tokens < 1) {
+            return false;
+        }
+        bucket.tokens--;
+        return true;
+    }
+}
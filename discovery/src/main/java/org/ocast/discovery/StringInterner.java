@@ -0,0 +1,62 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Shares a single instance of the strings that repeat across devices, such as manufacturers and
+ * model names. An instance is released once no device refers to it anymore.
+ */
+final class StringInterner {
+    private static final Map<String, WeakReference<String>> strings = new WeakHashMap<>();
+
+    private StringInterner() {
+    }
+
+    /**
+     * @param value a string, may be null
+     * @return the shared instance equal to the string
+     */
+    static String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        synchronized (strings) {
+            WeakReference<String> reference = strings.get(value);
+            String shared = reference == null ? null : reference.get();
+            if (shared == null) {
+                strings.put(value, new WeakReference<>(value));
+                shared = value;
+            }
+            return shared;
+        }
+    }
+
+    /**
+     * @return the number of shared strings
+     */
+    static int size() {
+        synchronized (strings) {
+            return strings.size();
+        }
+    }
+}
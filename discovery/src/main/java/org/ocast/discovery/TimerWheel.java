@@ -0,0 +1,203 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A hashed timer wheel tracking one deadline per key.
+ * Deadlines are hashed into a fixed number of buckets, one per tick, so that advancing the wheel
+ * only visits the buckets of the elapsed ticks instead of every key. Scheduling a key again
+ * replaces its previous deadline. A key scheduled with a lifetime can be renewed later on.
+ * A TimerWheel is not thread-safe.
+ * @param <K> the type of the keys
+ */
+class TimerWheel<K> {
+    private final long tickDuration;
+    private final int mask;
+    private final List<Set<Timeout<K>>> buckets;
+    private final Map<K, Timeout<K>> timeouts = new HashMap<>();
+    // the tick of the latest advance
+    private long currentTick;
+
+    private static class Timeout<K> {
+        final K key;
+        final long deadline;
+        // 0 if the key is not renewable
+        final long lifetime;
+        final int bucket;
+
+        Timeout(K key, long deadline, long lifetime, int bucket) {
+            this.key = key;
+            this.deadline = deadline;
+            this.lifetime = lifetime;
+            this.bucket = bucket;
+        }
+    }
+
+    /**
+     * @param tickDuration the resolution of the wheel (milliseconds)
+     * @param wheelSize the number of buckets, rounded up to a power of 2
+     * @param now the current time (milliseconds)
+     */
+    TimerWheel(long tickDuration, int wheelSize, long now) {
+        if (tickDuration <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("invalid timer wheel");
+        }
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize) {
+            size <<= 1;
+        }
+        this.tickDuration = tickDuration;
+        this.mask = size - 1;
+        this.buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            buckets.add(new HashSet<>());
+        }
+        this.currentTick = now / tickDuration;
+    }
+
+    /**
+     * Set the deadline of a key, replacing any previous one
+     * @param key the key to expire
+     * @param deadline the time at which the key expires (milliseconds)
+     */
+    void schedule(K key, long deadline) {
+        add(key, deadline, 0);
+    }
+
+    /**
+     * Set the deadline of a key from its lifetime, replacing any previous one
+     * @param key the key to expire
+     * @param now the current time (milliseconds)
+     * @param lifetime the duration after which the key expires, kept to renew it (milliseconds)
+     */
+    void schedule(K key, long now, long lifetime) {
+        add(key, now + lifetime, lifetime);
+    }
+
+    /**
+     * Push back the deadline of a key by its lifetime
+     * @param key the key to renew
+     * @param now the current time (milliseconds)
+     * @return true if the key was scheduled with a lifetime
+     */
+    boolean renew(K key, long now) {
+        Timeout<K> timeout = timeouts.get(key);
+        if (timeout == null || timeout.lifetime <= 0) {
+            return false;
+        }
+        add(key, now + timeout.lifetime, timeout.lifetime);
+        return true;
+    }
+
+    /**
+     * Push back the deadline of every key scheduled with a lifetime
+     * @param now the current time (milliseconds)
+     */
+    void renewAll(long now) {
+        for (K key : new ArrayList<>(timeouts.keySet())) {
+            renew(key, now);
+        }
+    }
+
+    private void add(K key, long deadline, long lifetime) {
+        cancel(key);
+        // a key is never hashed on an elapsed tick
+        long tick = Math.max(deadline / tickDuration, currentTick);
+        Timeout<K> timeout = new Timeout<>(key, deadline, lifetime, (int) (tick & mask));
+        buckets.get(timeout.bucket).add(timeout);
+        timeouts.put(key, timeout);
+    }
+
+    /**
+     * Remove the deadline of a key
+     * @param key the key to remove
+     * @return true if the key was scheduled
+     */
+    boolean cancel(K key) {
+        Timeout<K> timeout = timeouts.remove(key);
+        if (timeout == null) {
+            return false;
+        }
+        buckets.get(timeout.bucket).remove(timeout);
+        return true;
+    }
+
+    /**
+     * Check whether a key is scheduled
+     * @param key the key
+     * @return true if the key has a pending deadline
+     */
+    boolean contains(K key) {
+        return timeouts.containsKey(key);
+    }
+
+    /**
+     * Move the wheel up to the current time
+     * @param now the current time (milliseconds)
+     * @return the keys whose deadline has been reached, they are no longer scheduled
+     */
+    List<K> advance(long now) {
+        List<K> expired = new ArrayList<>();
+        long nowTick = now / tickDuration;
+        // the bucket of the current tick is visited again as it may hold later deadlines of that tick
+        long ticks = Math.min(nowTick - currentTick + 1, buckets.size());
+        for (long i = 0; i < ticks; i++) {
+            Set<Timeout<K>> bucket = buckets.get((int) ((currentTick + i) & mask));
+            for (Iterator<Timeout<K>> iterator = bucket.iterator(); iterator.hasNext(); ) {
+                Timeout<K> timeout = iterator.next();
+                // deadlines beyond one rotation stay in the bucket until a later round
+                if (timeout.deadline <= now) {
+                    iterator.remove();
+                    timeouts.remove(timeout.key);
+                    expired.add(timeout.key);
+                }
+            }
+        }
+        currentTick = Math.max(currentTick, nowTick);
+        return expired;
+    }
+
+    /**
+     * Remove every key
+     * @return the keys that were scheduled
+     */
+    List<K> clear() {
+        List<K> keys = new ArrayList<>(timeouts.keySet());
+        timeouts.clear();
+        for (Set<Timeout<K>> bucket : buckets) {
+            bucket.clear();
+        }
+        return keys;
+    }
+
+    /**
+     * @return the number of scheduled keys
+     */
+    int size() {
+        return timeouts.size();
+    }
+}
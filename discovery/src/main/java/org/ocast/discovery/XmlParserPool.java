@@ -0,0 +1,75 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Provides namespace aware pull parsers to be reused from one document to the other.
+ * The factory is looked up once, and a few released parsers are kept for later documents.
+ * A parser is used by one thread at a time, between {@link #acquire()} and {@link #release(XmlPullParser)}.
+ */
+class XmlParserPool {
+    private static final int MAX_IDLE_PARSERS = 4;
+
+    private static XmlPullParserFactory factory;
+    private static final Deque<XmlPullParser> idleParsers = new ArrayDeque<>();
+
+    private XmlParserPool() {
+    }
+
+    /**
+     * Get a parser, reusing a released one if any
+     * @return a namespace aware parser without input
+     * @throws XmlPullParserException if no parser implementation is available
+     */
+    static synchronized XmlPullParser acquire() throws XmlPullParserException {
+        XmlPullParser parser = idleParsers.poll();
+        if (parser != null) {
+            return parser;
+        }
+        if (factory == null) {
+            XmlPullParserFactory newFactory = XmlPullParserFactory.newInstance();
+            newFactory.setNamespaceAware(true);
+            factory = newFactory;
+        }
+        return factory.newPullParser();
+    }
+
+    /**
+     * Give a parser back once the document has been parsed
+     * @param parser a parser obtained from {@link #acquire()}
+     */
+    static synchronized void release(XmlPullParser parser) {
+        try {
+            // drop the reference to the document
+            parser.setInput(null);
+        } catch (XmlPullParserException e) {
+            return;
+        }
+        if (idleParsers.size() < MAX_IDLE_PARSERS) {
+            idleParsers.push(parser);
+        }
+    }
+}
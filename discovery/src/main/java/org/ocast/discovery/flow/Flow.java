@@ -0,0 +1,88 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery.flow;
+
+/**
+ * Interfaces of the reactive streams, mirroring {@code java.util.concurrent.Flow} which is not
+ * available on every platform supported by the SDK.
+ * A Subscriber receives items once it has requested them, so that a slow consumer never has to
+ * buffer more than it asked for.
+ */
+public final class Flow {
+
+    private Flow() {
+    }
+
+    /**
+     * A producer of items received by Subscribers
+     * @param <T> the type of the items
+     */
+    public interface Publisher<T> {
+        /**
+         * Add a Subscriber, which is then given its Subscription through {@link Subscriber#onSubscribe(Subscription)}
+         * @param subscriber the subscriber
+         */
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    /**
+     * A receiver of items
+     * @param <T> the type of the items
+     */
+    public interface Subscriber<T> {
+        /**
+         * Called before any other method
+         * @param subscription the subscription to request items from
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * Called with an item that has been requested
+         * @param item the item
+         */
+        void onNext(T item);
+
+        /**
+         * Called when the subscription fails, no other method is called afterwards
+         * @param throwable the failure
+         */
+        void onError(Throwable throwable);
+
+        /**
+         * Called when no more item will be published
+         */
+        void onComplete();
+    }
+
+    /**
+     * The link between a Publisher and a Subscriber
+     */
+    public interface Subscription {
+        /**
+         * Request items
+         * @param n the number of additional items the subscriber is ready to receive, must be positive
+         */
+        void request(long n);
+
+        /**
+         * Stop receiving items
+         */
+        void cancel();
+    }
+}
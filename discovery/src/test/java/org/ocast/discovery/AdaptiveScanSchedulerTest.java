@@ -0,0 +1,96 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class AdaptiveScanSchedulerTest {
+
+    private static final Set<URI> DEVICES = Collections.singleton(URI.create("http://127.0.0.1:8089/dd.xml"));
+
+    @Test
+    public void backOffWhileStable() throws Exception {
+        AdaptiveScanScheduler scheduler = new AdaptiveScanScheduler(new AdaptiveScanPolicy(5, 30, 1, 5, 20));
+        assertThat(scheduler.getInterval(), is(equalTo(5)));
+        assertThat(scheduler.getMaxWaitTime(), is(equalTo(1)));
+
+        scheduler.onScanCompleted(DEVICES, 1);
+        assertThat(scheduler.getInterval(), is(equalTo(5)));
+        scheduler.onScanCompleted(DEVICES, 1);
+        assertThat(scheduler.getInterval(), is(equalTo(10)));
+        scheduler.onScanCompleted(DEVICES, 1);
+        assertThat(scheduler.getInterval(), is(equalTo(20)));
+        scheduler.onScanCompleted(DEVICES, 1);
+        assertThat(scheduler.getInterval(), is(equalTo(30)));
+        scheduler.onScanCompleted(DEVICES, 1);
+        assertThat(scheduler.getInterval(), is(equalTo(30)));
+    }
+
+    @Test
+    public void burstOnChange() throws Exception {
+        AdaptiveScanScheduler scheduler = new AdaptiveScanScheduler(new AdaptiveScanPolicy(5, 30, 1, 5, 20));
+        scheduler.onScanCompleted(DEVICES, 1);
+        scheduler.onScanCompleted(DEVICES, 1);
+        assertThat(scheduler.getInterval(), is(equalTo(10)));
+
+        Set<URI> more = new HashSet<>(DEVICES);
+        more.add(URI.create("http://127.0.0.2:8089/dd.xml"));
+        scheduler.onScanCompleted(more, 2);
+        assertThat(scheduler.getInterval(), is(equalTo(5)));
+
+        scheduler.onScanCompleted(more, 2);
+        scheduler.reset();
+        assertThat(scheduler.getInterval(), is(equalTo(5)));
+    }
+
+    @Test
+    public void burstOnRemoval() throws Exception {
+        AdaptiveScanScheduler scheduler = new AdaptiveScanScheduler(new AdaptiveScanPolicy(5, 30, 1, 5, 20));
+        scheduler.onScanCompleted(DEVICES, 1);
+        scheduler.onScanCompleted(DEVICES, 0);
+        assertThat(scheduler.getInterval(), is(equalTo(10)));
+
+        // the location expired
+        scheduler.onScanCompleted(Collections.emptySet(), 0);
+        assertThat(scheduler.getInterval(), is(equalTo(5)));
+    }
+
+    @Test
+    public void widenMaxWaitTimeWhenCrowded() throws Exception {
+        AdaptiveScanScheduler scheduler = new AdaptiveScanScheduler(new AdaptiveScanPolicy(2, 30, 1, 3, 20));
+        scheduler.onScanCompleted(DEVICES, 50);
+        assertThat(scheduler.getMaxWaitTime(), is(equalTo(2)));
+        assertThat(scheduler.getInterval(), is(equalTo(3)));
+        scheduler.onScanCompleted(DEVICES, 50);
+        scheduler.onScanCompleted(DEVICES, 100);
+        assertThat(scheduler.getMaxWaitTime(), is(equalTo(3)));
+
+        scheduler.onScanCompleted(DEVICES, 1);
+        assertThat(scheduler.getMaxWaitTime(), is(equalTo(2)));
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+import java.net.URI;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+public class DescriptionFetchPipelineTest {
+
+    private static final URI LOCATION_1 = URI.create("http://127.0.0.1:8089/dd.xml");
+    private static final URI LOCATION_2 = URI.create("http://127.0.0.2:8089/dd.xml");
+    private static final URI LOCATION_3 = URI.create("http://127.0.0.3:8089/dd.xml");
+
+    private DeviceDescriptionRequest request;
+    private DeviceDescriptionRequest failFastRequest;
+    private DeviceDescriptionRequest.RevalidationCallbacks callbacks;
+
+    @Before
+    public void setUp() {
+        request = mock(DeviceDescriptionRequest.class);
+        failFastRequest = mock(DeviceDescriptionRequest.class);
+        callbacks = mock(DeviceDescriptionRequest.RevalidationCallbacks.class);
+    }
+
+    private DeviceDescriptionRequest.RevalidationCallbacks started(DeviceDescriptionRequest r, URI location) {
+        ArgumentCaptor<DeviceDescriptionRequest.RevalidationCallbacks> captor = ArgumentCaptor.forClass(DeviceDescriptionRequest.RevalidationCallbacks.class);
+        verify(r).revalidateDeviceDescription(eq(location), isNull(), captor.capture());
+        return captor.getValue();
+    }
+
+    @Test
+    public void boundedByPriority() throws Exception {
+        DescriptionFetchPipeline pipeline = new DescriptionFetchPipeline(request, failFastRequest, 1);
+        pipeline.submit(LOCATION_1, null, false, callbacks);
+        pipeline.submit(LOCATION_2, null, false, callbacks);
+        pipeline.submit(LOCATION_3, null, true, callbacks);
+        verify(request, never()).revalidateDeviceDescription(eq(LOCATION_2), any(), any());
+        assertThat(pipeline.getStats().getQueueDepth(), is(equalTo(2)));
+        assertThat(pipeline.getStats().getInFlight(), is(equalTo(1)));
+
+        started(request, LOCATION_1).onNotModified(LOCATION_1);
+        verify(callbacks).onNotModified(LOCATION_1);
+        // the advertised location goes first
+        started(request, LOCATION_3).onError(LOCATION_3);
+        started(request, LOCATION_2).onError(LOCATION_2);
+        assertThat(pipeline.getStats().getCompletedCount(), is(equalTo(3L)));
+        assertThat(pipeline.getStats().getFailedCount(), is(equalTo(2L)));
+        assertThat(pipeline.getStats().getQueueDepth(), is(equalTo(0)));
+    }
+
+    @Test
+    public void failFastAfterFailure() throws Exception {
+        DescriptionFetchPipeline pipeline = new DescriptionFetchPipeline(request, failFastRequest, 2);
+        pipeline.submit(LOCATION_1, null, true, callbacks);
+        started(request, LOCATION_1).onError(LOCATION_1);
+        verify(callbacks).onError(LOCATION_1);
+
+        pipeline.submit(LOCATION_1, null, true, callbacks);
+        started(failFastRequest, LOCATION_1).onDeviceDescription(LOCATION_1, null, null);
+
+        // back to normal once it succeeded, and ahead of unknown locations
+        pipeline.setMaxConcurrent(1);
+        pipeline.submit(LOCATION_2, null, true, callbacks);
+        pipeline.submit(LOCATION_3, null, true, callbacks);
+        pipeline.submit(LOCATION_1, null, true, callbacks);
+        started(request, LOCATION_2).onNotModified(LOCATION_2);
+        InOrder order = inOrder(request);
+        order.verify(request).revalidateDeviceDescription(eq(LOCATION_2), isNull(), any());
+        order.verify(request).revalidateDeviceDescription(eq(LOCATION_1), isNull(), any());
+        verify(request, never()).revalidateDeviceDescription(eq(LOCATION_3), any(), any());
+    }
+
+    @Test
+    public void rejectNonHttpLocation() throws Exception {
+        DescriptionFetchPipeline pipeline = new DescriptionFetchPipeline(request, failFastRequest, 1);
+        URI ftpLocation = URI.create("ftp://127.0.0.1/dd.xml");
+        pipeline.submit(ftpLocation, null, true, callbacks);
+        verify(callbacks).onError(ftpLocation);
+        verify(request, never()).revalidateDeviceDescription(eq(ftpLocation), any(), any());
+
+        pipeline.submit(LOCATION_1, null, true, callbacks);
+        started(request, LOCATION_1);
+        assertThat(pipeline.getStats().getInFlight(), is(equalTo(1)));
+    }
+
+    @Test
+    public void releaseSlotWhenStartFails() throws Exception {
+        DescriptionFetchPipeline pipeline = new DescriptionFetchPipeline(request, failFastRequest, 1);
+        doThrow(new IllegalArgumentException("unexpected url")).when(request).revalidateDeviceDescription(eq(LOCATION_1), any(), any());
+        pipeline.submit(LOCATION_1, null, true, callbacks);
+        verify(callbacks).onError(LOCATION_1);
+        assertThat(pipeline.getStats().getInFlight(), is(equalTo(0)));
+        assertThat(pipeline.getStats().getFailedCount(), is(equalTo(1L)));
+
+        pipeline.submit(LOCATION_2, null, true, callbacks);
+        started(request, LOCATION_2);
+    }
+
+    @Test
+    public void releaseSlotOfMalformedDescription() throws Exception {
+        String description = new FileReader().readFile("dd1_WithURLBase.xml");
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setBody(description.replaceAll("<UDN>[^<]*</UDN>", "<UDN>uuid</UDN>")));
+        server.enqueue(new MockResponse().setBody("<root><device><URLBase>http://[</URLBase></device></root>"));
+        server.enqueue(new MockResponse().setBody(description));
+        server.start();
+        try {
+            DeviceDescriptionRequest r = new DeviceDescriptionRequest(new OkHttpClient());
+            DescriptionFetchPipeline pipeline = new DescriptionFetchPipeline(r, r, 1);
+            URI malformed = server.url("/malformed.xml").uri();
+            URI invalid = server.url("/invalid.xml").uri();
+            URI valid = server.url("/dd.xml").uri();
+            pipeline.submit(malformed, null, true, callbacks);
+            pipeline.submit(invalid, null, true, callbacks);
+            pipeline.submit(valid, null, true, callbacks);
+            verify(callbacks, timeout(5000)).onDeviceDescription(eq(malformed), any(), any());
+            verify(callbacks, timeout(5000)).onError(invalid);
+            verify(callbacks, timeout(5000)).onDeviceDescription(eq(valid), any(), any());
+            assertThat(pipeline.getStats().getInFlight(), is(equalTo(0)));
+        } finally {
+            server.shutdown();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.ocast.discovery;
+
+import org.junit.Test;
+
+import java.net.URI;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class DeviceDescriptionCacheTest {
+    private static final URI LOCATION = URI.create("http://127.0.0.1:8089/dd.xml");
+    private static final DeviceDescriptionRequest.Validators VALIDATORS = new DeviceDescriptionRequest.Validators("\"v1\"", null);
+
+    @Test
+    public void freshUntilMaxAge() throws Exception {
+        DeviceDescriptionCache cache = new DeviceDescriptionCache();
+        DialDevice device = mock(DialDevice.class);
+        cache.advertise(LOCATION, "uuid1", 1000);
+        assertThat(cache.getFresh(LOCATION, 0), is(nullValue()));
+        cache.store(LOCATION, device, VALIDATORS, 0);
+        assertThat(cache.getFresh(LOCATION, 999), is(sameInstance(device)));
+        assertThat(cache.getFresh(LOCATION, 1000), is(nullValue()));
+        assertThat(cache.getValidators(LOCATION).getETag(), is(equalTo("\"v1\"")));
+        assertThat(cache.refresh(LOCATION, 1000), is(sameInstance(device)));
+        assertThat(cache.getFresh(LOCATION, 1500), is(sameInstance(device)));
+    }
+
+    @Test
+    public void invalidateKeepsValidators() throws Exception {
+        DeviceDescriptionCache cache = new DeviceDescriptionCache();
+        cache.advertise(LOCATION, "uuid1", 1000);
+        cache.store(LOCATION, mock(DialDevice.class), VALIDATORS, 0);
+        cache.invalidate(LOCATION);
+        assertThat(cache.getFresh(LOCATION, 1), is(nullValue()));
+        assertThat(cache.getValidators(LOCATION), is(sameInstance(VALIDATORS)));
+    }
+
+    @Test
+    public void dropOnOtherDevice() throws Exception {
+        DeviceDescriptionCache cache = new DeviceDescriptionCache();
+        cache.advertise(LOCATION, "uuid1", 1000);
+        cache.store(LOCATION, mock(DialDevice.class), VALIDATORS, 0);
+        cache.advertise(LOCATION, "uuid2", 1000);
+        assertThat(cache.getFresh(LOCATION, 1), is(nullValue()));
+        assertThat(cache.getValidators(LOCATION), is(nullValue()));
+        assertThat(cache.refresh(LOCATION, 1), is(nullValue()));
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() throws Exception {
+        DeviceDescriptionCache cache = new DeviceDescriptionCache();
+        cache.setCapacity(2);
+        URI other = URI.create("http://127.0.0.1:8089/dd2.xml");
+        URI third = URI.create("http://127.0.0.1:8089/dd3.xml");
+        cache.advertise(LOCATION, "uuid1", 1000);
+        cache.advertise(other, "uuid2", 1000);
+        cache.getFresh(LOCATION, 0);
+        cache.advertise(third, "uuid3", 1000);
+        assertThat(cache.size(), is(equalTo(2)));
+        assertThat(cache.getEvictionCount(), is(equalTo(1L)));
+        cache.store(other, mock(DialDevice.class), VALIDATORS, 0);
+        assertThat(cache.getValidators(LOCATION), is(nullValue()));
+        assertThat(cache.getEvictionCount(), is(equalTo(2L)));
+    }
+}
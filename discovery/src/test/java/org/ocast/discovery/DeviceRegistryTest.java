@@ -0,0 +1,137 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.ocast.discovery;
+
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class DeviceRegistryTest {
+    private static final URI LOCATION1 = URI.create("http://192.168.1.10:8008/dd.xml");
+    private static final URI LOCATION2 = URI.create("http://10.0.0.10:8008/dd.xml");
+    private static final URI DIAL_URL = URI.create("http://192.168.1.10:8008/apps");
+
+    private static DialDevice device(String name, URI location) {
+        return new DialDevice("uuid1", name, "Orange", "TV", DIAL_URL, location);
+    }
+
+    @Test
+    public void addUpdateAndRemove() throws Exception {
+        DeviceRegistry registry = new DeviceRegistry();
+        assertThat(registry.advertise(LOCATION1, "uuid1"), is(nullValue()));
+        assertThat(registry.update(LOCATION1, device("tv", LOCATION1)), is(equalTo(DeviceRegistry.Update.ADDED)));
+        assertThat(registry.update(LOCATION1, device("tv", LOCATION1)), is(equalTo(DeviceRegistry.Update.UNCHANGED)));
+        assertThat(registry.update(LOCATION1, device("living room", LOCATION1)), is(equalTo(DeviceRegistry.Update.CHANGED)));
+        assertThat(registry.getByLocation(LOCATION1).getFriendlyName(), is(equalTo("living room")));
+        assertThat(registry.removeLocation(LOCATION1), is(equalTo(LOCATION1)));
+        assertThat(registry.getByUuid("uuid1"), is(nullValue()));
+        assertThat(registry.getDevices().isEmpty(), is(true));
+    }
+
+    @Test
+    public void keepDeviceReachableAtSeveralLocations() throws Exception {
+        DeviceRegistry registry = new DeviceRegistry();
+        registry.advertise(LOCATION1, "uuid1");
+        registry.update(LOCATION1, device("tv", LOCATION1));
+        registry.advertise(LOCATION2, "uuid1");
+        assertThat(registry.isSecondaryLocation(LOCATION1), is(false));
+        assertThat(registry.isSecondaryLocation(LOCATION2), is(true));
+        assertThat(registry.update(LOCATION2, device("renamed", LOCATION2)), is(equalTo(DeviceRegistry.Update.CHANGED)));
+        assertThat(registry.getByUuid("uuid1").getLocation(), is(equalTo(LOCATION1)));
+        assertThat(registry.removeLocation(LOCATION1), is(nullValue()));
+        assertThat(registry.getByLocation(LOCATION2).getFriendlyName(), is(equalTo("renamed")));
+        assertThat(registry.removeLocation(LOCATION2), is(equalTo(LOCATION2)));
+        assertThat(registry.getDevices().isEmpty(), is(true));
+    }
+
+    @Test
+    public void promoteLocationWhenPrimaryIsRemoved() throws Exception {
+        DeviceRegistry registry = new DeviceRegistry();
+        registry.advertise(LOCATION1, "uuid1");
+        registry.update(LOCATION1, device("tv", LOCATION1));
+        registry.advertise(LOCATION2, "uuid1");
+        long version = registry.getSnapshot().getVersion();
+        // the device got a new address
+        assertThat(registry.removeLocation(LOCATION1), is(nullValue()));
+        DialDevice device = registry.getByUuid("uuid1");
+        assertThat(device.getLocation(), is(equalTo(LOCATION2)));
+        assertThat(device.getFriendlyName(), is(equalTo("tv")));
+        assertThat(registry.isSecondaryLocation(LOCATION2), is(false));
+        assertThat(registry.getDevices().get(0).getLocation(), is(equalTo(LOCATION2)));
+        assertThat(registry.getSnapshot().changesSince(version).getUpdated(), is(equalTo(Collections.singletonList(device))));
+    }
+
+    @Test
+    public void removeDeviceWithAllLocations() throws Exception {
+        DeviceRegistry registry = new DeviceRegistry();
+        registry.advertise(LOCATION1, "uuid1");
+        registry.advertise(LOCATION2, "uuid1");
+        registry.update(LOCATION1, device("tv", LOCATION1));
+        DeviceRegistry.Removal removal = registry.removeDevice("uuid1");
+        assertThat(removal.locations.size(), is(equalTo(2)));
+        assertThat(removal.getLostLocations(), is(equalTo(Collections.singletonList(LOCATION1))));
+        assertThat(registry.getByLocation(LOCATION2), is(nullValue()));
+        assertThat(registry.removeDevice("uuid1"), is(nullValue()));
+    }
+
+    @Test
+    public void replaceDeviceAdvertisedAtSameLocation() throws Exception {
+        DeviceRegistry registry = new DeviceRegistry();
+        registry.advertise(LOCATION1, "uuid1");
+        registry.update(LOCATION1, device("tv", LOCATION1));
+        assertThat(registry.advertise(LOCATION1, "uuid2"), is(equalTo(LOCATION1)));
+        assertThat(registry.getByUuid("uuid1"), is(nullValue()));
+        assertThat(registry.getByLocation(LOCATION1), is(nullValue()));
+        assertThat(registry.clear(), is(equalTo(Collections.singletonList(LOCATION1))));
+    }
+
+    @Test
+    public void overflowLeastRecentlyAdvertised() throws Exception {
+        DeviceRegistry registry = new DeviceRegistry();
+        registry.setCapacity(1);
+        registry.advertise(LOCATION1, "uuid1");
+        assertThat(registry.getOverflow(), is(nullValue()));
+        registry.advertise(LOCATION2, "uuid2");
+        registry.advertise(LOCATION1, "uuid1");
+        assertThat(registry.getOverflow(), is(equalTo(LOCATION2)));
+        registry.removeLocation(LOCATION2);
+        assertThat(registry.getOverflow(), is(nullValue()));
+        assertThat(registry.getLocationCount(), is(equalTo(1)));
+    }
+
+    @Test
+    public void shareLocationInstances() throws Exception {
+        DeviceRegistry registry = new DeviceRegistry();
+        registry.advertise(LOCATION1, "uuid1");
+        URI copy = URI.create(LOCATION1.toString());
+        assertThat(registry.canonical(copy), is(sameInstance(LOCATION1)));
+        assertThat(registry.canonical(LOCATION2), is(sameInstance(LOCATION2)));
+        long footprint = registry.estimateFootprint();
+        registry.update(LOCATION1, device("tv", LOCATION1));
+        assertThat(registry.estimateFootprint() > footprint, is(true));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class DeviceSnapshotTest {
+    private static final URI DIAL_URL = URI.create("http://192.168.1.10:8008/apps");
+
+    private static DialDevice device(String uuid, String name) {
+        return new DialDevice(uuid, name, "Orange", "TV", DIAL_URL, URI.create("http://192.168.1.10:8008/" + uuid + ".xml"));
+    }
+
+    private static DialDevice resolve(DeviceRegistry registry, String uuid, String name) {
+        DialDevice device = device(uuid, name);
+        registry.advertise(device.getLocation(), uuid);
+        registry.update(device.getLocation(), device);
+        return device;
+    }
+
+    @Test
+    public void publishSnapshotOnChange() throws Exception {
+        DeviceRegistry registry = new DeviceRegistry();
+        DeviceSnapshot empty = registry.getSnapshot();
+        assertThat(empty.getVersion(), is(equalTo(0L)));
+        resolve(registry, "uuid1", "tv");
+        DeviceSnapshot first = registry.getSnapshot();
+        assertThat(first.getVersion(), is(equalTo(1L)));
+        assertThat(first.getDevice("uuid1").getFriendlyName(), is(equalTo("tv")));
+        // an unchanged description does not publish a new snapshot
+        registry.update(device("uuid1", "tv").getLocation(), device("uuid1", "tv"));
+        assertThat(registry.getSnapshot(), is(sameInstance(first)));
+        assertThat(registry.getDevices(), is(sameInstance(first.getDevices())));
+        registry.removeDevice("uuid1");
+        assertThat(registry.getSnapshot().getDevices().isEmpty(), is(true));
+        // earlier snapshots are never modified
+        assertThat(first.getDevices().size(), is(equalTo(1)));
+        assertThat(empty.getDevices().isEmpty(), is(true));
+    }
+
+    @Test
+    public void changesSinceVersion() throws Exception {
+        DeviceRegistry registry = new DeviceRegistry();
+        resolve(registry, "uuid1", "tv");
+        resolve(registry, "uuid2", "stick");
+        long version = registry.getSnapshot().getVersion();
+        resolve(registry, "uuid1", "living room");
+        resolve(registry, "uuid3", "box");
+        registry.removeDevice("uuid2");
+        DeviceSnapshot.Delta delta = registry.getSnapshot().changesSince(version);
+        assertThat(delta.isReset(), is(false));
+        assertThat(delta.getFromVersion(), is(equalTo(version)));
+        assertThat(delta.getToVersion(), is(equalTo(registry.getSnapshot().getVersion())));
+        List<DialDevice> updated = delta.getUpdated();
+        assertThat(updated.size(), is(equalTo(2)));
+        assertThat(updated.get(0).getFriendlyName(), is(equalTo("living room")));
+        assertThat(updated.get(1).getUuid(), is(equalTo("uuid3")));
+        assertThat(delta.getRemoved(), is(equalTo(Collections.singletonList("uuid2"))));
+        assertThat(registry.getSnapshot().changesSince(registry.getSnapshot().getVersion()).isEmpty(), is(true));
+    }
+
+    @Test
+    public void resetWhenHistoryIsLost() throws Exception {
+        DeviceRegistry registry = new DeviceRegistry();
+        for (int i = 0; i <= DeviceSnapshot.HISTORY_SIZE; i++) {
+            resolve(registry, "uuid" + i, "tv");
+        }
+        DeviceSnapshot snapshot = registry.getSnapshot();
+        DeviceSnapshot.Delta delta = snapshot.changesSince(0);
+        assertThat(delta.isReset(), is(true));
+        assertThat(delta.getUpdated().size(), is(equalTo(DeviceSnapshot.HISTORY_SIZE + 1)));
+        assertThat(snapshot.changesSince(1).isReset(), is(false));
+        assertThat(snapshot.changesSince(1).getUpdated().size(), is(equalTo(DeviceSnapshot.HISTORY_SIZE)));
+        // a version from an other registry
+        assertThat(snapshot.changesSince(snapshot.getVersion() + 1).isReset(), is(true));
+    }
+}
@@ -33,6 +33,7 @@ import java.util.concurrent.TimeUnit;
 import okhttp3.HttpUrl;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
 
 import static org.junit.Assert.*;
 import static org.hamcrest.CoreMatchers.*;
@@ -59,6 +60,27 @@ public class DialDeviceDescriptionRequestTest {
         }
     }
 
+    public class TestRevalidationCallback extends TestableCallback<DialDevice> implements DeviceDescriptionRequest.RevalidationCallbacks {
+        DeviceDescriptionRequest.Validators validators;
+
+        @Override
+        public void onDeviceDescription(URI location, DialDevice dd, DeviceDescriptionRequest.Validators validators) {
+            this.validators = validators;
+            setResult(dd);
+            countDown();
+        }
+
+        @Override
+        public void onNotModified(URI location) {
+            countDown();
+        }
+
+        @Override
+        public void onError(URI location) {
+            countDown();
+        }
+    }
+
     @BeforeClass
     public static void initLogger() {
         System.setProperty("java.util.logging.config.file", ClassLoader.getSystemResource("logging.properties").getPath());
@@ -153,4 +175,32 @@ public class DialDeviceDescriptionRequestTest {
         verify(callback, times(1)).onError(eq(url.uri()));
     }
 
+    @Test
+    public void revalidateDeviceDescription() throws Exception {
+        String ddXmlContent = new FileReader().readFile("dd1_WithURLBase.xml");
+        server.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .addHeader("ETag", "\"v1\"")
+                .addHeader("Last-Modified", "Mon, 02 Jul 2018 10:00:00 GMT")
+                .setBody(ddXmlContent));
+        server.enqueue(new MockResponse()
+                .setResponseCode(304));
+
+        DeviceDescriptionRequest request = new DeviceDescriptionRequest();
+        URI location = URI.create(server.url("/dd.xml").toString());
+
+        TestRevalidationCallback callback = Mockito.spy(new TestRevalidationCallback());
+        request.revalidateDeviceDescription(location, null, callback);
+        callback.await(5000, TimeUnit.MILLISECONDS);
+        assertThat(callback.validators.getETag(), is(equalTo("\"v1\"")));
+        assertThat(server.takeRequest().getHeader("If-None-Match"), is(nullValue()));
+
+        TestRevalidationCallback revalidation = Mockito.spy(new TestRevalidationCallback());
+        request.revalidateDeviceDescription(location, callback.validators, revalidation);
+        revalidation.await(5000, TimeUnit.MILLISECONDS);
+        verify(revalidation, times(1)).onNotModified(eq(location));
+        RecordedRequest conditional = server.takeRequest();
+        assertThat(conditional.getHeader("If-None-Match"), is(equalTo("\"v1\"")));
+        assertThat(conditional.getHeader("If-Modified-Since"), is(equalTo("Mon, 02 Jul 2018 10:00:00 GMT")));
+    }
 }
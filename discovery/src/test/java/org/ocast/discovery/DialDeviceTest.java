@@ -26,6 +26,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.io.StringReader;
 import java.net.URI;
 import java.text.ParseException;
 
@@ -70,6 +71,16 @@ public class DialDeviceTest {
         DialDevice.fromDeviceDescription(ddXmlContent, null, URI.create("http://127.0.0.1:56790/device-desc.xml"));
     }
 
+    @Test
+    public void fromDeviceDescriptionStopsOnceComplete() throws Exception {
+        String ddXmlContent = new FileReader().readFile("dd1_WithURLBase.xml");
+        // the end of the document is never read
+        String truncated = ddXmlContent.substring(0, ddXmlContent.indexOf("</device>") + "</device>".length()) + "<unterminated";
+        DialDevice dd = DialDevice.fromDeviceDescription(new StringReader(truncated), null, URI.create("http://127.0.0.1:56790/device-desc.xml"));
+        assertThat(dd.getUuid(), is(equalTo("11111111-1111-1111-1111-111111111111")));
+        assertThat(dd.getDialURI().toString(), is(equalTo("http://127.0.0.1:8008/apps")));
+    }
+
     @Test
     public void equals() throws Exception {
         String ddXmlContent1 = new FileReader().readFile("dd_WithoutURLBase.xml");
@@ -79,4 +90,59 @@ public class DialDeviceTest {
         assertThat(dd1, is(not(equalTo(dd2))));
         assertThat(dd1.hashCode(), is(not(equalTo(dd2.hashCode()))));
     }
+
+    @Test
+    public void shareManufacturerAndModel() throws Exception {
+        DialDevice first = new DialDevice("uuid1", "tv", new String("Orange"), new String("TV"), URI.create("http://127.0.0.1:8008/apps"), URI.create("http://127.0.0.1:8008/dd.xml"));
+        DialDevice second = new DialDevice("uuid2", "tv", new String("Orange"), new String("TV"), URI.create("http://127.0.0.1:8008/apps"), URI.create("http://127.0.0.2:8008/dd.xml"));
+        assertThat(second.getManufacturer(), is(sameInstance(first.getManufacturer())));
+        assertThat(second.getModelName(), is(sameInstance(first.getModelName())));
+    }
+
+    @Test
+    public void fromDeviceDescriptionWithIcons() throws Exception {
+        String ddXmlContent = new FileReader().readFile("dd_WithIcons.xml");
+        DialDevice dd = DialDevice.fromDeviceDescription(ddXmlContent, null, URI.create("http://127.0.0.1:56790/device-desc.xml"));
+        assertThat(dd.getIcons().size(), is(equalTo(2)));
+        DeviceIcon icon = dd.getIcons().get(0);
+        assertThat(icon.getMimeType(), is(equalTo("image/png")));
+        assertThat(icon.getWidth(), is(equalTo(48)));
+        assertThat(icon.getHeight(), is(equalTo(48)));
+        assertThat(icon.getDepth(), is(equalTo(24)));
+        assertThat(icon.getUrl(), is(equalTo(URI.create("http://127.0.0.1:56790/icons/icon48.png"))));
+        assertThat(dd.getIcons().get(1).getUrl(), is(equalTo(URI.create("http://127.0.0.1:8080/icon120.png"))));
+    }
+
+    @Test
+    public void capIcons() throws Exception {
+        String ddXmlContent = new FileReader().readFile("dd_WithIcons.xml");
+        String icon = ddXmlContent.substring(ddXmlContent.indexOf("<icon>"), ddXmlContent.indexOf("</icon>") + "</icon>".length());
+        StringBuilder icons = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            icons.append(icon);
+        }
+        String manyIcons = ddXmlContent.replace("<iconList>", "<iconList>" + icons);
+        DialDevice dd = DialDevice.fromDeviceDescription(manyIcons, null, URI.create("http://127.0.0.1:56790/device-desc.xml"));
+        assertThat(dd.getIcons().size(), is(equalTo(DialDevice.MAX_ICONS)));
+    }
+
+    @Test
+    public void fromDeviceDescriptionStopsAfterIcons() throws Exception {
+        String ddXmlContent = new FileReader().readFile("dd_WithIcons.xml");
+        // the services are never read
+        String truncated = ddXmlContent.substring(0, ddXmlContent.indexOf("<serviceList>") + "<serviceList>".length()) + "<unterminated";
+        DialDevice dd = DialDevice.fromDeviceDescription(new StringReader(truncated), null, URI.create("http://127.0.0.1:56790/device-desc.xml"));
+        assertThat(dd.getIcons().size(), is(equalTo(2)));
+    }
+
+    @Test
+    public void pickIcon() throws Exception {
+        String ddXmlContent = new FileReader().readFile("dd_WithIcons.xml");
+        DialDevice dd = DialDevice.fromDeviceDescription(ddXmlContent, null, URI.create("http://127.0.0.1:56790/device-desc.xml"));
+        assertThat(dd.getIcon(32).getWidth(), is(equalTo(48)));
+        assertThat(dd.getIcon(64).getWidth(), is(equalTo(120)));
+        assertThat(dd.getIcon(256).getWidth(), is(equalTo(120)));
+        DialDevice withoutIcon = DialDevice.fromDeviceDescription(new FileReader().readFile("dd1_WithURLBase.xml"), null, URI.create("http://127.0.0.1:56790/device-desc.xml"));
+        assertThat(withoutIcon.getIcon(48), is(nullValue()));
+    }
 }
@@ -0,0 +1,226 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+public class DirectedDiscoveryTest {
+    private static final String SEARCH_TARGET = "urn:cast-ocast-org:service:cast:1";
+    private static final Set<String> SEARCH_TARGETS = Collections.singleton(SEARCH_TARGET);
+    private static final String UUID = "11111111-1111-1111-1111-111111111111";
+
+    private static DiscoveredDevice withUuid(String uuid) {
+        return argThat(device -> device != null && uuid.equals(device.getUuid()));
+    }
+
+    private static MockWebServer serveDescription() throws IOException {
+        MockWebServer server = new MockWebServer();
+        String ddXmlContent = new FileReader().readFile("dd1_WithURLBase.xml");
+        for (int i = 0; i < 4; i++) {
+            server.enqueue(new MockResponse().setResponseCode(200).setBody(ddXmlContent));
+        }
+        server.start();
+        return server;
+    }
+
+    @Test
+    public void hostsOfRange() throws Exception {
+        assertThat(new CidrRange("192.168.4.0/22").size(), is(equalTo(1022)));
+        assertThat(new CidrRange("192.168.4.7/31").size(), is(equalTo(2)));
+        assertThat(new CidrRange("192.168.4.7").size(), is(equalTo(1)));
+        Iterator<InetAddress> hosts = new CidrRange("192.168.5.17/30").iterator();
+        assertThat(hosts.next().getHostAddress(), is(equalTo("192.168.5.17")));
+        assertThat(hosts.next().getHostAddress(), is(equalTo("192.168.5.18")));
+        assertThat(hosts.hasNext(), is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectLargeRange() {
+        new CidrRange("10.0.0.0/8");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectInvalidRange() {
+        new CidrRange("192.168.300.0/24");
+    }
+
+    @Test
+    public void adaptTimeoutToResponseTime() throws Exception {
+        DirectedDiscovery discovery = new DirectedDiscovery(SEARCH_TARGETS, mock(Discovery.DiscoveryListener.class));
+        InetAddress host = InetAddress.getByName("192.168.4.12");
+        long initial = discovery.getTimeout(host);
+        discovery.onResponseTime(host, 5);
+        assertThat(discovery.getTimeout(host) < initial, is(true));
+        for (int i = 0; i < 50; i++) {
+            discovery.onResponseTime(host, 10000);
+        }
+        assertThat(discovery.getTimeout(host) <= 2000, is(true));
+    }
+
+    @Test
+    public void fetchDescriptionLocation() throws Exception {
+        MockWebServer server = serveDescription();
+        Discovery.DiscoveryListener listener = mock(Discovery.DiscoveryListener.class);
+        DirectedDiscovery discovery = new DirectedDiscovery(SEARCH_TARGETS, listener);
+        try {
+            discovery.addDescriptionLocation(server.url("/dd.xml").uri());
+            discovery.start();
+            verify(listener, timeout(2000)).onDeviceAdded(withUuid(UUID));
+            discovery.stop();
+            verify(listener).onDeviceRemoved(withUuid(UUID));
+        } finally {
+            discovery.stop();
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void filterDevices() throws Exception {
+        MockWebServer server = serveDescription();
+        Discovery.DiscoveryListener listener = mock(Discovery.DiscoveryListener.class);
+        DirectedDiscovery discovery = new DirectedDiscovery(SEARCH_TARGETS, listener);
+        try {
+            discovery.setFilter(new DiscoveryFilter.Builder().denyManufacturer("OCast").build());
+            discovery.addDescriptionLocation(server.url("/dd.xml").uri());
+            discovery.start();
+            verify(listener, after(1000).never()).onDeviceAdded(any(DiscoveredDevice.class));
+            assertThat(server.getRequestCount(), is(equalTo(1)));
+        } finally {
+            discovery.stop();
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void restartAfterStop() throws Exception {
+        MockWebServer server = serveDescription();
+        Discovery.DiscoveryListener listener = mock(Discovery.DiscoveryListener.class);
+        DirectedDiscovery discovery = new DirectedDiscovery(SEARCH_TARGETS, listener);
+        try {
+            discovery.addDescriptionLocation(server.url("/dd.xml").uri());
+            discovery.start();
+            verify(listener, timeout(2000)).onDeviceAdded(withUuid(UUID));
+            discovery.stop();
+            discovery.start();
+            verify(listener, timeout(2000).times(2)).onDeviceAdded(withUuid(UUID));
+        } finally {
+            discovery.stop();
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void endSweepOnQuickRestart() throws Exception {
+        Set<Thread> previous = sweepingThreads();
+        DirectedDiscovery discovery = new DirectedDiscovery(SEARCH_TARGETS, mock(Discovery.DiscoveryListener.class));
+        try {
+            // a sweep of silent hosts probed one at a time lasts for minutes
+            discovery.addRange("127.0.1.0/24");
+            discovery.setMaxConcurrentProbes(1);
+            discovery.start();
+            Thread.sleep(200);
+            discovery.stop();
+            discovery.start();
+            Thread.sleep(1500);
+            // only the sweep of the latest start goes on
+            Set<Thread> threads = sweepingThreads();
+            threads.removeAll(previous);
+            assertThat(threads.size(), is(equalTo(1)));
+        } finally {
+            discovery.stop();
+        }
+    }
+
+    private static Set<Thread> sweepingThreads() {
+        Set<Thread> threads = new HashSet<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && "DirectedDiscovery".equals(thread.getName())) {
+                threads.add(thread);
+            }
+        }
+        return threads;
+    }
+
+    @Test
+    public void probeHostWithUnicastSearch() throws Exception {
+        DatagramSocket device;
+        try {
+            device = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), SSDPMessage.SSDP_PORT));
+        } catch (IOException e) {
+            Assume.assumeTrue("SSDP port not available", false);
+            return;
+        }
+        MockWebServer server = serveDescription();
+        URI location = server.url("/dd.xml").uri();
+        Thread responder = new Thread(() -> {
+            byte[] buffer = new byte[4096];
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                device.receive(packet);
+                byte[] response = ("HTTP/1.1 200 OK\r\n"
+                        + "LOCATION: " + location + "\r\n"
+                        + "ST: " + SEARCH_TARGET + "\r\n"
+                        + "USN: uuid:" + UUID + "::" + SEARCH_TARGET + "\r\n"
+                        + "\r\n").getBytes("UTF-8");
+                device.send(new DatagramPacket(response, response.length, packet.getSocketAddress()));
+            } catch (IOException e) {
+                // the test fails on the missing device
+            }
+        });
+        responder.start();
+        Discovery.DiscoveryListener listener = mock(Discovery.DiscoveryListener.class);
+        DirectedDiscovery discovery = new DirectedDiscovery(SEARCH_TARGETS, listener);
+        try {
+            discovery.addHost(InetAddress.getLoopbackAddress());
+            // silent hosts do not delay the answering one
+            discovery.addRange("127.0.1.0/24");
+            discovery.start();
+            verify(listener, timeout(3000)).onDeviceAdded(withUuid(UUID));
+        } finally {
+            discovery.stop();
+            device.close();
+            server.shutdown();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class DiscoveryFilterTest {
+    private static final URI DIAL_URL = URI.create("http://127.0.0.1:8089/apps");
+
+    @Test
+    public void filterOnHeaders() throws Exception {
+        SSDPMessage response = SSDPMessage.fromString(SSDPMessageTest.PAYLOAD_RESPONSE_OK);
+        assertThat(new DiscoveryFilter.Builder().build().accept(response), is(true));
+        assertThat(new DiscoveryFilter.Builder().allowHeader("server", "QUICK_SSDP").build().accept(response), is(true));
+        assertThat(new DiscoveryFilter.Builder().allowHeader("SERVER", "other_ssdp").build().accept(response), is(false));
+        // one allowed value per header is enough
+        assertThat(new DiscoveryFilter.Builder()
+                .allowHeader("SERVER", "other_ssdp")
+                .allowHeader("SERVER", "quick_ssdp")
+                .allowHeader("USN", "c4323fee")
+                .build().accept(response), is(true));
+        assertThat(new DiscoveryFilter.Builder()
+                .allowHeader("SERVER", "quick_ssdp")
+                .denyHeader("USN", "uuid:c4323fee-db4b-4227-9039-fa4b71589e26")
+                .build().accept(response), is(false));
+        // a missing header has no allowed value
+        assertThat(new DiscoveryFilter.Builder().allowHeader("NT", "ocast").build().accept(response), is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectUnsupportedHeader() {
+        new DiscoveryFilter.Builder().allowHeader("BOOTID.UPNP.ORG", "1");
+    }
+
+    @Test
+    public void filterOnManufacturer() {
+        DialDevice orange = new DialDevice("uuid1", "tv", "Orange SA", "TV", DIAL_URL, null);
+        DialDevice other = new DialDevice("uuid2", "tv", "Other", "TV", DIAL_URL, null);
+        DiscoveryFilter allow = new DiscoveryFilter.Builder().allowManufacturers(Collections.singleton("Orange SA")).build();
+        assertThat(allow.accept(orange), is(true));
+        assertThat(allow.accept(other), is(false));
+        DiscoveryFilter deny = new DiscoveryFilter.Builder().denyManufacturer("Other").build();
+        assertThat(deny.accept(orange), is(true));
+        assertThat(deny.accept(other), is(false));
+    }
+}
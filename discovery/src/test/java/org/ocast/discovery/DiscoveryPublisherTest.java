@@ -0,0 +1,135 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+import org.junit.Test;
+import org.ocast.discovery.flow.Flow;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class DiscoveryPublisherTest {
+
+    private static class RecordingSubscriber implements Flow.Subscriber<DiscoveryEvent> {
+        final List<String> events = new ArrayList<>();
+        Flow.Subscription subscription;
+        Throwable error;
+        boolean complete;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(DiscoveryEvent item) {
+            events.add(item.getType() + " " + item.getDevice().getUuid());
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            complete = true;
+        }
+    }
+
+    private static DiscoveredDevice device(String uuid) {
+        return new DiscoveredDevice(uuid, "name", "manufacturer", "model", URI.create("http://127.0.0.1:8008/apps"));
+    }
+
+    @Test
+    public void replayCurrentDevices() {
+        DiscoveryPublisher publisher = new DiscoveryPublisher(Runnable::run);
+        publisher.onDeviceAdded(device("a"));
+        publisher.onDeviceAdded(device("b"));
+        publisher.onDeviceRemoved(device("a"));
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        assertThat(subscriber.events.isEmpty(), is(true));
+        subscriber.subscription.request(Long.MAX_VALUE);
+        publisher.onDeviceAdded(device("c"));
+        assertThat(subscriber.events.toString(), is("[ADDED b, ADDED c]"));
+    }
+
+    @Test
+    public void conflatePendingEvents() {
+        DiscoveryPublisher publisher = new DiscoveryPublisher(Runnable::run);
+        publisher.onDeviceAdded(device("a"));
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        // a device added then removed before being delivered is never delivered
+        publisher.onDeviceAdded(device("b"));
+        publisher.onDeviceRemoved(device("b"));
+        // only the latest change of a device is delivered
+        publisher.onDeviceRemoved(device("a"));
+        publisher.onDeviceAdded(device("a"));
+        subscriber.subscription.request(10);
+        assertThat(subscriber.events.toString(), is("[ADDED a]"));
+        publisher.onDeviceRemoved(device("a"));
+        assertThat(subscriber.events.toString(), is("[ADDED a, REMOVED a]"));
+    }
+
+    @Test
+    public void honourDemand() {
+        DiscoveryPublisher publisher = new DiscoveryPublisher(Runnable::run);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        publisher.onDeviceAdded(device("a"));
+        publisher.onDeviceAdded(device("b"));
+        subscriber.subscription.request(1);
+        assertThat(subscriber.events.toString(), is("[ADDED a]"));
+        subscriber.subscription.request(1);
+        assertThat(subscriber.events.toString(), is("[ADDED a, ADDED b]"));
+        publisher.close();
+        assertThat(subscriber.complete, is(true));
+        assertThat(subscriber.error, is(nullValue()));
+    }
+
+    @Test
+    public void rejectNonPositiveRequest() {
+        DiscoveryPublisher publisher = new DiscoveryPublisher(Runnable::run);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(0);
+        assertThat(subscriber.error instanceof IllegalArgumentException, is(true));
+        publisher.onDeviceAdded(device("a"));
+        assertThat(subscriber.events.isEmpty(), is(true));
+    }
+
+    @Test
+    public void stopOnCancel() {
+        DiscoveryPublisher publisher = new DiscoveryPublisher(Runnable::run);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+        publisher.onDeviceAdded(device("a"));
+        subscriber.subscription.cancel();
+        publisher.onDeviceAdded(device("b"));
+        assertThat(subscriber.events.toString(), is("[ADDED a]"));
+    }
+}
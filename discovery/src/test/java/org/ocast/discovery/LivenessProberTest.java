@@ -0,0 +1,89 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+import org.junit.Test;
+
+import java.net.URI;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+public class LivenessProberTest {
+
+    @Test
+    public void aliveOnAnyResponse() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setResponseCode(405));
+        server.start();
+        try {
+            URI location = server.url("/dd.xml").uri();
+            LivenessProber.Listener listener = mock(LivenessProber.Listener.class);
+            new LivenessProber(new OkHttpClient(), 1000).probe(location, listener);
+            verify(listener, timeout(2000)).onAlive(location);
+            verify(listener, never()).onDead(location);
+            assertThat(server.takeRequest().getMethod(), is(equalTo("HEAD")));
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void deadWhenUnreachable() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.start();
+        URI location = server.url("/dd.xml").uri();
+        server.shutdown();
+
+        LivenessProber.Listener listener = mock(LivenessProber.Listener.class);
+        new LivenessProber(new OkHttpClient(), 1000).probe(location, listener);
+        verify(listener, timeout(2000)).onDead(location);
+        verify(listener, never()).onAlive(location);
+    }
+
+    @Test
+    public void deadWithinTimeout() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        server.start();
+        try {
+            URI location = server.url("/dd.xml").uri();
+            LivenessProber.Listener listener = mock(LivenessProber.Listener.class);
+            long start = System.nanoTime();
+            new LivenessProber(new OkHttpClient(), 1000).probe(location, listener);
+            verify(listener, timeout(3000)).onDead(location);
+            // both attempts fit in the probe timeout
+            assertThat((System.nanoTime() - start) / 1000000 < 1500, is(true));
+            assertThat(server.getRequestCount(), is(equalTo(2)));
+        } finally {
+            server.shutdown();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+public class LocalDiscoveryTest {
+    private static final Set<String> SEARCH_TARGETS = Collections.singleton("urn:cast-ocast-org:service:cast:1");
+
+    private SSDPDiscovery discovery;
+    private LocalDiscoveryServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        discovery = new SSDPDiscovery(SEARCH_TARGETS, mock(Discovery.DiscoveryListener.class));
+        server = new LocalDiscoveryServer(discovery, SEARCH_TARGETS, 0);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    private static DialDevice device(String uuid) {
+        return new DialDevice(uuid, "tv", "Orange", "TV", URI.create("http://192.168.1.10:8008/apps"), URI.create("http://192.168.1.10:8008/dd.xml"));
+    }
+
+    private static DiscoveredDevice withUuid(String uuid) {
+        return argThat(device -> device != null && uuid.equals(device.getUuid()));
+    }
+
+    @Test
+    public void receiveDevicesFromServer() throws Exception {
+        discovery.getPublisher().onDeviceAdded(device("uuid1"));
+        Discovery.DiscoveryListener listener = mock(Discovery.DiscoveryListener.class);
+        LocalDiscovery client = new LocalDiscovery(SEARCH_TARGETS, listener, null, server.getLocalPort());
+        client.start();
+        assertThat(client.isConnected(), is(true));
+        verify(listener, timeout(1000)).onDeviceAdded(withUuid("uuid1"));
+        discovery.getPublisher().onDeviceAdded(device("uuid2"));
+        verify(listener, timeout(1000)).onDeviceAdded(withUuid("uuid2"));
+        discovery.getPublisher().onDeviceRemoved(device("uuid1"));
+        verify(listener, timeout(1000)).onDeviceRemoved(withUuid("uuid1"));
+        client.stop();
+        verify(listener).onDeviceRemoved(withUuid("uuid2"));
+        assertThat(client.isConnected(), is(false));
+    }
+
+    @Test
+    public void fallBackWhenTargetsAreNotServed() throws Exception {
+        Discovery.DiscoveryListener listener = mock(Discovery.DiscoveryListener.class);
+        LocalDiscovery client = new LocalDiscovery(Collections.singleton("urn:dial-multiscreen-org:service:dial:1"), listener, null, server.getLocalPort());
+        client.start();
+        assertThat(client.isConnected(), is(false));
+        client.stop();
+    }
+
+    @Test
+    public void forgetDisconnectedClient() throws Exception {
+        LocalDiscovery client = new LocalDiscovery(SEARCH_TARGETS, mock(Discovery.DiscoveryListener.class), null, server.getLocalPort());
+        client.start();
+        assertThat(client.isConnected(), is(true));
+        waitForClients(1);
+        client.stop();
+        // noticed without waiting for an event to be written
+        waitForClients(0);
+    }
+
+    @Test
+    public void handshakeDoesNotBlockOtherClients() throws Exception {
+        // a client that never sends its handshake
+        Socket silent = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+        try {
+            LocalDiscovery client = new LocalDiscovery(SEARCH_TARGETS, mock(Discovery.DiscoveryListener.class), null, server.getLocalPort());
+            client.start();
+            assertThat(client.isConnected(), is(true));
+            client.stop();
+        } finally {
+            silent.close();
+        }
+    }
+
+    @Test
+    public void reconnectAfterServerRestart() throws Exception {
+        int port = server.getLocalPort();
+        Discovery.DiscoveryListener listener = mock(Discovery.DiscoveryListener.class);
+        LocalDiscovery client = new LocalDiscovery(SEARCH_TARGETS, listener, null, port);
+        client.start();
+        assertThat(client.isConnected(), is(true));
+        server.stop();
+        waitForConnection(client, false);
+
+        discovery.getPublisher().onDeviceAdded(device("uuid1"));
+        server = new LocalDiscoveryServer(discovery, SEARCH_TARGETS, port);
+        server.start();
+        waitForConnection(client, true);
+        verify(listener, timeout(1000)).onDeviceAdded(withUuid("uuid1"));
+        client.stop();
+    }
+
+    private void waitForClients(int count) throws InterruptedException {
+        for (int i = 0; i < 100 && server.getClientCount() != count; i++) {
+            Thread.sleep(50);
+        }
+        assertThat(server.getClientCount(), is(equalTo(count)));
+    }
+
+    private static void waitForConnection(LocalDiscovery client, boolean connected) throws InterruptedException {
+        for (int i = 0; i < 200 && client.isConnected() != connected; i++) {
+            Thread.sleep(50);
+        }
+        assertThat(client.isConnected(), is(connected));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.ocast.discovery;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class PersistentDeviceCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void saveAndLoad() throws Exception {
+        File file = new File(folder.getRoot(), "devices");
+        PersistentDeviceCache cache = new PersistentDeviceCache(file);
+        DialDevice verified = new DialDevice("uuid1", "tv", null, "TV", URI.create("http://192.168.1.10:8008/apps"), URI.create("http://192.168.1.10:8008/dd.xml"));
+        DialDevice unverified = new DialDevice("uuid2", "stick", "Orange", "Stick", URI.create("http://192.168.1.11:8008/apps"), URI.create("http://192.168.1.11:8008/dd.xml"), false);
+        cache.save(Arrays.asList(verified, unverified));
+        assertThat(new File(folder.getRoot(), "devices.tmp").exists(), is(false));
+
+        List<DialDevice> devices = new PersistentDeviceCache(file).load();
+        assertThat(devices.size(), is(equalTo(1)));
+        DialDevice device = devices.get(0);
+        assertThat(device, is(equalTo(verified)));
+        assertThat(device.getManufacturer(), is(nullValue()));
+        assertThat(device.getLocation(), is(equalTo(verified.getLocation())));
+        assertThat(device.isVerified(), is(false));
+    }
+
+    @Test
+    public void saveAndLoadIcons() throws Exception {
+        File file = new File(folder.getRoot(), "devices");
+        DeviceIcon icon = new DeviceIcon("image/png", 48, 48, 24, URI.create("http://192.168.1.10:8008/icon48.png"));
+        DialDevice device = new DialDevice("uuid1", "tv", "Orange", "TV", URI.create("http://192.168.1.10:8008/apps"), URI.create("http://192.168.1.10:8008/dd.xml"), Collections.singletonList(icon), true);
+        new PersistentDeviceCache(file).save(Collections.singletonList(device));
+        List<DialDevice> devices = new PersistentDeviceCache(file).load();
+        assertThat(devices.get(0).getIcons(), is(equalTo(Collections.singletonList(icon))));
+    }
+
+    @Test
+    public void saveTooManyIcons() throws Exception {
+        File file = new File(folder.getRoot(), "devices");
+        List<DeviceIcon> icons = new ArrayList<>();
+        for (int i = 0; i < 70000; i++) {
+            icons.add(new DeviceIcon("image/png", i, i, 24, URI.create("http://192.168.1.10:8008/icon" + i + ".png")));
+        }
+        DialDevice device = new DialDevice("uuid1", "tv", "Orange", "TV", URI.create("http://192.168.1.10:8008/apps"), URI.create("http://192.168.1.10:8008/dd.xml"), icons, true);
+        new PersistentDeviceCache(file).save(Collections.singletonList(device));
+        List<DialDevice> devices = new PersistentDeviceCache(file).load();
+        assertThat(devices.get(0).getIcons(), is(equalTo(icons.subList(0, DialDevice.MAX_ICONS))));
+    }
+
+    @Test
+    public void loadWithoutSnapshot() throws Exception {
+        PersistentDeviceCache cache = new PersistentDeviceCache(new File(folder.getRoot(), "devices"));
+        assertThat(cache.load().isEmpty(), is(true));
+    }
+
+    @Test(expected = IOException.class)
+    public void loadCorruptedSnapshot() throws Exception {
+        File file = folder.newFile("devices");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write("not a device cache".getBytes("UTF-8"));
+        }
+        new PersistentDeviceCache(file).load();
+    }
+}
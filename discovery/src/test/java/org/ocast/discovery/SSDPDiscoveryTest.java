@@ -0,0 +1,74 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.net.URI;
+import java.util.Collections;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class SSDPDiscoveryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void addRestoredDeviceOnce() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(new FileReader().readFile("dd1_WithURLBase.xml")));
+        server.start();
+        SSDPDiscovery discovery = null;
+        try {
+            URI location = server.url("/dd.xml").uri();
+            File file = new File(folder.getRoot(), "devices");
+            // the same description as the one served
+            new PersistentDeviceCache(file).save(Collections.singletonList(
+                    new DialDevice("11111111-1111-1111-1111-111111111111", "device1", "OCast", "OCast", URI.create("http://127.0.0.1:8008/apps"), location)));
+            Discovery.DiscoveryListener listener = mock(Discovery.DiscoveryListener.class);
+            discovery = new SSDPDiscovery("urn:cast-ocast-org:service:cast:1", listener);
+            discovery.setDeviceCache(new PersistentDeviceCache(file));
+            discovery.start(false);
+            verify(listener, timeout(1000)).onDeviceAdded(any(DiscoveredDevice.class));
+            // once the restored device has been verified
+            long deadline = System.currentTimeMillis() + 5000;
+            while (server.getRequestCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            Thread.sleep(500);
+            verify(listener, times(1)).onDeviceAdded(any(DiscoveredDevice.class));
+        } finally {
+            if (discovery != null) {
+                discovery.stop();
+            }
+            server.shutdown();
+        }
+    }
+}
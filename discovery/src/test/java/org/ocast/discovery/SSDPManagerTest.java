@@ -20,22 +20,38 @@
 package org.ocast.discovery;
 
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
+import java.io.File;
 import java.net.URI;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -44,12 +60,14 @@ public class SSDPManagerTest {
     private static SSDPMessage SSDP_MESSAGE_RESPONSE_OK;
     private static SSDPMessage SSDP_MESSAGE_RESPONSE_OK2;
     private static SSDPMessage SSDP_MESSAGE_WITHOUT_LOCATION;
+    private static SSDPMessage SSDP_MESSAGE_NOTIFY_BYEBYE;
 
     static {
         try {
             SSDP_MESSAGE_RESPONSE_OK = SSDPMessage.fromString(SSDPMessageTest.PAYLOAD_RESPONSE_OK);
             SSDP_MESSAGE_RESPONSE_OK2 = SSDPMessage.fromString(SSDPMessageTest.PAYLOAD_RESPONSE_OK2);
             SSDP_MESSAGE_WITHOUT_LOCATION = SSDPMessage.fromString(SSDPMessageTest.PAYLOAD_RESPONSE_WITHOUT_LOCATION);
+            SSDP_MESSAGE_NOTIFY_BYEBYE = SSDPMessage.fromString(SSDPMessageTest.PAYLOAD_NOTIFY_BYEBYE);
         } catch (ParseException e) {
             e.printStackTrace();
         }
@@ -111,7 +129,8 @@ public class SSDPManagerTest {
                 }
                 mCount++;
             } else {
-                Thread.sleep(10000);
+                // like the real socket, a read lasts its timeout at most
+                Thread.sleep(Math.min((Integer) args[0], 10000));
             }
             return result;
         }
@@ -243,10 +262,521 @@ public class SSDPManagerTest {
         ssdp.discoverServices(DiscoveryReliability.MEDIUM);
         callback.await();
         verify(callback, times(2)).onServiceFound(any(URI.class));
+        // like the real socket, a read of the new session lasts its timeout at most
+        doAnswer(invocation -> {
+            ((SSDPSocket.Listener) invocation.getArguments()[1]).onResponse(SSDP_MESSAGE_RESPONSE_OK);
+            Thread.sleep(Math.min((Integer) invocation.getArguments()[0], 200));
+            return Collections.singletonList(SSDP_MESSAGE_RESPONSE_OK);
+        }).when(socket).read(any(Integer.class), any(SSDPSocket.Listener.class));
         ssdp.changeReliability(new DiscoveryReliability(5,1));
-        doAnswer(new SSDPManagerTest.ReadAnswer(new SSDPMessage[]{SSDP_MESSAGE_RESPONSE_OK})).when(socket).read(any(Integer.class), any(SSDPSocket.Listener.class));
         Thread.sleep(1000);
+        // the devices are kept when the reliability changes, until their lifetime elapses
+        verify(callback, Mockito.never()).onServiceLost(any(URI.class));
+        verify(socket, Mockito.atLeast(2)).send(any(byte[].class));
         ssdp.stopDiscovery();
-        verify(callback, times(1)).onServiceLost(any(URI.class));
+        verify(callback, times(2)).onServiceLost(any(URI.class));
+        // a known location is reported found again by every scan of the new session
+        verify(callback, Mockito.atLeast(2)).onServiceFound(any(URI.class));
+    }
+
+    @Test
+    public void runOnExecutor() throws Exception {
+        final SSDPSocket socket = mock(SSDPSocket.class);
+        // like the real socket, a read lasts its timeout at most
+        doAnswer(invocation -> {
+            ((SSDPSocket.Listener) invocation.getArguments()[1]).onResponse(SSDP_MESSAGE_RESPONSE_OK);
+            Thread.sleep((Integer) invocation.getArguments()[0]);
+            return Collections.emptyList();
+        }).when(socket).read(any(Integer.class), any(SSDPSocket.Listener.class));
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            final Thread engine = executor.submit(Thread::currentThread).get();
+            FakeListener callback = Mockito.spy(new FakeListener());
+            SSDPManager ssdp = new SSDPManager(Collections.singleton("urn:cast-ocast-org:service:cast:1"), callback, executor) {
+                @Override
+                protected SSDPSocket createSocket() {
+                    return socket;
+                }
+            };
+            doAnswer(invocation -> {
+                assertThat(Thread.currentThread(), is(engine));
+                return null;
+            }).when(callback).onServiceLost(any(URI.class));
+
+            for (int i = 0; i < 3; i++) {
+                ssdp.discoverServices(DiscoveryReliability.HIGH);
+                verify(callback, timeout(2000).times(i + 1)).onServiceFound(any(URI.class));
+                ssdp.stopDiscovery();
+            }
+            verify(socket, times(3)).close();
+            ssdp.shutdown();
+            assertThat(executor.isShutdown(), is(false));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void serializeOnMultiThreadExecutor() throws Exception {
+        final SSDPSocket socket = mock(SSDPSocket.class);
+        doAnswer(invocation -> {
+            ((SSDPSocket.Listener) invocation.getArguments()[1]).onResponse(SSDP_MESSAGE_RESPONSE_OK);
+            ((SSDPSocket.Listener) invocation.getArguments()[1]).onResponse(SSDP_MESSAGE_RESPONSE_OK2);
+            Thread.sleep(Math.min((Integer) invocation.getArguments()[0], 100));
+            return Collections.emptyList();
+        }).when(socket).read(any(Integer.class), any(SSDPSocket.Listener.class));
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(4);
+        try {
+            AtomicInteger active = new AtomicInteger();
+            AtomicBoolean overlapped = new AtomicBoolean();
+            FakeListener callback = Mockito.spy(new FakeListener(2));
+            SSDPManager ssdp = new SSDPManager(Collections.singleton("urn:cast-ocast-org:service:cast:1"), callback, executor) {
+                @Override
+                protected SSDPSocket createSocket() {
+                    return socket;
+                }
+            };
+            doAnswer(invocation -> {
+                if (active.incrementAndGet() > 1) {
+                    overlapped.set(true);
+                }
+                Thread.sleep(50);
+                active.decrementAndGet();
+                return null;
+            }).when(callback).onServiceLost(any(URI.class));
+            ssdp.discoverServices(DiscoveryReliability.HIGH);
+            callback.await();
+            ssdp.stopDiscovery();
+            // the devices are reported lost by the engine before stopDiscovery returns
+            verify(callback, times(2)).onServiceLost(any(URI.class));
+            assertThat(overlapped.get(), is(false));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void adaptiveScan() throws Exception {
+        final SSDPSocket socket = mock(SSDPSocket.class);
+        doAnswer(new SSDPManagerTest.ReadAnswer(new SSDPMessage[]{SSDP_MESSAGE_RESPONSE_OK})).when(socket).read(any(Integer.class), any(SSDPSocket.Listener.class));
+        FakeListener callback = Mockito.spy(new FakeListener());
+        SSDPManager ssdp = new SSDPManager("urn:cast-ocast-org:service:cast:1", callback) {
+            @Override
+            protected SSDPSocket createSocket() {
+                return socket;
+            }
+        };
+
+        ssdp.discoverServices(AdaptiveScanPolicy.DEFAULT);
+        callback.await();
+        ArgumentCaptor<byte[]> payload = ArgumentCaptor.forClass(byte[].class);
+        // the first M-SEARCH copy may be sent after the response, depending on its jitter
+        verify(socket, timeout(2000).atLeastOnce()).send(payload.capture());
+        ssdp.stopDiscovery();
+        assertThat(new String(payload.getValue(), "UTF-8").contains("MX: 1\r\n"), is(true));
+    }
+
+    @Test
+    public void adaptiveScanToleratesMissedResponse() throws Exception {
+        SSDPSocket socket = mock(SSDPSocket.class);
+        AtomicInteger scans = new AtomicInteger();
+        doAnswer(invocation -> {
+            scans.incrementAndGet();
+            return null;
+        }).when(socket).discardQueued();
+        // the device misses the third scan
+        doAnswer(invocation -> {
+            if (scans.get() != 3) {
+                ((SSDPSocket.Listener) invocation.getArguments()[1]).onResponse(SSDP_MESSAGE_RESPONSE_OK);
+            }
+            Thread.sleep(Math.min((Integer) invocation.getArguments()[0], 200));
+            return Collections.emptyList();
+        }).when(socket).read(any(Integer.class), any(SSDPSocket.Listener.class));
+        FakeListener listener = Mockito.spy(new FakeListener());
+        SSDPManager ssdp = new SSDPManager("urn:cast-ocast-org:service:cast:1", listener) {
+            @Override
+            protected SSDPSocket createSocket() {
+                return socket;
+            }
+        };
+        try {
+            // scans of 2, 4 then 8 seconds while the device is known
+            ssdp.discoverServices(new AdaptiveScanPolicy(2, 8, 1, 1, 20));
+            for (int i = 0; i < 240 && scans.get() < 4; i++) {
+                Thread.sleep(50);
+            }
+            assertThat(scans.get(), is(equalTo(4)));
+            // the fourth scan still lasts 8 seconds
+            Thread.sleep(3000);
+            assertThat(scans.get(), is(equalTo(4)));
+            verify(listener, never()).onServiceLost(any(URI.class));
+        } finally {
+            ssdp.stopDiscovery();
+        }
+    }
+
+    @Test
+    public void lostOnByeBye() throws Exception {
+        SSDPSocket socket = mock(SSDPSocket.class);
+        FakeListener callback = Mockito.spy(new FakeListener());
+        SSDPManager ssdp = new SSDPManager("urn:cast-ocast-org:service:cast:1", callback) {
+            @Override
+            protected SSDPSocket createSocket() {
+                return socket;
+            }
+        };
+        ssdp.setNotificationListening(true);
+        doAnswer(new SSDPManagerTest.ReadAnswer(new SSDPMessage[][]{{SSDP_MESSAGE_RESPONSE_OK}, {SSDP_MESSAGE_NOTIFY_BYEBYE}})).when(socket).read(any(Integer.class), any(SSDPSocket.Listener.class));
+        ssdp.discoverServices(DiscoveryReliability.LOW);
+        callback.await();
+        verify(callback, timeout(2000).times(1)).onServiceLost(URI.create("http://127.0.0.1:8089/dd.xml"));
+        ssdp.stopDiscovery();
+    }
+
+    @Test
+    public void lostOnMaxAge() throws Exception {
+        SSDPSocket socket = mock(SSDPSocket.class);
+        FakeListener callback = Mockito.spy(new FakeListener());
+        SSDPManager ssdp = new SSDPManager("urn:cast-ocast-org:service:cast:1", callback) {
+            @Override
+            protected SSDPSocket createSocket() {
+                return socket;
+            }
+        };
+        SSDPMessage response = SSDPMessage.fromString(SSDPMessageTest.PAYLOAD_RESPONSE_OK.replace("max-age=1800", "max-age=1"));
+        doAnswer(new SSDPManagerTest.ReadAnswer(new SSDPMessage[]{response})).when(socket).read(any(Integer.class), any(SSDPSocket.Listener.class));
+        ssdp.discoverServices(DiscoveryReliability.LOW);
+        callback.await();
+        verify(callback, timeout(15000).times(1)).onServiceLost(URI.create("http://127.0.0.1:8089/dd.xml"));
+        ssdp.stopDiscovery();
+    }
+
+    @Test
+    public void reportOncePerScan() throws Exception {
+        SSDPSocket socket = mock(SSDPSocket.class);
+        FakeListener callback = Mockito.spy(new FakeListener());
+        SSDPManager ssdp = new SSDPManager("urn:cast-ocast-org:service:cast:1", callback) {
+            @Override
+            protected SSDPSocket createSocket() {
+                return socket;
+            }
+        };
+        doAnswer(new SSDPManagerTest.ReadAnswer(new SSDPMessage[]{SSDP_MESSAGE_RESPONSE_OK, SSDP_MESSAGE_RESPONSE_OK, SSDP_MESSAGE_RESPONSE_OK})).when(socket).read(any(Integer.class), any(SSDPSocket.Listener.class));
+        ssdp.discoverServices(DiscoveryReliability.HIGH);
+        callback.await();
+        Thread.sleep(1500);
+        ssdp.stopDiscovery();
+        verify(callback, times(1)).onServiceFound(any(URI.class));
+    }
+
+    @Test
+    public void evictDeadDevice() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(new FileReader().readFile("dd1_WithURLBase.xml")));
+        server.start();
+        URI location = server.url("/dd.xml").uri();
+        SSDPMessage response = SSDPMessage.fromString(SSDPMessageTest.PAYLOAD_RESPONSE_OK.replace("http://127.0.0.1:8089/dd.xml", location.toString()));
+        SSDPSocket socket = mock(SSDPSocket.class);
+        AtomicInteger reads = new AtomicInteger();
+        // the device only answers the first scan
+        doAnswer(invocation -> {
+            if (reads.getAndIncrement() == 0) {
+                ((SSDPSocket.Listener) invocation.getArguments()[1]).onResponse(response);
+            }
+            Thread.sleep(Math.min((Integer) invocation.getArguments()[0], 200));
+            return Collections.emptyList();
+        }).when(socket).read(any(Integer.class), any(SSDPSocket.Listener.class));
+        FakeListener listener = Mockito.spy(new FakeListener());
+        SSDPManager ssdp = new SSDPManager("urn:cast-ocast-org:service:cast:1", listener) {
+            @Override
+            protected SSDPSocket createSocket() {
+                return socket;
+            }
+        };
+        ssdp.setLivenessProbeTimeout(500);
+        try {
+            ssdp.discoverServices(new DiscoveryReliability(1, 1));
+            verify(listener, timeout(5000)).onServiceFound(location);
+            ssdp.resolve(location);
+            verify(listener, timeout(5000)).onServiceResolved(any(DialDevice.class));
+            server.shutdown();
+            // the probe of the next scan fails long before the advertised max-age
+            verify(listener, timeout(5000)).onServiceLost(location);
+            assertThat(ssdp.getDeviceSnapshot().getDevices().size(), is(equalTo(0)));
+        } finally {
+            ssdp.stopDiscovery();
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void ignoreResolutionAfterStop() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setResponseCode(200).setBodyDelay(500, TimeUnit.MILLISECONDS)
+                .setBody(new FileReader().readFile("dd1_WithURLBase.xml")));
+        server.start();
+        URI location = server.url("/dd.xml").uri();
+        SSDPSocket socket = mock(SSDPSocket.class);
+        doAnswer(invocation -> {
+            Thread.sleep(Math.min((Integer) invocation.getArguments()[0], 200));
+            return Collections.emptyList();
+        }).when(socket).read(any(Integer.class), any(SSDPSocket.Listener.class));
+        FakeListener listener = Mockito.spy(new FakeListener());
+        SSDPManager ssdp = new SSDPManager("urn:cast-ocast-org:service:cast:1", listener) {
+            @Override
+            protected SSDPSocket createSocket() {
+                return socket;
+            }
+        };
+        DeviceDescriptionRequest.Callbacks callbacks = mock(DeviceDescriptionRequest.Callbacks.class);
+        try {
+            ssdp.discoverServices(new DiscoveryReliability(1, 1));
+            ssdp.resolve(location, callbacks);
+            ssdp.stopDiscovery();
+            // the caller still gets the description, the stopped discovery does not
+            verify(callbacks, timeout(5000)).onDeviceDescription(eq(location), any(DialDevice.class));
+            verify(listener, never()).onServiceResolved(any(DialDevice.class));
+            assertThat(ssdp.getDeviceDescriptions().isEmpty(), is(true));
+        } finally {
+            ssdp.shutdown();
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void pauseKeepsDevices() throws Exception {
+        SSDPSocket socket = mock(SSDPSocket.class);
+        AtomicInteger sockets = new AtomicInteger();
+        AtomicInteger reads = new AtomicInteger();
+        doAnswer(invocation -> {
+            reads.incrementAndGet();
+            ((SSDPSocket.Listener) invocation.getArguments()[1]).onResponse(SSDP_MESSAGE_RESPONSE_OK);
+            Thread.sleep(Math.min((Integer) invocation.getArguments()[0], 200));
+            return Collections.singletonList(SSDP_MESSAGE_RESPONSE_OK);
+        }).when(socket).read(any(Integer.class), any(SSDPSocket.Listener.class));
+        FakeListener listener = Mockito.spy(new FakeListener());
+        SSDPManager ssdp = new SSDPManager("urn:cast-ocast-org:service:cast:1", listener) {
+            @Override
+            protected SSDPSocket createSocket() {
+                sockets.incrementAndGet();
+                return socket;
+            }
+        };
+        ssdp.discoverServices(new DiscoveryReliability(1, 1));
+        listener.await();
+        ssdp.pauseDiscovery();
+        Thread.sleep(500);
+        int pausedReads = reads.get();
+        // a paused discovery neither scans nor expires the devices
+        Thread.sleep(2500);
+        assertThat(reads.get(), is(equalTo(pausedReads)));
+        verify(listener, Mockito.never()).onServiceLost(any(URI.class));
+
+        ssdp.onNetworkChanged();
+        for (int i = 0; i < 40 && reads.get() == pausedReads; i++) {
+            Thread.sleep(50);
+        }
+        assertThat(reads.get() > pausedReads, is(true));
+        assertThat(sockets.get(), is(equalTo(2)));
+        verify(listener, Mockito.never()).onServiceLost(any(URI.class));
+        ssdp.stopDiscovery();
+        verify(listener, times(1)).onServiceLost(any(URI.class));
+    }
+
+    @Test
+    public void pauseBeyondMaxAge() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(new FileReader().readFile("dd1_WithURLBase.xml")));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(new FileReader().readFile("dd1_WithURLBase.xml")));
+        server.start();
+        URI location = server.url("/dd.xml").uri();
+        SSDPMessage response = SSDPMessage.fromString(SSDPMessageTest.PAYLOAD_RESPONSE_OK
+                .replace("http://127.0.0.1:8089/dd.xml", location.toString())
+                .replace("max-age=1800", "max-age=2"));
+        SSDPSocket socket = mock(SSDPSocket.class);
+        AtomicInteger reads = new AtomicInteger();
+        // the device only answers the first scan
+        doAnswer(invocation -> {
+            if (reads.getAndIncrement() == 0) {
+                ((SSDPSocket.Listener) invocation.getArguments()[1]).onResponse(response);
+            }
+            Thread.sleep(Math.min((Integer) invocation.getArguments()[0], 200));
+            return Collections.emptyList();
+        }).when(socket).read(any(Integer.class), any(SSDPSocket.Listener.class));
+        FakeListener listener = Mockito.spy(new FakeListener());
+        SSDPManager ssdp = new SSDPManager("urn:cast-ocast-org:service:cast:1", listener) {
+            @Override
+            protected SSDPSocket createSocket() {
+                return socket;
+            }
+        };
+        try {
+            ssdp.discoverServices(new DiscoveryReliability(1, 1));
+            verify(listener, timeout(5000)).onServiceFound(location);
+            ssdp.resolve(location);
+            verify(listener, timeout(5000)).onServiceResolved(any(DialDevice.class));
+            ssdp.pauseDiscovery();
+            // the max-age elapses while paused
+            Thread.sleep(3000);
+            ssdp.onNetworkChanged();
+            Thread.sleep(1000);
+            // the revalidated device gets a full lifetime on the new network
+            assertThat(server.getRequestCount(), is(equalTo(2)));
+            verify(listener, never()).onServiceLost(any(URI.class));
+            verify(listener, timeout(5000)).onServiceLost(location);
+        } finally {
+            ssdp.stopDiscovery();
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void resolveSingleFlight() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setBodyDelay(500, TimeUnit.MILLISECONDS)
+                .setBody(new FileReader().readFile("dd1_WithURLBase.xml")));
+        server.start();
+        try {
+            FakeListener listener = Mockito.spy(new FakeListener());
+            SSDPManager ssdp = new SSDPManager("urn:cast-ocast-org:service:cast:1", listener);
+            URI location = server.url("/dd.xml").uri();
+            DeviceDescriptionRequest.Callbacks first = mock(DeviceDescriptionRequest.Callbacks.class);
+            DeviceDescriptionRequest.Callbacks second = mock(DeviceDescriptionRequest.Callbacks.class);
+            ssdp.resolve(location, first);
+            ssdp.resolve(location, second);
+            ssdp.resolve(location);
+            verify(first, timeout(5000)).onDeviceDescription(eq(location), any(DialDevice.class));
+            verify(second, timeout(5000)).onDeviceDescription(eq(location), any(DialDevice.class));
+            verify(listener, times(1)).onServiceResolved(any(DialDevice.class));
+            assertThat(server.getRequestCount(), is(equalTo(1)));
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void resolveAfterFailingListener() throws Exception {
+        MockWebServer server = new MockWebServer();
+        String ddXmlContent = new FileReader().readFile("dd1_WithURLBase.xml");
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(ddXmlContent));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(ddXmlContent));
+        server.start();
+        try {
+            FakeListener listener = Mockito.spy(new FakeListener());
+            Mockito.doThrow(new IllegalStateException("listener failure")).when(listener).onServiceResolved(any(DialDevice.class));
+            SSDPManager ssdp = new SSDPManager("urn:cast-ocast-org:service:cast:1", listener);
+            URI location = server.url("/dd.xml").uri();
+            DeviceDescriptionRequest.Callbacks first = mock(DeviceDescriptionRequest.Callbacks.class);
+            ssdp.resolve(location, first);
+            verify(first, timeout(5000)).onDeviceDescription(eq(location), any(DialDevice.class));
+            // the failed resolution does not suppress the next ones
+            DeviceDescriptionRequest.Callbacks second = mock(DeviceDescriptionRequest.Callbacks.class);
+            ssdp.resolve(location, second);
+            verify(second, timeout(5000)).onDeviceDescription(eq(location), any(DialDevice.class));
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void restoreDeviceCache() throws Exception {
+        MockWebServer server = new MockWebServer();
+        String ddXmlContent = new FileReader().readFile("dd1_WithURLBase.xml");
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if ("/dd.xml".equals(request.getPath())) {
+                    return new MockResponse().setResponseCode(200).setBody(ddXmlContent);
+                }
+                return new MockResponse().setResponseCode(404);
+            }
+        });
+        server.start();
+        File file = File.createTempFile("devices", null);
+        try {
+            URI location = server.url("/dd.xml").uri();
+            URI goneLocation = server.url("/gone.xml").uri();
+            URI dialUrl = URI.create("http://127.0.0.1:8008/apps/");
+            new PersistentDeviceCache(file).save(Arrays.asList(
+                    new DialDevice("11111111-1111-1111-1111-111111111111", "Device 1", "Orange", "Model 1", dialUrl, location),
+                    new DialDevice("22222222-2222-2222-2222-222222222222", "Device 2", "Orange", "Model 2", dialUrl, goneLocation)));
+
+            SSDPSocket socket = mock(SSDPSocket.class);
+            FakeListener listener = Mockito.spy(new FakeListener());
+            SSDPManager ssdp = new SSDPManager("urn:cast-ocast-org:service:cast:1", listener) {
+                @Override
+                protected SSDPSocket createSocket() {
+                    return socket;
+                }
+            };
+            ssdp.setDeviceCache(new PersistentDeviceCache(file));
+            ssdp.discoverServices(DiscoveryReliability.LOW);
+            verify(listener, timeout(1000).times(2)).onServiceResolved(Mockito.argThat(dd -> !dd.isVerified()));
+            verify(listener, timeout(5000)).onServiceResolved(Mockito.argThat(dd -> dd.isVerified() && dd.getLocation().equals(location)));
+            verify(listener, timeout(5000)).onServiceLost(goneLocation);
+            ssdp.stopDiscovery();
+            assertThat(new PersistentDeviceCache(file).load().size(), is(equalTo(1)));
+        } finally {
+            file.delete();
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void revalidateOnNetworkChange() throws Exception {
+        MockWebServer server = new MockWebServer();
+        String dd1 = new FileReader().readFile("dd1_WithURLBase.xml");
+        String dd2 = new FileReader().readFile("dd2_WithURLBase.xml");
+        AtomicBoolean dd2Reachable = new AtomicBoolean(true);
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if ("/dd1.xml".equals(request.getPath())) {
+                    return new MockResponse().setResponseCode(200).setBody(dd1);
+                } else if ("/dd2.xml".equals(request.getPath()) && dd2Reachable.get()) {
+                    return new MockResponse().setResponseCode(200).setBody(dd2);
+                }
+                return new MockResponse().setResponseCode(404);
+            }
+        });
+        server.start();
+        File file = File.createTempFile("devices", null);
+        try {
+            URI location1 = server.url("/dd1.xml").uri();
+            URI location2 = server.url("/dd2.xml").uri();
+            URI dialUrl = URI.create("http://127.0.0.1:8008/apps/");
+            new PersistentDeviceCache(file).save(Arrays.asList(
+                    new DialDevice("11111111-1111-1111-1111-111111111111", "Device 1", "Orange", "Model 1", dialUrl, location1),
+                    new DialDevice("22222222-2222-2222-2222-222222222222", "Device 2", "Orange", "Model 2", dialUrl, location2)));
+
+            SSDPSocket socket = mock(SSDPSocket.class);
+            AtomicInteger sockets = new AtomicInteger();
+            FakeListener listener = Mockito.spy(new FakeListener());
+            SSDPManager ssdp = new SSDPManager("urn:cast-ocast-org:service:cast:1", listener) {
+                @Override
+                protected SSDPSocket createSocket() {
+                    sockets.incrementAndGet();
+                    return socket;
+                }
+            };
+            ssdp.setDeviceCache(new PersistentDeviceCache(file));
+            ssdp.discoverServices(DiscoveryReliability.LOW);
+            verify(listener, timeout(5000).times(2)).onServiceResolved(Mockito.argThat(DialDevice::isVerified));
+
+            dd2Reachable.set(false);
+            ssdp.onNetworkChanged();
+            verify(listener, timeout(5000)).onServiceLost(location2);
+            Thread.sleep(500);
+            verify(listener, Mockito.never()).onServiceLost(location1);
+            // the socket is opened again on the new network
+            assertThat(sockets.get(), is(equalTo(2)));
+            assertThat(ssdp.getDeviceSnapshot().getDevices().size(), is(equalTo(1)));
+            ssdp.stopDiscovery();
+        } finally {
+            file.delete();
+            server.shutdown();
+        }
     }
 }
@@ -23,7 +23,9 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.nio.ByteBuffer;
 import java.text.ParseException;
+import java.util.Collections;
 
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
@@ -93,6 +95,13 @@ public class SSDPMessageTest {
             "USN: uuid:506f0cff-1568-4e20-9d6e-f34fb7::upnp:rootdevice\r\n" +
             "NT: upnp:rootdevice\r\n" +
             "\r\n";
+
+    public static final String PAYLOAD_NOTIFY_BYEBYE = "NOTIFY * HTTP/1.1\r\n" +
+            "HOST: 239.255.255.250:1900\r\n" +
+            "NT: urn:cast-ocast-org:service:cast:1\r\n" +
+            "NTS: ssdp:byebye\r\n" +
+            "USN: uuid:c4323fee-db4b-4227-9039-fa4b71589e26::urn:cast-ocast-org:service:cast:1\r\n" +
+            "\r\n";
     @Rule
     public ExpectedException thrown = ExpectedException.none();
 
@@ -121,6 +130,48 @@ public class SSDPMessageTest {
         assertThat(ssdp.getType(), is(equalTo(SSDPMessage.Type.NOTIFY)));
     }
 
+    @Test
+    public void parseNotifyHeadersIgnoringCase() throws Exception {
+        SSDPMessage ssdp = SSDPMessage.fromString(PAYLOAD_NOTIFY);
+        assertThat(ssdp.getHeader("LOCATION"), is(equalTo("http://192.168.1.33:2222/")));
+        assertThat(ssdp.getHeader("NTS"), is(equalTo("ssdp:alive")));
+        assertThat(ssdp.getUuid(), is(equalTo("506f0cff-1568-4e20-9d6e-f34fb7")));
+    }
+
+    @Test
+    public void parseBufferWithSearchTarget() throws Exception {
+        SSDPMessageParser parser = new SSDPMessageParser(Collections.singleton("urn:cast-ocast-org:service:cast:1"));
+        ByteBuffer buffer = ByteBuffer.wrap(PAYLOAD_RESPONSE_OK.getBytes("UTF-8"));
+        SSDPMessage ssdp = parser.parse(buffer);
+        assertThat(ssdp.getHeader("ST"), is(equalTo("urn:cast-ocast-org:service:cast:1")));
+        assertThat(ssdp.getHeader("CACHE-CONTROL"), is(equalTo("max-age=1800")));
+        assertThat(buffer.position(), is(equalTo(0)));
+    }
+
+    @Test
+    public void parseBufferWithOtherSearchTarget() throws Exception {
+        SSDPMessageParser parser = new SSDPMessageParser(Collections.singleton("urn:dummy:service:vucast:1"));
+        SSDPMessage ssdp = parser.parse(ByteBuffer.wrap(PAYLOAD_RESPONSE_OK.getBytes("UTF-8")));
+        assertThat(ssdp, is(nullValue()));
+    }
+
+    @Test
+    public void parseNotifyWithSearchTarget() throws Exception {
+        SSDPMessageParser parser = new SSDPMessageParser(Collections.singleton("urn:cast-ocast-org:service:cast:1"));
+        SSDPMessage ssdp = parser.parse(ByteBuffer.wrap(PAYLOAD_NOTIFY_BYEBYE.getBytes("UTF-8")));
+        assertThat(ssdp.getHeader("NTS"), is(equalTo("ssdp:byebye")));
+        assertThat(ssdp.getUuid(), is(equalTo("c4323fee-db4b-4227-9039-fa4b71589e26")));
+        assertThat(parser.parse(ByteBuffer.wrap(PAYLOAD_NOTIFY.getBytes("UTF-8"))), is(nullValue()));
+        assertThat(parser.parse(ByteBuffer.wrap(PAYLOAD_MSEARCH.getBytes("UTF-8"))), is(nullValue()));
+    }
+
+    @Test
+    public void parseMaxAge() throws Exception {
+        assertThat(SSDPMessage.fromString(PAYLOAD_RESPONSE_OK).getMaxAge(), is(equalTo(1800)));
+        assertThat(SSDPMessage.fromString(PAYLOAD_RESPONSE_OK.replace("max-age=1800", "no-cache, Max-Age = 60")).getMaxAge(), is(equalTo(60)));
+        assertThat(SSDPMessage.fromString(PAYLOAD_NOTIFY_BYEBYE).getMaxAge(), is(equalTo(-1)));
+    }
+
     @Test
     public void parseResponseWithWrongStatusLine() throws Exception {
         thrown.expect(ParseException.class);
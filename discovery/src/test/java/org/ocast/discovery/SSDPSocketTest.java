@@ -19,79 +19,78 @@
 
 package org.ocast.discovery;
 
+import org.junit.After;
 import org.junit.Assert;
+import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
-import org.mockito.invocation.InvocationOnMock;
-import org.mockito.stubbing.Answer;
 
-import java.io.InterruptedIOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
-import java.net.MulticastSocket;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.nio.charset.Charset;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 public class SSDPSocketTest {
 
+    private SSDPSocket ssdp;
+    private DatagramSocket device;
+
     private class TestListener implements SSDPSocket.Listener {
         @Override
         public void onResponse(SSDPMessage response) {
         }
     }
 
-    private class ReceiveAnswer implements Answer<DatagramSocket> {
-        private int mCount = 0;
-        private final String[] mAnswers;
-
-        ReceiveAnswer(String[] answers) {
-            mAnswers = answers;
+    /**
+     * A SSDPSocket restricted to the loopback interface so that a fake device can answer it
+     */
+    private class LoopbackSSDPSocket extends SSDPSocket {
+        @Override
+        protected boolean acceptInterface(NetworkInterface networkInterface) throws SocketException {
+            return networkInterface.isLoopback();
         }
+    }
 
-        @Override
-        public DatagramSocket answer(InvocationOnMock invocation) throws Throwable {
-            //if needed, the Socket can be retrieved with:
-            //DatagramSocket socket = (DatagramSocket) invocation.getMock();
-            int timeout = 5000;
-            Object[] args = invocation.getArguments();
-            if (mCount < mAnswers.length) {
-                Thread.sleep(timeout/2);//not advised but not completely useless to have this test
-                ((DatagramPacket) args[0]).setData(mAnswers[mCount].getBytes());
-                mCount++;
-                return null;
-            } else {
-                Thread.sleep(timeout);//not advised but not completely useless to have this test
-                throw new InterruptedIOException();
-            }
+    @Before
+    public void setUp() throws Exception {
+        ssdp = new LoopbackSSDPSocket();
+        ssdp.init(false);
+        device = new DatagramSocket();
+    }
+
+    @After
+    public void tearDown() {
+        ssdp.close();
+        device.close();
+    }
+
+    private void answer(String... payloads) throws Exception {
+        InetSocketAddress address = ssdp.getLocalAddresses().get(0);
+        for (String payload : payloads) {
+            byte[] data = payload.getBytes(Charset.forName("UTF-8"));
+            device.send(new DatagramPacket(data, data.length, address));
         }
     }
 
     @Test
     public void readSingleResponse() throws Exception {
-        final MulticastSocket socket = mock(MulticastSocket.class);
-        doAnswer(new SSDPSocketTest.ReceiveAnswer(new String[]{SSDPMessageTest.PAYLOAD_RESPONSE_OK}))
-                .when(socket)
-                .receive(any(DatagramPacket.class));
-
-        SSDPSocket ssdp = new SSDPSocket() {
-            @Override
-            protected MulticastSocket createSocket() {
-                return socket;
-            }
-        };
         SSDPSocket.Listener callback = Mockito.spy(new TestListener());
 
-        ssdp.init(false);
-        List<SSDPMessage> results = ssdp.read(5000, callback);
+        answer(SSDPMessageTest.PAYLOAD_RESPONSE_OK);
+        List<SSDPMessage> results = ssdp.read(500, callback);
         verify(callback, times(1)).onResponse(any(SSDPMessage.class));
         Assert.assertThat(results.size(),is(equalTo(1)));
         SSDPMessage result = results.get(0);
@@ -100,25 +99,147 @@ public class SSDPSocketTest {
 
     @Test
     public void readTwoResponse() throws Exception {
-        final MulticastSocket socket = mock(MulticastSocket.class);
-        doAnswer(new SSDPSocketTest.ReceiveAnswer(new String[]{SSDPMessageTest.PAYLOAD_RESPONSE_OK,SSDPMessageTest.PAYLOAD_RESPONSE_OK2}))
-                .when(socket)
-                .receive(any(DatagramPacket.class));
+        SSDPSocket.Listener callback = Mockito.spy(new TestListener());
+
+        answer(SSDPMessageTest.PAYLOAD_RESPONSE_OK, SSDPMessageTest.PAYLOAD_RESPONSE_OK2);
+        List<SSDPMessage> results = ssdp.read(500, callback);
+        verify(callback, times(2)).onResponse(any(SSDPMessage.class));
+        Assert.assertThat(results.size(),is(equalTo(2)));
+        for(SSDPMessage result: results) {
+            assertThat(result.getType(), is(equalTo(SSDPMessage.Type.RESPONSE)));
+        }
+    }
 
-        SSDPSocket ssdp = new SSDPSocket() {
+    @Test
+    public void countReceivedAndDropped() throws Exception {
+        SSDPSocket.Listener callback = Mockito.spy(new TestListener());
+
+        answer(SSDPMessageTest.PAYLOAD_RESPONSE_OK, SSDPMessageTest.PAYLOAD_UNKNOWN_TYPE);
+        List<SSDPMessage> results = ssdp.read(500, callback);
+        Assert.assertThat(results.size(),is(equalTo(1)));
+        SSDPSocket.InterfaceStats stats = ssdp.getInterfaceStats().get(0);
+        assertThat(stats.getReceivedCount(), is(equalTo(2L)));
+        assertThat(stats.getDroppedCount(), is(equalTo(1L)));
+    }
+
+    @Test
+    public void rateLimitFloodingSource() throws Exception {
+        SSDPSocket.Listener callback = Mockito.spy(new TestListener());
+        ssdp.setSourceRateLimit(1, 3);
+
+        answer(SSDPMessageTest.PAYLOAD_RESPONSE_OK, SSDPMessageTest.PAYLOAD_RESPONSE_OK, SSDPMessageTest.PAYLOAD_RESPONSE_OK,
+                SSDPMessageTest.PAYLOAD_RESPONSE_OK, SSDPMessageTest.PAYLOAD_RESPONSE_OK);
+        List<SSDPMessage> results = ssdp.read(500, callback);
+        verify(callback, times(3)).onResponse(any(SSDPMessage.class));
+        Assert.assertThat(results.size(),is(equalTo(3)));
+        SSDPSocket.InterfaceStats stats = ssdp.getInterfaceStats().get(0);
+        assertThat(stats.getReceivedCount(), is(equalTo(5L)));
+        assertThat(stats.getRateLimitedCount(), is(equalTo(2L)));
+    }
+
+    @Test
+    public void dropOversizedDatagram() throws Exception {
+        SSDPSocket.Listener callback = Mockito.spy(new TestListener());
+
+        answer(padded(SSDPMessageTest.PAYLOAD_RESPONSE_OK, 4096), padded(SSDPMessageTest.PAYLOAD_RESPONSE_OK, 4097));
+        List<SSDPMessage> results = ssdp.read(500, callback);
+        Assert.assertThat(results.size(),is(equalTo(1)));
+        SSDPSocket.InterfaceStats stats = ssdp.getInterfaceStats().get(0);
+        assertThat(stats.getReceivedCount(), is(equalTo(2L)));
+        assertThat(stats.getDroppedCount(), is(equalTo(1L)));
+    }
+
+    @Test
+    public void slowListenerDoesNotDelayReception() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch notified = new CountDownLatch(2);
+        SSDPSocket.Listener callback = new SSDPSocket.Listener() {
             @Override
-            protected MulticastSocket createSocket() {
-                return socket;
+            public void onResponse(SSDPMessage response) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                notified.countDown();
             }
         };
-        SSDPSocket.Listener callback = Mockito.spy(new TestListener());
 
+        answer(SSDPMessageTest.PAYLOAD_RESPONSE_OK, SSDPMessageTest.PAYLOAD_RESPONSE_OK2);
+        long start = System.currentTimeMillis();
+        ssdp.read(500, callback);
+        assertThat(System.currentTimeMillis() - start < 2000, is(true));
+        assertThat(ssdp.getInterfaceStats().get(0).getReceivedCount(), is(equalTo(2L)));
+        release.countDown();
+        assertThat(notified.await(2, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void closeWhileReading() throws Exception {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                ssdp.close();
+            }
+        }).start();
+        long start = System.currentTimeMillis();
+        try {
+            ssdp.read(5000, new TestListener());
+            Assert.fail("read should fail once the socket is closed");
+        } catch (SocketException e) {
+            assertThat(System.currentTimeMillis() - start < 2000, is(true));
+        }
+    }
+
+    @Test
+    public void wakeupBeforeRead() throws Exception {
+        ssdp.wakeup();
+        long start = System.currentTimeMillis();
+        ssdp.read(5000, new TestListener());
+        assertThat(System.currentTimeMillis() - start < 2000, is(true));
+        // the wakeup has been consumed
+        start = System.currentTimeMillis();
+        ssdp.read(300, new TestListener());
+        assertThat(System.currentTimeMillis() - start >= 250, is(true));
+    }
+
+    @Test
+    public void readWithMulticastSockets() throws Exception {
+        ssdp.close();
+        // as on Android before 7.0, where channels do not support multicast
+        ssdp = new SSDPSocket(0, false) {
+            @Override
+            protected boolean acceptInterface(NetworkInterface networkInterface) throws SocketException {
+                return networkInterface.isLoopback();
+            }
+        };
         ssdp.init(false);
-        List<SSDPMessage> results = ssdp.read(5000, callback);
+        SSDPSocket.Listener callback = Mockito.spy(new TestListener());
+
+        answer(SSDPMessageTest.PAYLOAD_RESPONSE_OK, padded(SSDPMessageTest.PAYLOAD_RESPONSE_OK2, 4097), SSDPMessageTest.PAYLOAD_RESPONSE_OK2);
+        List<SSDPMessage> results = ssdp.read(500, callback);
         verify(callback, times(2)).onResponse(any(SSDPMessage.class));
         Assert.assertThat(results.size(),is(equalTo(2)));
-        for(SSDPMessage result: results) {
-            assertThat(result.getType(), is(equalTo(SSDPMessage.Type.RESPONSE)));
+        SSDPSocket.InterfaceStats stats = ssdp.getInterfaceStats().get(0);
+        assertThat(stats.getReceivedCount(), is(equalTo(3L)));
+        assertThat(stats.getDroppedCount(), is(equalTo(1L)));
+    }
+
+    /**
+     * Pad a payload with an extra header up to a given size
+     */
+    private static String padded(String payload, int size) {
+        String header = "X-PADDING: ";
+        StringBuilder padding = new StringBuilder();
+        int length = size - payload.length() - header.length() - 2;
+        for (int i = 0; i < length; i++) {
+            padding.append('x');
         }
+        return payload.substring(0, payload.length() - 2) + header + padding + "\r\n\r\n";
     }
 }
@@ -0,0 +1,55 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SourceRateLimiterTest {
+
+    @Test
+    public void burstThenSteadyRate() throws Exception {
+        SourceRateLimiter limiter = new SourceRateLimiter(10, 2);
+        InetAddress source = InetAddress.getByName("192.168.1.10");
+        assertThat(limiter.tryAcquire(source, 0), is(true));
+        assertThat(limiter.tryAcquire(source, 0), is(true));
+        assertThat(limiter.tryAcquire(source, 0), is(false));
+        assertThat(limiter.tryAcquire(source, 50), is(false));
+        assertThat(limiter.tryAcquire(source, 100), is(true));
+        assertThat(limiter.tryAcquire(source, 100), is(false));
+        // the bucket never holds more than the burst
+        assertThat(limiter.tryAcquire(source, 10000), is(true));
+        assertThat(limiter.tryAcquire(source, 10000), is(true));
+        assertThat(limiter.tryAcquire(source, 10000), is(false));
+    }
+
+    @Test
+    public void limitPerSource() throws Exception {
+        SourceRateLimiter limiter = new SourceRateLimiter(1, 1);
+        InetAddress flooding = InetAddress.getByName("192.168.1.10");
+        InetAddress other = InetAddress.getByName("192.168.1.11");
+        assertThat(limiter.tryAcquire(flooding, 0), is(true));
+        assertThat(limiter.tryAcquire(flooding, 0), is(false));
+        assertThat(limiter.tryAcquire(other, 0), is(true));
+    }
+}
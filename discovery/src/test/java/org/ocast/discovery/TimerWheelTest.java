@@ -0,0 +1,109 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.ocast.discovery;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TimerWheelTest {
+
+    @Test
+    public void expireOnDeadline() throws Exception {
+        TimerWheel<String> wheel = new TimerWheel<>(100, 8, 0);
+        wheel.schedule("a", 250);
+        wheel.schedule("b", 500);
+        assertThat(wheel.advance(200).isEmpty(), is(true));
+        assertThat(wheel.advance(250), is(equalTo(Collections.singletonList("a"))));
+        assertThat(wheel.advance(499).isEmpty(), is(true));
+        assertThat(wheel.advance(500), is(equalTo(Collections.singletonList("b"))));
+        assertThat(wheel.size(), is(equalTo(0)));
+    }
+
+    @Test
+    public void rescheduleReplacesDeadline() throws Exception {
+        TimerWheel<String> wheel = new TimerWheel<>(100, 8, 0);
+        wheel.schedule("a", 200);
+        wheel.schedule("a", 600);
+        assertThat(wheel.advance(300).isEmpty(), is(true));
+        assertThat(wheel.size(), is(equalTo(1)));
+        assertThat(wheel.advance(600), is(equalTo(Collections.singletonList("a"))));
+    }
+
+    @Test
+    public void expireBeyondOneRotation() throws Exception {
+        TimerWheel<String> wheel = new TimerWheel<>(100, 4, 0);
+        wheel.schedule("a", 1000);
+        for (long now = 100; now < 1000; now += 100) {
+            assertThat(wheel.advance(now).isEmpty(), is(true));
+        }
+        assertThat(wheel.advance(1000), is(equalTo(Collections.singletonList("a"))));
+    }
+
+    @Test
+    public void advanceAfterLongPause() throws Exception {
+        TimerWheel<String> wheel = new TimerWheel<>(100, 4, 0);
+        wheel.schedule("a", 150);
+        wheel.schedule("b", 5000);
+        wheel.schedule("c", 20000);
+        assertThat(new HashSet<>(wheel.advance(10000)), is(equalTo(new HashSet<>(Arrays.asList("a", "b")))));
+        assertThat(wheel.contains("c"), is(true));
+    }
+
+    @Test
+    public void cancelAndClear() throws Exception {
+        TimerWheel<String> wheel = new TimerWheel<>(100, 8, 0);
+        wheel.schedule("a", 100);
+        wheel.schedule("b", 100);
+        assertThat(wheel.cancel("a"), is(true));
+        assertThat(wheel.cancel("a"), is(false));
+        assertThat(wheel.clear(), is(equalTo(Collections.singletonList("b"))));
+        assertThat(wheel.advance(1000).isEmpty(), is(true));
+    }
+
+    @Test
+    public void renewByLifetime() throws Exception {
+        TimerWheel<String> wheel = new TimerWheel<>(100, 8, 0);
+        wheel.schedule("a", 0, 300);
+        wheel.schedule("b", 300);
+        assertThat(wheel.renew("a", 1000), is(true));
+        assertThat(wheel.renew("b", 1000), is(false));
+        assertThat(wheel.advance(1000), is(equalTo(Collections.singletonList("b"))));
+        assertThat(wheel.advance(1299).isEmpty(), is(true));
+        assertThat(wheel.advance(1300), is(equalTo(Collections.singletonList("a"))));
+    }
+
+    @Test
+    public void renewAllAfterLongPause() throws Exception {
+        TimerWheel<String> wheel = new TimerWheel<>(100, 4, 0);
+        wheel.schedule("a", 0, 200);
+        wheel.schedule("b", 0, 500);
+        wheel.renewAll(10000);
+        assertThat(wheel.advance(10000).isEmpty(), is(true));
+        assertThat(wheel.advance(10200), is(equalTo(Collections.singletonList("a"))));
+        assertThat(wheel.advance(10500), is(equalTo(Collections.singletonList("b"))));
+    }
+}
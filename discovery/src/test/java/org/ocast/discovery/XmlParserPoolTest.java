@@ -0,0 +1,52 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.discovery;
+
+import org.junit.Test;
+import org.xmlpull.v1.XmlPullParser;
+
+import java.io.StringReader;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class XmlParserPoolTest {
+
+    @Test
+    public void reuseReleasedParser() throws Exception {
+        XmlPullParser parser = XmlParserPool.acquire();
+        parser.setInput(new StringReader("<a:root xmlns:a=\"urn:test\"/>"));
+        parser.nextTag();
+        assertThat(parser.getNamespace(), is(equalTo("urn:test")));
+        XmlParserPool.release(parser);
+
+        XmlPullParser reused = XmlParserPool.acquire();
+        assertThat(reused, is(sameInstance(parser)));
+        XmlPullParser other = XmlParserPool.acquire();
+        assertThat(other, is(not(sameInstance(reused))));
+        reused.setInput(new StringReader("<other/>"));
+        reused.nextTag();
+        assertThat(reused.getName(), is(equalTo("other")));
+        XmlParserPool.release(reused);
+        XmlParserPool.release(other);
+    }
+}
@@ -38,16 +38,13 @@ import android.support.v7.media.MediaRouteProvider;
 import android.support.v7.media.MediaRouteProviderDescriptor;
 import android.util.Log;
 
+import org.ocast.core.OCastRuntime;
 import org.ocast.discovery.DiscoveredDevice;
 import org.ocast.discovery.Discovery;
 import org.ocast.discovery.SSDPDiscovery;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 /**
@@ -57,71 +54,64 @@ public class OCastMediaRouteProvider extends MediaRouteProvider implements WifiM
 
     public static final String CATEGORY_OCAST = "org.ocast.CATEGORY_OCAST";
     private static final String TAG = OCastMediaRouteProvider.class.getSimpleName();
+    private static final long PUBLICATION_DELAY = 250;
     private final Context mContext;
     private Handler mHandler;
     private List<IntentFilter> mCategoryIntentFilterList;
     private IntentFilter mWifiMonitorIntentFilter = new IntentFilter();
     private MediaRouteDiscoveryRequest mCurrentRequest;
-    private final SSDPDiscovery mSSDPDiscovery;
+    private boolean mDiscoveryStarted;
+    private final Set<String> mSearchTargets;
+    // created when the discovery starts and shut down when it stops, so that no thread is left idle
+    private SSDPDiscovery mSSDPDiscovery;
     private final ConnectivityManager mConnectivityManager;
     private WifiMonitor mWifiMonitorReceiver = new WifiMonitor(this);
-    private final Map<String, MediaRouteDescriptor> mRoutes = Collections.synchronizedMap(new HashMap<>());
+    private final RouteTable<MediaRouteDescriptor> mRoutes;
 
     private Discovery.DiscoveryListener listener = new Discovery.DiscoveryListener() {
         @Override
         public void onDeviceAdded(DiscoveredDevice dd) {
-            MediaRouteDescriptor routeDescriptor = createMediaRouteDescriptor(dd);
-            mRoutes.put(dd.getUuid(), routeDescriptor);
-            publishRoutes();
+            mRoutes.addDevice(dd);
         }
 
         @Override
         public void onDeviceRemoved(DiscoveredDevice dd) {
-            for (Iterator<Map.Entry<String, MediaRouteDescriptor>> iterator = mRoutes.entrySet().iterator(); iterator.hasNext(); ) {
-                Map.Entry<String, MediaRouteDescriptor> entry = iterator.next();
-                String uuid = entry.getKey();
-                if (uuid.equals(dd.getUuid())) {
-                    iterator.remove();
-                }
-            }
-            publishRoutes();
-        }
-
-        @NonNull
-        private MediaRouteDescriptor createMediaRouteDescriptor(DiscoveredDevice device) {
-            Bundle bundledDevice = new Bundle();
-            MediaRouteDevice mediaRouteDevice = new MediaRouteDevice(device);
-            bundledDevice.putParcelable(MediaRouteDevice.EXTRA_DEVICE,mediaRouteDevice);
-            Uri uri = new Uri.Builder().scheme(ContentResolver.SCHEME_ANDROID_RESOURCE)
-                    .authority(getContext().getPackageName())
-                    .build();
-            return new MediaRouteDescriptor.Builder(
-                    device.getUuid(),
-                    device.getFriendlyName())
-                    .setDescription(device.getModelName())
-                    .setIconUri(uri)
-                    .addControlFilters(mCategoryIntentFilterList)
-                    .setExtras(bundledDevice)
-                    .build();
+            mRoutes.removeDevice(dd);
         }
     };
 
-    private void publishRoutes() {
-        final MediaRouteProviderDescriptor.Builder providerDescriptorBuilder = new MediaRouteProviderDescriptor.Builder();
-        synchronized (mRoutes) {
-            for (Map.Entry<String, MediaRouteDescriptor> entry : mRoutes.entrySet()) {
-                providerDescriptorBuilder.addRoute(entry.getValue());
-            }
-        }
-        final MediaRouteProviderDescriptor providerDescriptor = providerDescriptorBuilder.build();
-        mHandler.post(() -> setDescriptor(providerDescriptor));
+    @NonNull
+    private MediaRouteDescriptor createMediaRouteDescriptor(DiscoveredDevice device) {
+        Bundle bundledDevice = new Bundle();
+        MediaRouteDevice mediaRouteDevice = new MediaRouteDevice(device);
+        bundledDevice.putParcelable(MediaRouteDevice.EXTRA_DEVICE,mediaRouteDevice);
+        Uri uri = new Uri.Builder().scheme(ContentResolver.SCHEME_ANDROID_RESOURCE)
+                .authority(getContext().getPackageName())
+                .build();
+        return new MediaRouteDescriptor.Builder(
+                device.getUuid(),
+                device.getFriendlyName())
+                .setDescription(device.getModelName())
+                .setIconUri(uri)
+                .addControlFilters(mCategoryIntentFilterList)
+                .setExtras(bundledDevice)
+                .build();
+    }
+
+    private void publishRoutes(List<MediaRouteDescriptor> routes) {
+        MediaRouteProviderDescriptor providerDescriptor = new MediaRouteProviderDescriptor.Builder()
+                .addRoutes(routes)
+                .build();
+        setDescriptor(providerDescriptor);
     }
 
     public OCastMediaRouteProvider(@NonNull Context context, Set<String> searchTargets) {
         super(context);
         mContext = context.getApplicationContext();
         mHandler = new Handler(Looper.getMainLooper());
-        mSSDPDiscovery = new SSDPDiscovery(searchTargets, listener);
+        // the routes are published on the main thread, once per burst of discovery events
+        mRoutes = new RouteTable<>(this::createMediaRouteDescriptor, mHandler::postDelayed, PUBLICATION_DELAY, this::publishRoutes);
+        mSearchTargets = searchTargets;
         mCategoryIntentFilterList = new ArrayList<>();
         IntentFilter f = new IntentFilter();
         f.addCategory(CATEGORY_OCAST);
@@ -140,7 +130,6 @@ public class OCastMediaRouteProvider extends MediaRouteProvider implements WifiM
                     e.printStackTrace();
                 }
                 mRoutes.clear();
-                publishRoutes();
             }
             Log.d(TAG, "onDiscoveryRequest "+request.toString());
             NetworkInfo activeNetwork = mConnectivityManager.getActiveNetworkInfo();
@@ -161,24 +150,35 @@ public class OCastMediaRouteProvider extends MediaRouteProvider implements WifiM
     }
 
     private void startDiscovery(MediaRouteDiscoveryRequest request) {
+        if (mSSDPDiscovery == null) {
+            mSSDPDiscovery = new SSDPDiscovery(mSearchTargets, listener, OCastRuntime.getDefault().getHttpClient());
+        }
         mSSDPDiscovery.start(request.isActiveScan());
+        mDiscoveryStarted = true;
     }
 
     private void stopDiscovery() {
         Log.d(TAG, "onDiscoveryRequest no discovery required");
-        mSSDPDiscovery.stop();
+        if (mSSDPDiscovery != null) {
+            mSSDPDiscovery.shutdown();
+            mSSDPDiscovery = null;
+        }
+        mDiscoveryStarted = false;
     }
 
     @Override
     public void onConnectionStateChanged(boolean isConnected) {
         if(isConnected) {
             // onConnectionStateChanged(false) is not necessarily called when changing WiFi network
-            // This is why stopDiscovery is called here
-            // Otherwise the list of devices is not cleared
-            stopDiscovery();
-            startDiscovery(mCurrentRequest);
-        } else {
-            stopDiscovery();
+            // The devices of the previous network are revalidated, only the unreachable ones are removed
+            if (mDiscoveryStarted) {
+                mSSDPDiscovery.onNetworkChanged();
+            } else if (mCurrentRequest != null) {
+                startDiscovery(mCurrentRequest);
+            }
+        } else if (mDiscoveryStarted) {
+            // the routes are kept while the WiFi is down, and revalidated once it is back
+            mSSDPDiscovery.pause();
         }
     }
 
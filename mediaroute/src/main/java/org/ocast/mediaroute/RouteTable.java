@@ -0,0 +1,207 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.mediaroute;
+
+import org.ocast.discovery.DiscoveredDevice;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the routes of the discovered devices and publishes them.
+ * A route is created once per device, and again only when the device description changes.
+ * The changes are coalesced: the routes are published once per debounce window, and not at all if
+ * they are the same as the ones published last, whatever their order.
+ * Does not depend on the Android framework.
+ *
+ * @param <R> the type of the routes
+ */
+class RouteTable<R> {
+
+    /**
+     * Creates the route of a device
+     */
+    interface RouteFactory<R> {
+        R createRoute(DiscoveredDevice device);
+    }
+
+    /**
+     * Runs the publication of the routes after the debounce window
+     */
+    interface Scheduler {
+        void schedule(Runnable task, long delay);
+    }
+
+    /**
+     * Receives the routes to be published
+     */
+    interface Listener<R> {
+        /**
+         * @param routes the routes, in the order their devices have been discovered
+         */
+        void onRoutesChanged(List<R> routes);
+    }
+
+    private static class Route<R> {
+        final DiscoveredDevice mDevice;
+        final R mRoute;
+
+        Route(DiscoveredDevice device, R route) {
+            mDevice = device;
+            mRoute = route;
+        }
+    }
+
+    private final RouteFactory<R> mFactory;
+    private final Scheduler mScheduler;
+    private final long mDebounceDelay;
+    private final Listener<R> mListener;
+    private final Map<String, Route<R>> mRoutes = new LinkedHashMap<>();
+    private Map<String, Route<R>> mPublishedRoutes = Collections.emptyMap();
+    private boolean mChanged;
+    private boolean mScheduled;
+    private int mPublicationCount;
+
+    /**
+     * @param factory creates the route of a device
+     * @param scheduler runs the publications
+     * @param debounceDelay the duration of the debounce window (milliseconds)
+     * @param listener receives the routes to be published
+     */
+    RouteTable(RouteFactory<R> factory, Scheduler scheduler, long debounceDelay, Listener<R> listener) {
+        mFactory = factory;
+        mScheduler = scheduler;
+        mDebounceDelay = debounceDelay;
+        mListener = listener;
+    }
+
+    /**
+     * Add the route of a device, or replace it if the device description changed
+     * @param device the discovered device
+     */
+    void addDevice(DiscoveredDevice device) {
+        synchronized (this) {
+            Route<R> route = mRoutes.get(device.getUuid());
+            if (route != null && route.mDevice.equals(device)) {
+                return;
+            }
+            Route<R> published = mPublishedRoutes.get(device.getUuid());
+            if (published != null && published.mDevice.equals(device)) {
+                // lost and found again within the window, the published route is still valid
+                mRoutes.put(device.getUuid(), published);
+                onChanged();
+                return;
+            }
+        }
+        // the route is created out of the lock, it may be costly
+        R route = mFactory.createRoute(device);
+        synchronized (this) {
+            mRoutes.put(device.getUuid(), new Route<>(device, route));
+            onChanged();
+        }
+    }
+
+    /**
+     * Remove the route of a device
+     * @param device the lost device
+     */
+    synchronized void removeDevice(DiscoveredDevice device) {
+        if (mRoutes.remove(device.getUuid()) != null) {
+            onChanged();
+        }
+    }
+
+    /**
+     * Remove every route
+     */
+    synchronized void clear() {
+        if (!mRoutes.isEmpty()) {
+            mRoutes.clear();
+            onChanged();
+        }
+    }
+
+    /**
+     * @return the current routes, published or not
+     */
+    synchronized List<R> getRoutes() {
+        return currentRoutes();
+    }
+
+    /**
+     * @return the number of publications of the routes
+     */
+    synchronized int getPublicationCount() {
+        return mPublicationCount;
+    }
+
+    private void onChanged() {
+        mChanged = true;
+        if (!mScheduled) {
+            mScheduled = true;
+            mScheduler.schedule(this::publish, mDebounceDelay);
+        }
+    }
+
+    private void publish() {
+        List<R> routes;
+        synchronized (this) {
+            mScheduled = false;
+            if (!mChanged) {
+                return;
+            }
+            mChanged = false;
+            if (isPublished()) {
+                return;
+            }
+            routes = currentRoutes();
+            mPublishedRoutes = new LinkedHashMap<>(mRoutes);
+            mPublicationCount++;
+        }
+        mListener.onRoutesChanged(routes);
+    }
+
+    /**
+     * @return whether the current routes are the published ones. A device lost and found again is
+     * moved to the end of the routes, so they are compared by device.
+     */
+    private boolean isPublished() {
+        if (mRoutes.size() != mPublishedRoutes.size()) {
+            return false;
+        }
+        for (Map.Entry<String, Route<R>> entry : mRoutes.entrySet()) {
+            Route<R> published = mPublishedRoutes.get(entry.getKey());
+            if (published == null || !published.mRoute.equals(entry.getValue().mRoute)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<R> currentRoutes() {
+        List<R> routes = new ArrayList<>(mRoutes.size());
+        for (Route<R> route : mRoutes.values()) {
+            routes.add(route.mRoute);
+        }
+        return Collections.unmodifiableList(routes);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Software Name : OCast SDK
+ *
+ *  Copyright (C) 2018 Orange
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.ocast.mediaroute;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.ocast.discovery.DiscoveredDevice;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RouteTableTest {
+    private static final DiscoveredDevice DEVICE_1 = new DiscoveredDevice("uuid1", "tv", "Orange", "TV", URI.create("http://192.168.1.10:8008/apps"));
+    private static final DiscoveredDevice DEVICE_2 = new DiscoveredDevice("uuid2", "stick", "Orange", "Stick", URI.create("http://192.168.1.11:8008/apps"));
+
+    private final List<Runnable> mScheduled = new ArrayList<>();
+    private final List<List<String>> mPublished = new ArrayList<>();
+    private int mCreated;
+    private RouteTable<String> mTable;
+
+    @Before
+    public void setUp() {
+        mTable = new RouteTable<>(device -> {
+            mCreated++;
+            return new String(device.getFriendlyName());
+        }, (task, delay) -> mScheduled.add(task), 250, mPublished::add);
+    }
+
+    private void runScheduled() {
+        List<Runnable> tasks = new ArrayList<>(mScheduled);
+        mScheduled.clear();
+        for (Runnable task : tasks) {
+            task.run();
+        }
+    }
+
+    @Test
+    public void coalesceBurst() {
+        mTable.addDevice(DEVICE_1);
+        mTable.addDevice(DEVICE_2);
+        assertEquals(1, mScheduled.size());
+        assertTrue(mPublished.isEmpty());
+        runScheduled();
+        assertEquals(1, mPublished.size());
+        assertEquals(Arrays.asList("tv", "stick"), mPublished.get(0));
+    }
+
+    @Test
+    public void createRouteOnce() {
+        mTable.addDevice(DEVICE_1);
+        runScheduled();
+        mTable.addDevice(new DiscoveredDevice("uuid1", "tv", "Orange", "TV", URI.create("http://192.168.1.10:8008/apps")));
+        assertTrue(mScheduled.isEmpty());
+        assertEquals(1, mCreated);
+        mTable.addDevice(new DiscoveredDevice("uuid1", "living room", "Orange", "TV", URI.create("http://192.168.1.10:8008/apps")));
+        runScheduled();
+        assertEquals(2, mCreated);
+        assertEquals(Arrays.asList("living room"), mPublished.get(1));
+    }
+
+    @Test
+    public void skipUnchanged() {
+        mTable.addDevice(DEVICE_1);
+        runScheduled();
+        String route = mTable.getRoutes().get(0);
+        // lost and found again within the window
+        mTable.removeDevice(DEVICE_1);
+        mTable.addDevice(DEVICE_1);
+        runScheduled();
+        assertEquals(1, mTable.getPublicationCount());
+        assertSame(route, mTable.getRoutes().get(0));
+        assertEquals(1, mCreated);
+        mTable.removeDevice(DEVICE_2);
+        assertTrue(mScheduled.isEmpty());
+    }
+
+    @Test
+    public void skipReorderedRoutes() {
+        mTable.addDevice(DEVICE_1);
+        mTable.addDevice(DEVICE_2);
+        runScheduled();
+        // the first device is lost and found again within the window, after the second one
+        mTable.removeDevice(DEVICE_1);
+        mTable.addDevice(DEVICE_1);
+        runScheduled();
+        assertEquals(1, mTable.getPublicationCount());
+        assertEquals(1, mPublished.size());
+        assertEquals(2, mCreated);
+    }
+
+    @Test
+    public void removeAndClear() {
+        mTable.addDevice(DEVICE_1);
+        mTable.addDevice(DEVICE_2);
+        runScheduled();
+        mTable.removeDevice(DEVICE_1);
+        runScheduled();
+        assertEquals(Arrays.asList("stick"), mPublished.get(1));
+        mTable.clear();
+        runScheduled();
+        assertTrue(mPublished.get(2).isEmpty());
+        mTable.clear();
+        assertTrue(mScheduled.isEmpty());
+    }
+}
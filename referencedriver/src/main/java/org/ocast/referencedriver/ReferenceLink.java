@@ -20,6 +20,7 @@
 package org.ocast.referencedriver;
 
 import org.ocast.core.LinkProfile;
+import org.ocast.core.OCastRuntime;
 import org.ocast.core.SSLConfig;
 import org.ocast.referencedriver.payload.EventPayload;
 import org.ocast.referencedriver.payload.Payload;
@@ -35,7 +36,6 @@ import org.json.JSONObject;
 
 import java.util.HashMap;
 import java.util.UUID;
-import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -49,7 +49,12 @@ import okhttp3.WebSocket;
  */
 public class ReferenceLink implements Link {
     private static final String TAG = LogTag.LINK;
-    public static final int PING_INTERVAL = 7;
+    /**
+     * @deprecated the links use the ping interval of their {@link OCastRuntime}, see
+     * {@link OCastRuntime.Builder#setPingInterval(int)}
+     */
+    @Deprecated
+    public static final int PING_INTERVAL = OCastRuntime.DEFAULT_PING_INTERVAL;
 
 
     private final SSLConfig sslConfig;
@@ -79,13 +84,7 @@ public class ReferenceLink implements Link {
     public void connect(Runnable onSuccess, Consumer<Throwable> onFailure) {
         state = State.CONNECTING;
 
-        OkHttpClient.Builder builder = new OkHttpClient.Builder().connectTimeout(5, TimeUnit.SECONDS);
-        if(sslConfig != null) {
-            builder.sslSocketFactory(sslConfig.getSocketFactory(), sslConfig.getTrustManager());
-            builder.hostnameVerifier(sslConfig.getHostnameVerifier());
-        }
-        builder.pingInterval(PING_INTERVAL, TimeUnit.SECONDS);
-        OkHttpClient client = builder.build();
+        OkHttpClient client = OCastRuntime.getDefault().getWebSocketClient(sslConfig);
         Request request;
 
         request = new Request.Builder().url(websocketUrl).build();